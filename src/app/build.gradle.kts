@@ -136,6 +136,9 @@ dependencies {
 
     implementation("androidx.annotation:annotation:1.7.0")
 
+    // Lottery rules shared with the server side runner
+    implementation(project(":lottery-core"))
+
     implementation(libs.appcompat)
     implementation(libs.material)
     implementation(libs.activity)
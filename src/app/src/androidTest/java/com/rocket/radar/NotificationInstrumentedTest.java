@@ -3,15 +3,17 @@ package com.rocket.radar;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 
-import androidx.lifecycle.LiveData;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
 
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.rocket.radar.notifications.Notification;
+import com.rocket.radar.notifications.NotificationFeed;
 import com.rocket.radar.notifications.NotificationRepository;
 
 import org.junit.Before;
@@ -21,6 +23,7 @@ import org.junit.runner.RunWith;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
 @RunWith(AndroidJUnit4.class)
 public class NotificationInstrumentedTest {
@@ -39,7 +42,7 @@ public class NotificationInstrumentedTest {
     }
 
     @Test
-    public void testGetMyNotifications_resolvesFromTopLevel() throws Exception {
+    public void testOpenInbox_migratesLegacyStub() throws Exception {
         String testUserId = "testUser123";
 
         // 1. Seed a top-level notification document
@@ -53,7 +56,7 @@ public class NotificationInstrumentedTest {
                 db.collection("notifications").add(content)
         );
 
-        // 2. Seed a user stub in users/{uid}/notifications
+        // 2. Seed a legacy user stub in users/{uid}/notifications, holding only the reference
         DocumentReference stubRef = db.collection("users").document(testUserId)
                 .collection("notifications").document();
 
@@ -63,15 +66,23 @@ public class NotificationInstrumentedTest {
 
         Tasks.await(stubRef.set(stub));
 
-        // 3. Use the test-friendly constructor
+        // 3. Use the test-friendly constructor, opening the inbox migrates the stub
         NotificationRepository repo = new NotificationRepository(testUserId);
-
-        LiveData<List<Notification>> liveData = repo.getMyNotifications();
-
-        // 4. Wait for LiveData to emit (using CountDownLatch helper)
-        List<Notification> result = LiveDataTestUtil.getOrAwaitValue(liveData);
-
-        // 5. Assert
+        AtomicReference<NotificationFeed> feed = new AtomicReference<>();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> feed.set(repo.openInbox(20)));
+
+        // 4. Wait for the content to be written into the stub
+        DocumentSnapshot migrated = Tasks.await(stubRef.get());
+        for (int i = 0; i < 50 && !migrated.contains("eventTitle"); i++) {
+            Thread.sleep(100);
+            migrated = Tasks.await(stubRef.get());
+        }
+        assertEquals("Test Title", migrated.getString("eventTitle"));
+        assertEquals("Test Body", migrated.getString("notificationType"));
+
+        // 5. The feed shows it from the stub alone
+        List<Notification> result = LiveDataTestUtil.getOrAwaitValue(feed.get().getNotifications());
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> feed.get().close());
         assertFalse(result.isEmpty());
         Notification notif = result.get(0);
         assertEquals("Test Title", notif.getEventTitle());
@@ -79,4 +90,3 @@ public class NotificationInstrumentedTest {
         assertEquals(false, notif.isReadStatus());
     }
 }
-
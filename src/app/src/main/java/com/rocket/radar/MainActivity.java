@@ -65,8 +65,7 @@ public class MainActivity extends AppCompatActivity {
                 if (isGranted) {
                     Log.d(TAG, "Notification permission granted.");
                     if (currentUser != null) {
-                        currentUser.setNotificationsEnabled(true);
-                        profileViewModel.updateProfile(currentUser);
+                        profileViewModel.setNotificationsEnabled(currentUser, true);
                     }
 
                 } else {
@@ -6,6 +6,7 @@ import com.google.firebase.Firebase;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.rocket.radar.profile.ProfileModel;
+import com.rocket.radar.profile.ProfileRepository;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -36,34 +37,25 @@ public class AdminRepository {
         void onComplete(T result);
     }
 
+    /**
+     * Deletes a user's Firestore data, including their notifications and event memberships.
+     * The callback fires once everything is gone.
+     */
     public void deleteUser(ProfileModel profile, DeleteCallback callback) {
         String uid = profile.getUid();
+        new ProfileRepository().deleteUserData(uid, new ProfileRepository.WriteCallback() {
+            @Override
+            public void onSuccess() {
+                Log.d("AdminRepository", "User deleted successfully: " + uid);
+                callback.onSuccess();
+            }
 
-        db.collection("users")
-                .document(uid)
-                .collection("notifications")
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    for (var document : querySnapshot.getDocuments()) {
-                        document.getReference().delete();
-                    }
-                    db.collection("users")
-                            .document(uid)
-                            .delete()
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d("AdminRepository", "User deleted successfully: " + uid);
-                                callback.onSuccess();
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e("AdminRepository", "Failed to delete user doc", e);
-                                callback.onError(e);
-                            });
-
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("AdminRepository", "Failed to fetch notifications", e);
-                    callback.onError(e);
-                });
+            @Override
+            public void onError(Exception e) {
+                Log.e("AdminRepository", "Failed to delete user " + uid, e);
+                callback.onError(e);
+            }
+        });
     }
 
     public interface DeleteCallback {
@@ -1,6 +1,5 @@
 package com.rocket.radar.admin;
 
-import android.graphics.Bitmap;
 import android.media.Image;
 import android.os.Bundle;
 import android.util.Log;
@@ -19,7 +18,9 @@ import com.rocket.radar.events.Event;
 import com.rocket.radar.events.EventRepository;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 public class BrowseImageFragment extends Fragment {
     private FragmentBrowseImagesBinding binding;
@@ -36,22 +37,33 @@ public class BrowseImageFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         binding.fullImageList.setLayoutManager(new GridLayoutManager(getContext(), 3));
         List<Event> events = EventRepository.getInstance().getAllEvents().getValue();
-        ArrayList<Bitmap> images = new ArrayList<>();
+        ArrayList<Event> images = new ArrayList<>();
         if (events == null) {
             Log.w(TAG, "Failed to fetch Events from EventRepository");
         } else {
-            for (var event : events) {
-                images.add(event.getBannerImageBitmap());
-            }
+            collectBanners(events, images);
         }
         ImageAdapter adapter = new ImageAdapter(images);
         binding.fullImageList.setAdapter(adapter);
         EventRepository.getInstance().getAllEvents().observe(getViewLifecycleOwner(), newEvents -> {
-            images.clear();
-            for (var event : newEvents) {
-                images.add(event.getBannerImageBitmap());
-            }
+            collectBanners(newEvents, images);
             adapter.notifyDataSetChanged();
         });
     }
+
+    /**
+     * Picks one event per distinct banner. Events sharing a banner share its content hash, so
+     * each stored image is only shown and fetched once.
+     */
+    private static void collectBanners(List<Event> events, List<Event> out) {
+        out.clear();
+        Set<String> seen = new HashSet<>();
+        for (var event : events) {
+            if (!event.hasBannerImage()) continue;
+            String imageId = event.getBannerImageId();
+            if (imageId == null || seen.add(imageId)) {
+                out.add(event);
+            }
+        }
+    }
 }
@@ -1,6 +1,5 @@
 package com.rocket.radar.admin;
 
-import android.graphics.Bitmap;
 import android.graphics.drawable.BitmapDrawable;
 import android.view.View;
 import android.view.ViewGroup;
@@ -9,6 +8,9 @@ import android.widget.ImageView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.rocket.radar.events.BannerCache;
+import com.rocket.radar.events.Event;
+
 import java.util.List;
 
 public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder> {
@@ -25,9 +27,12 @@ public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder>
         }
     }
 
-    List<Bitmap> images;
+    List<Event> images;
 
-    public ImageAdapter(List<Bitmap> images) {
+    /**
+     * @param images One event per banner to show. Stored banners are fetched as they are bound.
+     */
+    public ImageAdapter(List<Event> images) {
         this.images = images;
     }
 
@@ -45,7 +50,14 @@ public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ViewHolder>
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
         ImageView imageView = holder.getImageView();
-        imageView.setImageBitmap(images.get(position));
+        Event event = images.get(position);
+        BannerCache.getInstance(imageView.getContext()).into(event, imageView, android.R.color.transparent);
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        super.onViewRecycled(holder);
+        BannerCache.getInstance(holder.getImageView().getContext()).cancel(holder.getImageView());
     }
 
     @Override
@@ -69,7 +69,6 @@ public class UserFragment extends Fragment  implements EventAdapter.OnEventListe
     private EventAdapter adapter;
     private MaterialButtonToggleGroup toggleGroup;
     private List<Event> allEvents;
-    private List<Event> displayedEvents;
     private EventRepository eventRepository;
 
 
@@ -143,8 +142,7 @@ public class UserFragment extends Fragment  implements EventAdapter.OnEventListe
         eventRepository = EventRepository.getInstance();
         profileViewModel = new ViewModelProvider(requireActivity()).get(ProfileViewModel.class);
         allEvents = new ArrayList<>();
-        displayedEvents = new ArrayList<>();
-        adapter = new EventAdapter(getContext(), displayedEvents, this);
+        adapter = new EventAdapter(getContext(), this);
         myEventRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         myEventRecyclerView.setAdapter(adapter);
 
@@ -258,9 +256,7 @@ public class UserFragment extends Fragment  implements EventAdapter.OnEventListe
         }
 
         Log.d("EventListFragment", "Filtered list size: " + filteredList.size());
-        displayedEvents.clear();
-        displayedEvents.addAll(filteredList);
-        adapter.notifyDataSetChanged();
+        adapter.setEvents(filteredList);
     }
 
     /**
@@ -270,7 +266,7 @@ public class UserFragment extends Fragment  implements EventAdapter.OnEventListe
      */
     @Override
     public void onEventClick(int position) {
-        Event clickedEvent = displayedEvents.get(position);
+        Event clickedEvent = adapter.getEvent(position);
 
         boolean isOrganizer = (toggleGroup.getCheckedButtonId() == R.id.my_events_filter_button);
 
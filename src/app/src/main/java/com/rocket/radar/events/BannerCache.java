@@ -0,0 +1,372 @@
+package com.rocket.radar.events;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.DrawableRes;
+
+import com.rocket.radar.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Process wide cache and decode pipeline for event banners.
+ *
+ * <p>Banners are keyed by event id plus the banner's content hash so a new banner on the same
+ * event never hits a stale entry, and by the width they were decoded for so a grid thumbnail is
+ * never stretched over a full width list item. The memory tier is an LRU bounded by bitmap
+ * bytes. Behind it sits a disk tier of already scaled thumbnails, so a banner is only fetched and
+ * decoded from full size once per install rather than on every snapshot.</p>
+ *
+ * <p>Everything except the memory lookup runs on a background executor. Source images are
+ * decoded with an {@code inSampleSize} picked from the target width so the full size bitmap is
+ * never allocated. Use {@link #into(Event, ImageView, int)} from adapters, it shows a placeholder
+ * while loading and cancels the previous request when a view is rebound.</p>
+ *
+ * <p>All public methods must be called from the main thread and answer on it.</p>
+ */
+public class BannerCache {
+    private static final String TAG = "BannerCache";
+
+    private static final long DISK_MAX_BYTES = 20L * 1024 * 1024;
+
+    private static BannerCache instance = null;
+
+    /**
+     * Receives a banner once it is available.
+     */
+    public interface BannerListener {
+        /**
+         * @param key The cache key the banner was requested under, see {@link #keyFor(Event)}.
+         * @param banner The decoded banner.
+         */
+        void onBannerReady(String key, Bitmap banner);
+    }
+
+    /**
+     * A pending banner load. Cancelling drops the listener, and the decode itself if nobody else
+     * is waiting on it.
+     */
+    public final class Request {
+        private final String sizedKey;
+        private final String key;
+        private final BannerListener listener;
+
+        private Request(String sizedKey, String key, BannerListener listener) {
+            this.sizedKey = sizedKey;
+            this.key = key;
+            this.listener = listener;
+        }
+
+        public void cancel() {
+            Load load = inFlight.get(sizedKey);
+            if (load == null) return;
+            load.waiting.remove(this);
+            if (load.waiting.isEmpty()) {
+                load.cancelled = true;
+                if (load.future != null) {
+                    load.future.cancel(false);
+                }
+                inFlight.remove(sizedKey);
+            }
+        }
+    }
+
+    /**
+     * One decode shared by every request for the same banner at the same width.
+     */
+    private static class Load {
+        final List<Request> waiting = new ArrayList<>();
+        Future<?> future;
+        volatile boolean cancelled = false;
+    }
+
+    private final LruCache<String, Bitmap> memory;
+    private final File diskDir;
+    private final int defaultWidth;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Only touched on the main thread.
+    private final Map<String, Load> inFlight = new HashMap<>();
+
+    private BannerCache(Context context) {
+        // An eighth of the heap is the usual budget for an image cache.
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        memory = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        diskDir = new File(context.getCacheDir(), "banners");
+        if (!diskDir.exists() && !diskDir.mkdirs()) {
+            Log.w(TAG, "Could not create banner cache directory, disk tier disabled.");
+        }
+        // Banners are drawn at most screen wide.
+        defaultWidth = context.getResources().getDisplayMetrics().widthPixels;
+    }
+
+    public static synchronized BannerCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new BannerCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Builds the cache key for an event's banner.
+     *
+     * @param event The event.
+     * @return The key, or null if the event has no banner.
+     */
+    public static String keyFor(Event event) {
+        String hash = event.getBannerImageId();
+        if (hash == null) {
+            byte[] local = event.localBannerBytes();
+            if (local == null) return null;
+            hash = BannerImageRepository.contentHash(local);
+        }
+        return event.getEventId() + "_" + hash;
+    }
+
+    /**
+     * Shows an event's banner in a view. The placeholder is shown straight away unless the banner
+     * is already in memory, and any earlier request for the same view is cancelled so a recycled
+     * view holder never receives the banner of the event it used to show.
+     *
+     * @param event The event whose banner to show.
+     * @param view The view to show it in. Its width decides how far the banner is downsampled.
+     * @param placeholder Drawable shown while loading or if the event has no banner, 0 to leave
+     *                    whatever the view currently shows.
+     */
+    public void into(Event event, ImageView view, @DrawableRes int placeholder) {
+        cancel(view);
+        String key = keyFor(event);
+        int width = targetWidth(view);
+        Bitmap cached = key == null ? null : memory.get(sizedKey(key, width));
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        if (placeholder != 0) {
+            view.setImageResource(placeholder);
+        }
+        if (key == null) return;
+
+        Request request = load(event, width, (loadedKey, banner) -> {
+            view.setTag(R.id.banner_request, null);
+            view.setImageBitmap(banner);
+        });
+        view.setTag(R.id.banner_request, request);
+    }
+
+    /**
+     * Cancels whatever banner load is bound to a view. Call from {@code onViewRecycled}.
+     *
+     * @param view A view previously passed to {@link #into(Event, ImageView, int)}.
+     */
+    public void cancel(ImageView view) {
+        Object tag = view.getTag(R.id.banner_request);
+        if (tag instanceof Request) {
+            ((Request) tag).cancel();
+        }
+        view.setTag(R.id.banner_request, null);
+    }
+
+    /**
+     * Gets an event's banner from the first tier that has it, filling the faster tiers on the
+     * way back. Concurrent loads of the same banner at the same width share one decode.
+     *
+     * @param event The event whose banner to load.
+     * @param targetWidth Width in pixels the banner will be drawn at.
+     * @param listener Called on the main thread when the banner is ready. Not called if the event
+     *                 has no banner, it couldn't be loaded, or the request was cancelled.
+     * @return A handle to cancel the load with, or null if the listener was already called or
+     * there is nothing to load.
+     */
+    public Request load(Event event, int targetWidth, BannerListener listener) {
+        String key = keyFor(event);
+        if (key == null) return null;
+        String sizedKey = sizedKey(key, targetWidth);
+
+        Bitmap cached = memory.get(sizedKey);
+        if (cached != null) {
+            listener.onBannerReady(key, cached);
+            return null;
+        }
+
+        Request request = new Request(sizedKey, key, listener);
+        Load load = inFlight.get(sizedKey);
+        if (load != null) {
+            load.waiting.add(request);
+            return request;
+        }
+        Load newLoad = new Load();
+        newLoad.waiting.add(request);
+        inFlight.put(sizedKey, newLoad);
+
+        byte[] local = event.localBannerBytes();
+        String imageId = event.getBannerImageId();
+        newLoad.future = executor.submit(() -> {
+            if (newLoad.cancelled) return;
+            Bitmap fromDisk = readThumbnail(sizedKey);
+            if (fromDisk != null) {
+                memory.put(sizedKey, fromDisk);
+                deliver(sizedKey, newLoad, fromDisk);
+            } else if (local != null) {
+                decodeAndStore(sizedKey, newLoad, local, targetWidth);
+            } else {
+                mainHandler.post(() -> fetch(sizedKey, newLoad, imageId, targetWidth));
+            }
+        });
+        return request;
+    }
+
+    private void fetch(String sizedKey, Load load, String imageId, int targetWidth) {
+        if (load.cancelled) return;
+        BannerImageRepository.getInstance().getBannerBytes(imageId, new BannerImageRepository.BannerCallback() {
+            @Override
+            public void onBannerLoaded(String id, byte[] jpeg) {
+                if (load.cancelled) return;
+                load.future = executor.submit(() -> decodeAndStore(sizedKey, load, jpeg, targetWidth));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Failed to fetch banner " + imageId, e);
+                if (inFlight.get(sizedKey) == load) {
+                    inFlight.remove(sizedKey);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decodes a source banner downsampled to the target width and stores it in both tiers. Runs
+     * on the executor.
+     */
+    private void decodeAndStore(String sizedKey, Load load, byte[] jpeg, int targetWidth) {
+        if (load.cancelled) return;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        options.inSampleSize = calculateInSampleSize(options.outWidth, targetWidth);
+        options.inJustDecodeBounds = false;
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        if (decoded == null) {
+            Log.e(TAG, "Could not decode banner " + sizedKey);
+            mainHandler.post(() -> {
+                if (inFlight.get(sizedKey) == load) {
+                    inFlight.remove(sizedKey);
+                }
+            });
+            return;
+        }
+
+        // inSampleSize only halves, finish the job so the cached copy is no bigger than needed.
+        Bitmap thumbnail = decoded;
+        if (decoded.getWidth() > targetWidth) {
+            int height = Math.round(decoded.getHeight() * ((float) targetWidth / decoded.getWidth()));
+            thumbnail = Bitmap.createScaledBitmap(decoded, targetWidth, height, true);
+        }
+        memory.put(sizedKey, thumbnail);
+        writeThumbnail(sizedKey, thumbnail);
+        deliver(sizedKey, load, thumbnail);
+    }
+
+    private void deliver(String sizedKey, Load load, Bitmap banner) {
+        mainHandler.post(() -> {
+            if (load.cancelled || inFlight.get(sizedKey) != load) return;
+            inFlight.remove(sizedKey);
+            for (Request request : load.waiting) {
+                request.listener.onBannerReady(request.key, banner);
+            }
+        });
+    }
+
+    /**
+     * Picks the largest power of two that keeps the decoded width at or above the target.
+     */
+    static int calculateInSampleSize(int sourceWidth, int targetWidth) {
+        int inSampleSize = 1;
+        if (targetWidth <= 0) return inSampleSize;
+        while (sourceWidth / (inSampleSize * 2) >= targetWidth) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private int targetWidth(ImageView view) {
+        if (view.getWidth() > 0) return view.getWidth();
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        if (params != null && params.width > 0) return params.width;
+        return defaultWidth;
+    }
+
+    private static String sizedKey(String key, int width) {
+        return key + "@" + width;
+    }
+
+    private Bitmap readThumbnail(String sizedKey) {
+        File file = new File(diskDir, sizedKey + ".jpg");
+        if (!file.exists()) return null;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath());
+        if (bitmap != null) {
+            // Keeps the trim order least recently used rather than least recently written.
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    private void writeThumbnail(String sizedKey, Bitmap thumbnail) {
+        if (!diskDir.isDirectory()) return;
+        File file = new File(diskDir, sizedKey + ".jpg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, 80, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write banner thumbnail " + sizedKey, e);
+            return;
+        }
+        trimDisk();
+    }
+
+    /**
+     * Deletes the least recently used thumbnails until the disk tier fits its budget.
+     */
+    private synchronized void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= DISK_MAX_BYTES) return;
+
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (total <= DISK_MAX_BYTES) break;
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.rocket.radar.events;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content addressed storage for event banner images.
+ *
+ * <p>Banners live in the {@code bannerImages} collection keyed by the SHA-256 of their JPEG
+ * bytes. Events only hold the key (see {@link Event#getBannerImageId()}) so list queries never
+ * download image data, and two events with the same banner share one document.</p>
+ */
+public class BannerImageRepository {
+    private static final String TAG = "BannerImageRepository";
+
+    private static BannerImageRepository instance = null;
+
+    private final CollectionReference images;
+
+    private BannerImageRepository() {
+        images = FirebaseFirestore.getInstance().collection("bannerImages");
+    }
+
+    public static BannerImageRepository getInstance() {
+        if (instance == null) {
+            instance = new BannerImageRepository();
+        }
+        return instance;
+    }
+
+    /**
+     * Callback for fetching the bytes of a banner.
+     */
+    public interface BannerCallback {
+        /**
+         * @param imageId The content hash that was requested.
+         * @param jpeg The compressed banner.
+         */
+        void onBannerLoaded(String imageId, byte[] jpeg);
+        void onError(Exception e);
+    }
+
+    /**
+     * Computes the key a banner is stored under.
+     *
+     * @param jpeg The compressed banner.
+     * @return Lowercase hex SHA-256 of the bytes.
+     */
+    public static String contentHash(byte[] jpeg) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(jpeg);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android runtime ships SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Adds a banner to a batch. Writing the same bytes twice lands on the same document so the
+     * write is idempotent and identical banners are stored once.
+     *
+     * @param batch The batch the owning event is written in, so the event never points at a
+     *              banner that doesn't exist yet.
+     * @param jpeg The compressed banner.
+     * @param width Width of the banner in pixels.
+     * @param height Height of the banner in pixels.
+     * @return The banner's key.
+     */
+    String putBanner(WriteBatch batch, byte[] jpeg, int width, int height) {
+        String imageId = contentHash(jpeg);
+        Map<String, Object> data = new HashMap<>();
+        data.put("data", Blob.fromBytes(jpeg));
+        data.put("width", width);
+        data.put("height", height);
+        batch.set(images.document(imageId), data);
+        return imageId;
+    }
+
+    /**
+     * Fetches the bytes of a banner.
+     *
+     * @param imageId The banner's content hash.
+     * @param callback Receives the bytes or the failure.
+     */
+    public void getBannerBytes(String imageId, BannerCallback callback) {
+        if (imageId == null || imageId.isEmpty()) {
+            callback.onError(new IllegalArgumentException("Banner image ID cannot be null or empty."));
+            return;
+        }
+        DocumentReference ref = images.document(imageId);
+        ref.get()
+                .addOnSuccessListener(doc -> {
+                    Blob data = doc.getBlob("data");
+                    if (data == null) {
+                        callback.onError(new Exception("Banner " + imageId + " not found"));
+                        return;
+                    }
+                    callback.onBannerLoaded(imageId, data.toBytes());
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching banner " + imageId, e);
+                    callback.onError(e);
+                });
+    }
+}
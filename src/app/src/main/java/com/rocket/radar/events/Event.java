@@ -20,7 +20,9 @@ import java.util.UUID;
 
 import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.Exclude; // CORRECT: Using the Firestore Exclude
+import com.google.firebase.firestore.ServerTimestamp;
 import com.rocket.radar.eventmanagement.Time;
+import com.rocket.radar.lottery.LotteryEvent;
 
 import java.io.Serializable;
 
@@ -70,7 +72,21 @@ public class Event implements Serializable {
 
     private Time lotteryTime;
 
+    // Legacy inline banner. New banners live in BannerImageRepository and are referenced by
+    // bannerImageId; createEvent moves any inline blob out when the event is next written.
     private Blob bannerImageBlob;
+    private String bannerImageId;
+    private int bannerWidth;
+    private int bannerHeight;
+    // Stamped by the server on every write, drives the event catalog's delta sync.
+    private Date updatedAt;
+    // When the main lottery draw completed, null until then. Kept here so edits carry it over.
+    private Date lotteryDrawnAt;
+    // Set on events read back from the EventCatalog, which only holds what the list shows.
+    private transient boolean catalogSummary;
+
+    // A banner picked locally that hasn't been uploaded yet, consumed by createEvent.
+    transient byte[] pendingBanner;
 
     // WARN: DO NOT REMOVE TRANSIENT. WE WILL CONSUME OUR FIRESTORE USAGE FAST (maybe).
     // We don't want this one serialized.
@@ -498,22 +514,74 @@ public class Event implements Serializable {
     }
 
     /**
-     * Fetches the banner image. If it has not yet been decoded it will decode the image from the
-     * base64 image field.
-     * @return the banner image.
+     * Gets the banner image if it is already held locally, decoding it if needed. Banners in the
+     * image store are not fetched here, use {@link BannerImageRepository} with
+     * {@link #getBannerImageId()} for those. Views should go through {@link BannerCache}, which
+     * decodes off the main thread and survives snapshot refreshes.
+     * @return the banner image, or null if it has to be fetched.
      */
     @com.google.firebase.firestore.Exclude
     public Bitmap getBannerImageBitmap() {
         if (bannerImage == null) {
-            byte[] compressedBlob = bannerImageBlob.toBytes();
-            bannerImage = BitmapFactory.decodeByteArray(compressedBlob, 0, compressedBlob.length);
+            byte[] compressed = localBannerBytes();
+            if (compressed != null) {
+                bannerImage = BitmapFactory.decodeByteArray(compressed, 0, compressed.length);
+            }
         }
         return bannerImage;
     }
 
+    /**
+     * Checks whether the event has a banner, either in the image store or held inline.
+     * @return true if there is a banner to show.
+     */
+    @com.google.firebase.firestore.Exclude
+    public boolean hasBannerImage() {
+        return bannerImageId != null || bannerImageBlob != null || pendingBanner != null;
+    }
+
+    /**
+     * Replaces the banner. The image is compressed now and uploaded to the image store the next
+     * time the event is written with {@link EventRepository#createEvent(Event)}.
+     *
+     * @param image The banner, already sized for display.
+     */
+    public void stageBannerImage(Bitmap image) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        image.compress(Bitmap.CompressFormat.JPEG, 70, outputStream);
+        pendingBanner = outputStream.toByteArray();
+        bannerWidth = image.getWidth();
+        bannerHeight = image.getHeight();
+        bannerImage = image;
+    }
+
+    /**
+     * Takes the banner bytes that still need to go to the image store, either a staged banner
+     * or a legacy inline blob, and clears them from the event.
+     *
+     * @return the compressed banner, or null if nothing needs uploading.
+     */
+    byte[] takeBannerForUpload() {
+        byte[] bytes = localBannerBytes();
+        pendingBanner = null;
+        bannerImageBlob = null;
+        return bytes;
+    }
+
+    /**
+     * Gets the compressed banner held on the event itself, either a staged banner or a legacy
+     * inline blob.
+     *
+     * @return the compressed banner, or null if the banner is only in the image store.
+     */
+    byte[] localBannerBytes() {
+        if (pendingBanner != null) return pendingBanner;
+        return bannerImageBlob != null ? bannerImageBlob.toBytes() : null;
+    }
+
     /**
      * Gets the banner image as a Firestore {@link Blob}.
-     * This is the format used for database storage.
+     * Only events written before banners moved to the image store have one.
      *
      * @return The banner image as a Blob.
      */
@@ -525,6 +593,98 @@ public class Event implements Serializable {
      */
     public void setBannerImageBlob(Blob data) { this.bannerImageBlob = data; }
 
+    /**
+     * Gets the key of the banner in the image store.
+     *
+     * @return The content hash of the banner, or null if the event has no stored banner.
+     */
+    public String getBannerImageId() { return bannerImageId; }
+
+    /**
+     * Sets the key of the banner in the image store.
+     *
+     * @param bannerImageId The content hash of the banner.
+     */
+    public void setBannerImageId(String bannerImageId) { this.bannerImageId = bannerImageId; }
+
+    /**
+     * Gets the banner width, available without fetching the image.
+     *
+     * @return The width in pixels, 0 if unknown.
+     */
+    public int getBannerWidth() { return bannerWidth; }
+
+    /**
+     * Sets the banner width.
+     *
+     * @param bannerWidth The width in pixels.
+     */
+    public void setBannerWidth(int bannerWidth) { this.bannerWidth = bannerWidth; }
+
+    /**
+     * Gets the banner height, available without fetching the image.
+     *
+     * @return The height in pixels, 0 if unknown.
+     */
+    public int getBannerHeight() { return bannerHeight; }
+
+    /**
+     * Sets the banner height.
+     *
+     * @param bannerHeight The height in pixels.
+     */
+    public void setBannerHeight(int bannerHeight) { this.bannerHeight = bannerHeight; }
+
+    /**
+     * Gets when the event was last written, as stamped by the server.
+     *
+     * @return The last write time, or null while a write is pending.
+     */
+    @ServerTimestamp
+    public Date getUpdatedAt() { return updatedAt; }
+
+    /**
+     * Sets the last write time. Set it to null before writing so the server stamps it.
+     *
+     * @param updatedAt The last write time.
+     */
+    public void setUpdatedAt(Date updatedAt) { this.updatedAt = updatedAt; }
+
+    /**
+     * Gets when the event's main lottery draw completed, see {@link LotteryEvent#DRAWN_AT}.
+     *
+     * @return The draw time, or null if the lottery hasn't been drawn.
+     */
+    public Date getLotteryDrawnAt() { return lotteryDrawnAt; }
+
+    /**
+     * Sets when the event's main lottery draw completed.
+     *
+     * @param lotteryDrawnAt The draw time, or null if the lottery hasn't been drawn.
+     */
+    public void setLotteryDrawnAt(Date lotteryDrawnAt) { this.lotteryDrawnAt = lotteryDrawnAt; }
+
+    /**
+     * Checks whether the event has any categories set.
+     *
+     * @return true if there are categories.
+     */
+    @com.google.firebase.firestore.Exclude
+    public boolean hasCategories() {
+        return categories != null && !categories.isEmpty();
+    }
+
+    /**
+     * Checks whether this event was read from the {@link EventCatalog}, in which case only the
+     * fields shown in the event list are set and the full event must be loaded before use.
+     *
+     * @return true for catalog summaries.
+     */
+    @com.google.firebase.firestore.Exclude
+    public boolean isCatalogSummary() { return catalogSummary; }
+
+    void markCatalogSummary() { catalogSummary = true; }
+
     public static Bitmap resizeBanner(Bitmap image, final int targetWidth, final int targetHeight)
     throws Exception {
         int w = image.getWidth();
@@ -791,10 +951,7 @@ public class Event implements Serializable {
             // in blurriness on HDPI screens (not really sure) but we're covering it with a gradient
             // anyways so we should be good.
             Bitmap resized = resizeBanner(image, 420, 350);
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            resized.compress(Bitmap.CompressFormat.JPEG, 70, outputStream);
-            event.bannerImageBlob = Blob.fromBytes(outputStream.toByteArray());
-            event.bannerImage = resized;
+            event.stageBannerImage(resized);
             return this;
         }
 
@@ -3,13 +3,16 @@
  * and binds them to the `event_list_item` layout. It's responsible for creating
  * ViewHolders for each item and populating them with the event's data.
  *
+ * Lists are diffed against the previous one on a background thread ({@link ListAdapter}), and
+ * rows are keyed by event id, so an update to one event only rebinds that row, and only the
+ * parts of it that changed: the banner isn't reloaded when just the text changed.
+ *
  * This adapter also implements an OnEventListener interface to handle click events on
  * individual items, delegating the action to the hosting Fragment or Activity.
  */
 package com.rocket.radar.events;
 
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,28 +20,108 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.rocket.radar.R;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+public class EventAdapter extends ListAdapter<Event, EventAdapter.MyViewHolder> {
+    // Change payloads, OR-ed together when a row changed in several ways.
+    private static final int PAYLOAD_TEXT = 1;
+    private static final int PAYLOAD_BANNER = 1 << 1;
 
-public class EventAdapter extends RecyclerView.Adapter<EventAdapter.MyViewHolder> {
     Context context;
-    List<Event> eventList;
     private OnEventListener onEventListener; // <- Add listener member
+    private final BannerCache bannerCache;
+    // Stable ids handed out per event id, so they never collide the way hash codes can.
+    private final Map<String, Long> itemIds = new HashMap<>();
+
+    private static final DiffUtil.ItemCallback<Event> DIFF = new DiffUtil.ItemCallback<Event>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Event oldEvent, @NonNull Event newEvent) {
+            return Objects.equals(oldEvent.getEventId(), newEvent.getEventId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Event oldEvent, @NonNull Event newEvent) {
+            return changes(oldEvent, newEvent) == 0;
+        }
+
+        @Nullable
+        @Override
+        public Object getChangePayload(@NonNull Event oldEvent, @NonNull Event newEvent) {
+            return changes(oldEvent, newEvent);
+        }
+    };
 
     /**
-     * Constructs the EventAdapter.
+     * @return The {@code PAYLOAD_} bits of the parts of a row that differ between two versions
+     * of an event.
+     */
+    private static int changes(Event oldEvent, Event newEvent) {
+        int changes = 0;
+        if (!Objects.equals(oldEvent.getEventTitle(), newEvent.getEventTitle())
+                || !Objects.equals(oldEvent.getTagline(), newEvent.getTagline())
+                || !Objects.equals(oldEvent.getEventStartDate(), newEvent.getEventStartDate())) {
+            changes |= PAYLOAD_TEXT;
+        }
+        if (!Objects.equals(oldEvent.getBannerImageId(), newEvent.getBannerImageId())
+                || oldEvent.getImage() != newEvent.getImage()) {
+            changes |= PAYLOAD_BANNER;
+        }
+        return changes;
+    }
+
+    /**
+     * Constructs the EventAdapter. It starts out empty, see {@link #setEvents(List)}.
      *
      * @param context         The context from which the adapter is created.
-     * @param eventList       The list of Event objects to display.
      * @param onEventListener The listener that will handle item clicks.
      */
-    public EventAdapter(Context context, List<Event> eventList, OnEventListener onEventListener) {
+    public EventAdapter(Context context, OnEventListener onEventListener) {
+        super(DIFF);
         this.context = context;
-        this.eventList = eventList;
         this.onEventListener = onEventListener;
+        this.bannerCache = BannerCache.getInstance(context);
+        setHasStableIds(true);
+    }
+
+    /**
+     * Replaces the events shown. The list is copied, so the caller is free to change it later.
+     *
+     * @param events The events to display, in order.
+     */
+    public void setEvents(List<Event> events) {
+        submitList(new ArrayList<>(events));
+    }
+
+    /**
+     * Gets the event shown at a position, as passed to {@link OnEventListener#onEventClick(int)}.
+     *
+     * @param position A position in the list currently shown.
+     * @return The event at that position.
+     */
+    public Event getEvent(int position) {
+        return getItem(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        String eventId = getItem(position).getEventId();
+        Long id = itemIds.get(eventId);
+        if (id == null) {
+            id = (long) itemIds.size();
+            itemIds.put(eventId, id);
+        }
+        return id;
     }
 
     @NonNull
@@ -52,30 +135,40 @@ public class EventAdapter extends RecyclerView.Adapter<EventAdapter.MyViewHolder
 
     @Override
     public void onBindViewHolder(@NonNull EventAdapter.MyViewHolder holder, int position) {
-        Event event = eventList.get(position);
-
-        // Display event banner image if available, otherwise use default resource
-        if (event.getBannerImageBlob() != null) {
-            Bitmap bannerBitmap = event.getBannerImageBitmap();
-            if (bannerBitmap != null) {
-                holder.eventImage.setImageBitmap(bannerBitmap);
-            } else {
-                // Fallback to default image if bitmap conversion fails
-                holder.eventImage.setImageResource(event.getImage());
-            }
-        } else {
-            // Use default image resource if no banner blob exists
-            holder.eventImage.setImageResource(event.getImage());
+        bind(holder, getItem(position), PAYLOAD_TEXT | PAYLOAD_BANNER);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull EventAdapter.MyViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
         }
+        int changes = 0;
+        for (Object payload : payloads) {
+            changes |= (Integer) payload;
+        }
+        bind(holder, getItem(position), changes);
+    }
 
-        holder.eventTitle.setText(event.getEventTitle());
-        holder.date.setText(event.getFormattedDate());
-        holder.tagline.setText(event.getTagline());
+    private void bind(MyViewHolder holder, Event event, int parts) {
+        if ((parts & PAYLOAD_BANNER) != 0) {
+            // Decoded off the main thread, the default image shows until the banner is ready.
+            // Always pass a real placeholder so a recycled row never keeps the previous banner.
+            int placeholder = event.getImage() != 0 ? event.getImage() : R.drawable.placeholder_image;
+            bannerCache.into(event, holder.eventImage, placeholder);
+        }
+        if ((parts & PAYLOAD_TEXT) != 0) {
+            holder.eventTitle.setText(event.getEventTitle());
+            holder.date.setText(event.getFormattedDate());
+            holder.tagline.setText(event.getTagline());
+        }
     }
 
     @Override
-    public int getItemCount() {
-        return eventList.size();
+    public void onViewRecycled(@NonNull EventAdapter.MyViewHolder holder) {
+        super.onViewRecycled(holder);
+        bannerCache.cancel(holder.eventImage);
     }
 
     /**
@@ -106,7 +199,10 @@ public class EventAdapter extends RecyclerView.Adapter<EventAdapter.MyViewHolder
 
         @Override
         public void onClick(View v) {
-            onEventListener.onEventClick(getAdapterPosition());
+            int position = getBindingAdapterPosition();
+            // The row is being removed by a diff that hasn't been laid out yet.
+            if (position == RecyclerView.NO_POSITION) return;
+            onEventListener.onEventClick(position);
         }
     }
 
@@ -118,7 +214,8 @@ public class EventAdapter extends RecyclerView.Adapter<EventAdapter.MyViewHolder
     public interface OnEventListener {
         /**
          * Called when a view has been clicked.
-         * @param position The position of the clicked item in the adapter.
+         * @param position The position of the clicked item in the adapter, see
+         *                 {@link EventAdapter#getEvent(int)}.
          */
         void onEventClick(int position);
     }
@@ -0,0 +1,420 @@
+package com.rocket.radar.events;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-device copy of the event summaries the event list shows, so a cold start can render
+ * straight from disk before any round trip.
+ *
+ * <p>Rows are kept in SQLite, indexed by start date. The catalog stays current with a delta
+ * sync: every event write stamps a server {@code updatedAt} (see
+ * {@link EventRepository#createEvent(Event)}), and {@link #sync} only asks for events whose
+ * {@code updatedAt} is past the newest one already stored. The watermark comes from the server's
+ * clock, so a wrong device clock can't skip changes.</p>
+ *
+ * <p>The very first sync copies the whole collection instead, since events written before the
+ * stamp existed don't have one. It pages by document id and stores the last id of every page as
+ * a cursor, so an interrupted copy resumes where it stopped. The watermark is set to the newest
+ * stamp on the server before the copy starts, and the catalog only switches to the delta sync
+ * once the copy finished, which then also picks up events changed while it ran.</p>
+ *
+ * <p>Events read back from the catalog are summaries: only the fields the list needs are set,
+ * and {@link Event#isCatalogSummary()} is true. Load the full event before showing or writing
+ * it. Deleted events are not tracked, past events simply drop out of {@link #upcoming}.</p>
+ *
+ * <p>The catalog also feeds an {@link EventSearchIndex} over its upcoming events, see
+ * {@link #getSearchIndex()}.</p>
+ *
+ * <p>Disk work runs on a background thread. All public methods must be called from the main
+ * thread and answer on it.</p>
+ */
+public class EventCatalog extends SQLiteOpenHelper {
+    private static final String TAG = "EventCatalog";
+
+    private static final String DATABASE = "event_catalog.db";
+    private static final int VERSION = 2;
+
+    private static final String EVENTS = "events";
+    private static final String META = "meta";
+    private static final String WATERMARK_KEY = "lastUpdatedAt";
+    // Set once the first sync copied every event. Until then it resumes after the cursor.
+    private static final String INITIAL_DONE_KEY = "initialSyncComplete";
+    private static final String INITIAL_CURSOR_KEY = "initialSyncAfter";
+
+    private static final String COL_ID = "event_id";
+    private static final String COL_TITLE = "title";
+    private static final String COL_TAGLINE = "tagline";
+    private static final String COL_DESCRIPTION = "description";
+    private static final String COL_CATEGORIES = "categories";
+    private static final String COL_START = "start_date";
+    private static final String COL_UPDATED = "updated_at";
+    private static final String COL_BANNER_ID = "banner_image_id";
+    private static final String COL_BANNER_WIDTH = "banner_width";
+    private static final String COL_BANNER_HEIGHT = "banner_height";
+
+    // Categories come from a fixed list without commas, see Event.allEventCategories.
+    private static final String CATEGORY_SEPARATOR = ",";
+
+    /**
+     * Events fetched per sync page.
+     */
+    private static final int SYNC_PAGE_SIZE = 200;
+
+    private static EventCatalog instance = null;
+
+    /**
+     * Receives events read from the catalog.
+     */
+    public interface EventsListener {
+        void onEvents(List<Event> events);
+    }
+
+    /**
+     * Reports on a sync.
+     */
+    public interface SyncListener {
+        /**
+         * @param changed Events added or updated by this sync.
+         */
+        void onSynced(int changed);
+
+        void onError(Exception e);
+    }
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean syncing = false;
+
+    private final EventSearchIndex searchIndex = new EventSearchIndex();
+    // Set once the index was asked for, every sync stores into it from then on.
+    private volatile boolean searchIndexLoaded = false;
+
+    private EventCatalog(Context context) {
+        super(context, DATABASE, null, VERSION);
+    }
+
+    public static synchronized EventCatalog getInstance(Context context) {
+        if (instance == null) {
+            instance = new EventCatalog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + EVENTS + " ("
+                + COL_ID + " TEXT PRIMARY KEY, "
+                + COL_TITLE + " TEXT, "
+                + COL_TAGLINE + " TEXT, "
+                + COL_DESCRIPTION + " TEXT, "
+                + COL_CATEGORIES + " TEXT, "
+                + COL_START + " INTEGER, "
+                + COL_UPDATED + " INTEGER, "
+                + COL_BANNER_ID + " TEXT, "
+                + COL_BANNER_WIDTH + " INTEGER, "
+                + COL_BANNER_HEIGHT + " INTEGER)");
+        db.execSQL("CREATE INDEX events_by_start ON " + EVENTS + " (" + COL_START + ")");
+        // No type on value, so document ids are stored as they are and never read as numbers.
+        db.execSQL("CREATE TABLE " + META + " (key TEXT PRIMARY KEY, value)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // It's only a cache, the next sync refills it.
+        db.execSQL("DROP TABLE IF EXISTS " + EVENTS);
+        db.execSQL("DROP TABLE IF EXISTS " + META);
+        onCreate(db);
+    }
+
+    /**
+     * Reads the stored events starting at or after a moment, soonest first.
+     *
+     * @param from Earliest start date to include.
+     * @param limit Most events to return.
+     * @param listener Receives the summaries, empty before the first sync.
+     */
+    public void upcoming(Date from, int limit, EventsListener listener) {
+        executor.execute(() -> {
+            List<Event> events = readUpcoming(from, String.valueOf(limit));
+            mainHandler.post(() -> listener.onEvents(events));
+        });
+    }
+
+    /**
+     * Full-text index over the catalog's upcoming events. The first call fills it from disk in
+     * the background, so it can come up short for a moment, and every sync after that adds the
+     * events it stores. Searching it is cheap enough to do on the main thread as the user types.
+     */
+    public EventSearchIndex getSearchIndex() {
+        if (!searchIndexLoaded) {
+            searchIndexLoaded = true;
+            executor.execute(() -> {
+                List<Event> events = readUpcoming(new Date(), null);
+                long started = SystemClock.elapsedRealtime();
+                searchIndex.putAll(events);
+                Log.d(TAG, "Indexed " + events.size() + " events for search in " + (SystemClock.elapsedRealtime() - started) + " ms.");
+            });
+        }
+        return searchIndex;
+    }
+
+    /**
+     * @param limit Most rows to read, or null for all of them.
+     */
+    private List<Event> readUpcoming(Date from, String limit) {
+        List<Event> events = new ArrayList<>();
+        long started = SystemClock.elapsedRealtime();
+        try (Cursor cursor = getReadableDatabase().query(EVENTS, null,
+                COL_START + " >= ?", new String[]{String.valueOf(from.getTime())},
+                null, null, COL_START, limit)) {
+            while (cursor.moveToNext()) {
+                events.add(fromRow(cursor));
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to read the event catalog.", e);
+        }
+        Log.d(TAG, "Read " + events.size() + " events from the catalog in " + (SystemClock.elapsedRealtime() - started) + " ms.");
+        return events;
+    }
+
+    /**
+     * Pulls every event changed since the last sync into the catalog, or carries on with the
+     * first full copy if that hasn't finished. Does nothing if a sync is already running.
+     *
+     * @param events The events collection.
+     * @param listener Receives the outcome.
+     */
+    public void sync(CollectionReference events, SyncListener listener) {
+        if (syncing) return;
+        syncing = true;
+        executor.execute(() -> {
+            long watermark = readWatermark();
+            boolean initialDone = readMeta(INITIAL_DONE_KEY) != null;
+            String cursor = readMeta(INITIAL_CURSOR_KEY);
+            mainHandler.post(() -> {
+                if (initialDone) {
+                    Query changed = events.whereGreaterThan("updatedAt", new Timestamp(new Date(watermark))).orderBy("updatedAt");
+                    syncPage(changed.limit(SYNC_PAGE_SIZE), null, false, 0, listener);
+                } else if (watermark == 0) {
+                    startInitialSync(events, listener);
+                } else {
+                    Query all = events.orderBy(FieldPath.documentId());
+                    if (cursor != null) all = all.startAfter(cursor);
+                    syncPage(all.limit(SYNC_PAGE_SIZE), null, true, 0, listener);
+                }
+            });
+        });
+    }
+
+    /**
+     * Takes the newest stamp on the server as the watermark the delta sync will start from, then
+     * starts the full copy.
+     */
+    private void startInitialSync(CollectionReference events, SyncListener listener) {
+        events.orderBy("updatedAt", Query.Direction.DESCENDING).limit(1).get()
+                .addOnSuccessListener(newest -> {
+                    Timestamp stamp = newest.isEmpty() ? null : newest.getDocuments().get(0).getTimestamp("updatedAt");
+                    // Nothing stamped yet, everything stamped from now on is newer.
+                    long watermark = stamp == null ? 1 : stamp.toDate().getTime();
+                    executor.execute(() -> {
+                        putMeta(getWritableDatabase(), WATERMARK_KEY, watermark);
+                        mainHandler.post(() -> syncPage(events.orderBy(FieldPath.documentId()).limit(SYNC_PAGE_SIZE), null, true, 0, listener));
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    syncing = false;
+                    Log.e(TAG, "Event catalog sync failed.", e);
+                    listener.onError(e);
+                });
+    }
+
+    /**
+     * @param initial Whether this is the first full copy, paged by document id, rather than the
+     *                delta sync.
+     */
+    private void syncPage(Query page, DocumentSnapshot after, boolean initial, int changedSoFar, SyncListener listener) {
+        (after == null ? page : page.startAfter(after)).get()
+                .addOnSuccessListener(snapshot -> {
+                    List<DocumentSnapshot> docs = snapshot.getDocuments();
+                    List<Event> changed = new ArrayList<>(docs.size());
+                    for (DocumentSnapshot doc : docs) {
+                        Event event = doc.toObject(Event.class);
+                        if (event == null) continue;
+                        if (event.getEventId() == null) event.setEventId(doc.getId());
+                        changed.add(event);
+                    }
+                    int changedNow = changedSoFar + changed.size();
+                    boolean more = docs.size() == SYNC_PAGE_SIZE;
+                    executor.execute(() -> {
+                        if (initial) {
+                            String cursor = docs.isEmpty() ? null : docs.get(docs.size() - 1).getId();
+                            storeInitial(changed, cursor, !more);
+                        } else {
+                            store(changed);
+                        }
+                        mainHandler.post(() -> {
+                            if (more) {
+                                syncPage(page, docs.get(docs.size() - 1), initial, changedNow, listener);
+                            } else {
+                                syncing = false;
+                                Log.d(TAG, "Synced " + changedNow + " changed events.");
+                                listener.onSynced(changedNow);
+                            }
+                        });
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    syncing = false;
+                    Log.e(TAG, "Event catalog sync failed.", e);
+                    listener.onError(e);
+                });
+    }
+
+    /**
+     * Writes events and advances the watermark in one transaction, so a sync interrupted between
+     * pages resumes after the last page that was stored.
+     */
+    private void store(List<Event> events) {
+        if (events.isEmpty()) return;
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            long watermark = readWatermark();
+            for (Event event : events) {
+                db.insertWithOnConflict(EVENTS, null, toRow(event), SQLiteDatabase.CONFLICT_REPLACE);
+                if (event.getUpdatedAt() != null) {
+                    watermark = Math.max(watermark, event.getUpdatedAt().getTime());
+                }
+            }
+            putMeta(db, WATERMARK_KEY, watermark);
+            db.setTransactionSuccessful();
+            indexStored(events);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to store synced events.", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Writes a page of the first full copy and moves its cursor past it in one transaction, so
+     * an interrupted copy resumes after the last page that was stored. The watermark was set
+     * before the copy and is left alone.
+     *
+     * @param cursor Id of the page's last document, null for an empty page.
+     * @param done Whether this was the last page.
+     */
+    private void storeInitial(List<Event> events, String cursor, boolean done) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (Event event : events) {
+                db.insertWithOnConflict(EVENTS, null, toRow(event), SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            if (cursor != null) putMeta(db, INITIAL_CURSOR_KEY, cursor);
+            if (done) putMeta(db, INITIAL_DONE_KEY, 1);
+            db.setTransactionSuccessful();
+            indexStored(events);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to store synced events.", e);
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private void indexStored(List<Event> events) {
+        if (!searchIndexLoaded) return;
+        Date now = new Date();
+        for (Event event : events) {
+            if (event.getEventStartDate() != null && !event.getEventStartDate().before(now)) {
+                searchIndex.put(event);
+            } else {
+                searchIndex.remove(event.getEventId());
+            }
+        }
+    }
+
+    private long readWatermark() {
+        String watermark = readMeta(WATERMARK_KEY);
+        return watermark == null ? 0 : Long.parseLong(watermark);
+    }
+
+    /**
+     * @return The value stored under a meta key, or null if there is none.
+     */
+    private String readMeta(String key) {
+        try (Cursor cursor = getReadableDatabase().query(META, new String[]{"value"},
+                "key = ?", new String[]{key}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    private static void putMeta(SQLiteDatabase db, String key, Object value) {
+        ContentValues meta = new ContentValues();
+        meta.put("key", key);
+        if (value instanceof String) {
+            meta.put("value", (String) value);
+        } else {
+            meta.put("value", ((Number) value).longValue());
+        }
+        db.insertWithOnConflict(META, null, meta, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private static ContentValues toRow(Event event) {
+        ContentValues row = new ContentValues();
+        row.put(COL_ID, event.getEventId());
+        row.put(COL_TITLE, event.getEventTitle());
+        row.put(COL_TAGLINE, event.getTagline());
+        row.put(COL_DESCRIPTION, event.getDescription());
+        row.put(COL_CATEGORIES, event.hasCategories() ? TextUtils.join(CATEGORY_SEPARATOR, event.getCategories()) : "");
+        row.put(COL_START, event.getEventStartDate() == null ? null : event.getEventStartDate().getTime());
+        row.put(COL_UPDATED, event.getUpdatedAt() == null ? null : event.getUpdatedAt().getTime());
+        row.put(COL_BANNER_ID, event.getBannerImageId());
+        row.put(COL_BANNER_WIDTH, event.getBannerWidth());
+        row.put(COL_BANNER_HEIGHT, event.getBannerHeight());
+        return row;
+    }
+
+    private static Event fromRow(Cursor cursor) {
+        Event event = new Event();
+        event.setEventId(cursor.getString(cursor.getColumnIndexOrThrow(COL_ID)));
+        event.setEventTitle(cursor.getString(cursor.getColumnIndexOrThrow(COL_TITLE)));
+        event.setTagline(cursor.getString(cursor.getColumnIndexOrThrow(COL_TAGLINE)));
+        event.setDescription(cursor.getString(cursor.getColumnIndexOrThrow(COL_DESCRIPTION)));
+        String categories = cursor.getString(cursor.getColumnIndexOrThrow(COL_CATEGORIES));
+        event.setCategories(TextUtils.isEmpty(categories)
+                ? new ArrayList<>()
+                : Arrays.asList(categories.split(CATEGORY_SEPARATOR)));
+        int start = cursor.getColumnIndexOrThrow(COL_START);
+        if (!cursor.isNull(start)) event.setEventStartDate(new Date(cursor.getLong(start)));
+        int updated = cursor.getColumnIndexOrThrow(COL_UPDATED);
+        if (!cursor.isNull(updated)) event.setUpdatedAt(new Date(cursor.getLong(updated)));
+        event.setBannerImageId(cursor.getString(cursor.getColumnIndexOrThrow(COL_BANNER_ID)));
+        event.setBannerWidth(cursor.getInt(cursor.getColumnIndexOrThrow(COL_BANNER_WIDTH)));
+        event.setBannerHeight(cursor.getInt(cursor.getColumnIndexOrThrow(COL_BANNER_HEIGHT)));
+        event.markCatalogSummary();
+        return event;
+    }
+}
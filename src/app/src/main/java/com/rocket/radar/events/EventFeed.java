@@ -0,0 +1,193 @@
+package com.rocket.radar.events;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A cursor paginated view over the upcoming events ordered by {@code eventStartDate}.
+ *
+ * <p>Pages are fetched one at a time with {@link #loadNextPage()} as the list nears its end.
+ * Only the pages currently on screen (see {@link #setVisibleWindow(Collection)}) hold a live
+ * snapshot listener, every other page is kept as the one-off snapshot it was loaded with. Call
+ * {@link #close()} when the owning view is destroyed so the listeners are removed.</p>
+ */
+public class EventFeed {
+    private static final String TAG = "EventFeed";
+
+    /**
+     * A contiguous run of events bounded by the first and last document of the page when it was
+     * loaded. The bounds never move so neighbouring pages never overlap.
+     */
+    private static class Page {
+        DocumentSnapshot first;
+        DocumentSnapshot last;
+        List<Event> events = new ArrayList<>();
+        ListenerRegistration registration;
+    }
+
+    private final Query query;
+    private final int pageSize;
+    private final List<Page> pages = new ArrayList<>();
+    private final MutableLiveData<List<Event>> eventsLiveData = new MutableLiveData<>(new ArrayList<>());
+
+    private boolean loading = false;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    /**
+     * @param query An ordered query over the events collection. The feed adds its own cursors and
+     *              limits on top of this.
+     * @param pageSize Number of events fetched per page.
+     */
+    EventFeed(Query query, int pageSize) {
+        this.query = query;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @return LiveData holding every event loaded so far, in feed order.
+     */
+    public LiveData<List<Event>> getEvents() {
+        return eventsLiveData;
+    }
+
+    /**
+     * @return true once a page shorter than the page size came back, meaning there is nothing
+     * more to load.
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Fetches the page following the last loaded one. Does nothing if a page is already in
+     * flight or the feed is exhausted.
+     */
+    public void loadNextPage() {
+        if (loading || exhausted || closed) return;
+        loading = true;
+
+        Query pageQuery = query.limit(pageSize);
+        if (!pages.isEmpty()) {
+            pageQuery = pageQuery.startAfter(pages.get(pages.size() - 1).last);
+        }
+
+        pageQuery.get()
+                .addOnSuccessListener(snapshot -> {
+                    loading = false;
+                    if (closed) return;
+                    if (snapshot.size() < pageSize) {
+                        exhausted = true;
+                    }
+                    if (snapshot.isEmpty()) {
+                        // Tell observers a feed with no matches at all is final.
+                        if (pages.isEmpty()) publish();
+                        return;
+                    }
+
+                    Page page = new Page();
+                    fillPage(page, snapshot);
+                    pages.add(page);
+                    Log.d(TAG, "Loaded page " + pages.size() + " with " + page.events.size() + " events.");
+
+                    // The first page is what the user sees on open so keep it live from the start.
+                    if (pages.size() == 1) {
+                        listen(page);
+                    }
+                    publish();
+                })
+                .addOnFailureListener(e -> {
+                    loading = false;
+                    Log.e(TAG, "Failed to load event page.", e);
+                });
+    }
+
+    /**
+     * Moves the live listeners to the pages holding the given events and detaches every other
+     * page.
+     *
+     * @param visibleEventIds Ids of the events currently laid out on screen.
+     */
+    public void setVisibleWindow(Collection<String> visibleEventIds) {
+        if (closed || visibleEventIds.isEmpty()) return;
+        for (Page page : pages) {
+            boolean visible = false;
+            for (Event event : page.events) {
+                if (visibleEventIds.contains(event.getEventId())) {
+                    visible = true;
+                    break;
+                }
+            }
+            if (visible && page.registration == null) {
+                listen(page);
+            } else if (!visible && page.registration != null) {
+                page.registration.remove();
+                page.registration = null;
+            }
+        }
+    }
+
+    /**
+     * Removes every listener held by the feed. The feed can't be used after this.
+     */
+    public void close() {
+        closed = true;
+        for (Page page : pages) {
+            if (page.registration != null) {
+                page.registration.remove();
+                page.registration = null;
+            }
+        }
+    }
+
+    private void listen(Page page) {
+        page.registration = query.startAt(page.first).endAt(page.last)
+                .addSnapshotListener((snapshot, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Listen failed on event page.", error);
+                        return;
+                    }
+                    if (snapshot == null || closed) return;
+                    // Keep the original bounds if the page emptied out so the cursors stay valid.
+                    page.events.clear();
+                    for (QueryDocumentSnapshot doc : snapshot) {
+                        page.events.add(doc.toObject(Event.class));
+                    }
+                    publish();
+                });
+    }
+
+    private static void fillPage(Page page, QuerySnapshot snapshot) {
+        List<DocumentSnapshot> docs = snapshot.getDocuments();
+        page.first = docs.get(0);
+        page.last = docs.get(docs.size() - 1);
+        page.events.clear();
+        for (DocumentSnapshot doc : docs) {
+            page.events.add(doc.toObject(Event.class));
+        }
+    }
+
+    private void publish() {
+        List<Event> all = new ArrayList<>();
+        for (Page page : pages) {
+            all.addAll(page.events);
+        }
+        eventsLiveData.setValue(all);
+    }
+}
@@ -0,0 +1,223 @@
+package com.rocket.radar.events;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * In-memory index answering the event list's filters with set operations.
+ *
+ * <p>Every event id is dictionary-encoded to a small integer slot, and every category to a
+ * code. Each category, the user's waitlist and each event source (the discover feed and the
+ * separately fetched waitlisted events) keeps a {@link BitSet} of slots, and start dates map to
+ * the slots starting then. A filter is then a few bitset intersections instead of a pass over
+ * every event with list lookups.</p>
+ *
+ * <p>Updates are incremental: {@link #setFeedEvents} and {@link #setWaitlistEvents} diff the new
+ * list against what the source held and only touch the events that were added, changed or
+ * dropped. Slots of events no source holds any more are reused. Not thread safe, use from the
+ * main thread.</p>
+ */
+public class EventIndex {
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final List<Event> bySlot = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+
+    private final Map<String, Integer> categoryCodes = new HashMap<>();
+    private final List<BitSet> slotsByCategory = new ArrayList<>();
+    private final NavigableMap<Long, BitSet> slotsByStart = new TreeMap<>();
+
+    private final BitSet feed = new BitSet();
+    private final BitSet fetchedWaitlist = new BitSet();
+    private final BitSet waitlisted = new BitSet();
+    private Set<String> waitlistIds = new HashSet<>();
+
+    /**
+     * Replaces the events loaded by the discover feed.
+     */
+    public void setFeedEvents(Collection<Event> events) {
+        replaceSource(feed, events);
+    }
+
+    /**
+     * Replaces the waitlisted events fetched by id.
+     */
+    public void setWaitlistEvents(Collection<Event> events) {
+        replaceSource(fetchedWaitlist, events);
+    }
+
+    /**
+     * Sets which events the user is on the waitlist of.
+     *
+     * @param eventIds The user's waitlisted event ids.
+     */
+    public void setWaitlist(Collection<String> eventIds) {
+        Set<String> ids = new HashSet<>(eventIds);
+        if (ids.equals(waitlistIds)) return;
+        waitlistIds = ids;
+        waitlisted.clear();
+        for (String id : ids) {
+            Integer slot = slotById.get(id);
+            if (slot != null) waitlisted.set(slot);
+        }
+    }
+
+    /**
+     * Feed events the user isn't waitlisted for, in every given category and starting after a
+     * date, soonest first.
+     *
+     * @param categories Categories an event must all have. Empty means any.
+     * @param startingAfter Only events starting after this, or null for any.
+     */
+    public List<Event> discover(Collection<String> categories, Date startingAfter) {
+        BitSet matches = (BitSet) feed.clone();
+        matches.andNot(waitlisted);
+        for (String category : categories) {
+            Integer code = categoryCodes.get(category);
+            if (code == null) return new ArrayList<>();
+            matches.and(slotsByCategory.get(code));
+        }
+        NavigableMap<Long, BitSet> starts = startingAfter == null
+                ? slotsByStart
+                : slotsByStart.subMap(startingAfter.getTime(), false, Long.MAX_VALUE, false);
+        return inStartOrder(matches, starts);
+    }
+
+    /**
+     * Events from either source the user is waitlisted for, soonest first.
+     */
+    public List<Event> waitlisted() {
+        BitSet matches = (BitSet) feed.clone();
+        matches.or(fetchedWaitlist);
+        matches.and(waitlisted);
+        return inStartOrder(matches, slotsByStart);
+    }
+
+    /**
+     * @return Number of distinct events held.
+     */
+    public int size() {
+        return slotById.size();
+    }
+
+    private List<Event> inStartOrder(BitSet matches, NavigableMap<Long, BitSet> starts) {
+        List<Event> result = new ArrayList<>(matches.cardinality());
+        if (matches.isEmpty()) return result;
+        for (BitSet bucket : starts.values()) {
+            for (int slot = bucket.nextSetBit(0); slot >= 0; slot = bucket.nextSetBit(slot + 1)) {
+                if (matches.get(slot)) result.add(bySlot.get(slot));
+            }
+        }
+        return result;
+    }
+
+    private void replaceSource(BitSet source, Collection<Event> events) {
+        BitSet next = new BitSet();
+        for (Event event : events) {
+            if (event.getEventId() == null) continue;
+            next.set(put(event));
+        }
+        BitSet dropped = (BitSet) source.clone();
+        dropped.andNot(next);
+        source.clear();
+        source.or(next);
+        for (int slot = dropped.nextSetBit(0); slot >= 0; slot = dropped.nextSetBit(slot + 1)) {
+            if (!feed.get(slot) && !fetchedWaitlist.get(slot)) release(slot);
+        }
+    }
+
+    /**
+     * Adds an event or updates the one with the same id.
+     *
+     * @return The event's slot.
+     */
+    private int put(Event event) {
+        Integer existing = slotById.get(event.getEventId());
+        if (existing != null) {
+            Event old = bySlot.get(existing);
+            if (sameKeys(old, event)) {
+                bySlot.set(existing, event);
+                return existing;
+            }
+            unindex(existing, old);
+            bySlot.set(existing, event);
+            index(existing, event);
+            return existing;
+        }
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = bySlot.size();
+            bySlot.add(event);
+        } else {
+            slot = freeSlots.pop();
+            bySlot.set(slot, event);
+        }
+        slotById.put(event.getEventId(), slot);
+        index(slot, event);
+        if (waitlistIds.contains(event.getEventId())) waitlisted.set(slot);
+        return slot;
+    }
+
+    private void release(int slot) {
+        Event event = bySlot.get(slot);
+        unindex(slot, event);
+        slotById.remove(event.getEventId());
+        waitlisted.clear(slot);
+        bySlot.set(slot, null);
+        freeSlots.push(slot);
+    }
+
+    private void index(int slot, Event event) {
+        if (event.hasCategories()) {
+            for (String category : event.getCategories()) {
+                Integer code = categoryCodes.get(category);
+                if (code == null) {
+                    code = slotsByCategory.size();
+                    categoryCodes.put(category, code);
+                    slotsByCategory.add(new BitSet());
+                }
+                slotsByCategory.get(code).set(slot);
+            }
+        }
+        slotsByStart.computeIfAbsent(startKey(event), key -> new BitSet()).set(slot);
+    }
+
+    private void unindex(int slot, Event event) {
+        if (event.hasCategories()) {
+            for (String category : event.getCategories()) {
+                slotsByCategory.get(categoryCodes.get(category)).clear(slot);
+            }
+        }
+        long key = startKey(event);
+        BitSet bucket = slotsByStart.get(key);
+        if (bucket != null) {
+            bucket.clear(slot);
+            if (bucket.isEmpty()) slotsByStart.remove(key);
+        }
+    }
+
+    /**
+     * Whether the fields the index is keyed on are unchanged, so an update only swaps the event.
+     */
+    private static boolean sameKeys(Event a, Event b) {
+        return startKey(a) == startKey(b)
+                && a.hasCategories() == b.hasCategories()
+                && (!a.hasCategories() || a.getCategories().equals(b.getCategories()));
+    }
+
+    private static long startKey(Event event) {
+        // Events without a date sort last, matching an open-ended start.
+        return event.getEventStartDate() == null ? Long.MAX_VALUE : event.getEventStartDate().getTime();
+    }
+}
@@ -1,11 +1,14 @@
 package com.rocket.radar.events;
 
 import android.os.Bundle;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.EditText;
 import android.widget.TextView; // Import TextView
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -30,7 +33,7 @@ import java.util.Date;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Objects;
 
 /**
  * This fragment is responsible for displaying a list of events.
@@ -40,17 +43,33 @@ import java.util.stream.Collectors;
  */
 public class EventListFragment extends Fragment implements EventAdapter.OnEventListener {
 
+    private static final int PAGE_SIZE = 20;
+    // How close to the end of the list we get before asking the feed for another page.
+    private static final int PREFETCH_DISTANCE = 5;
+    private static final int SEARCH_LIMIT = 50;
+
     private RecyclerView eventRecyclerView;
     private EventAdapter adapter;
-    private List<Event> displayedEvents;
-    private List<Event> allEvents;
+    // Feed and waitlisted events, indexed so every filter is a few bitset intersections.
+    private EventIndex eventIndex;
+    private boolean feedHasEvents = false;
+    private List<String> fetchedWaitlistIds;
     private EventRepository eventRepository;
+    private EventFeed eventFeed;
+    // The filters pushed into the open feed's query.
+    private List<String> feedCategories;
+    private Date feedStartingAfter;
+    private EventCatalog eventCatalog;
+    private EventSearchIndex searchIndex;
+    private EditText searchInput;
+    private String searchQuery = "";
     private ProfileViewModel profileViewModel;
     private ProfileModel currentUserProfile;
     private Button notificationButton;
     private MaterialButtonToggleGroup toggleGroup;
     private TextView notificationBadge;
     private NotificationRepository notificationRepository;
+    private boolean unreadCountReconciled = false;
     private Button filterButton;
     private List<Integer> categories;
     private ChipGroup chipGroup;
@@ -73,6 +92,7 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
         notificationBadge = view.findViewById(R.id.notification_badge);
         filterButton = view.findViewById(R.id.button_filter); // Initialize filter button
         chipGroup = view.findViewById(R.id.category_chip_group_event_list);
+        searchInput = view.findViewById(R.id.search_events_input);
         selectedFilters = new ArrayList<>();
         filterModel = new ViewModelProvider(requireActivity()).get(FilterModel.class);
 
@@ -97,11 +117,15 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
         // Initialization
         eventRepository = EventRepository.getInstance();
         profileViewModel = new ViewModelProvider(requireActivity()).get(ProfileViewModel.class);
-        allEvents = new ArrayList<>();
-        displayedEvents = new ArrayList<>();
-        adapter = new EventAdapter(getContext(), displayedEvents, this);
+        eventIndex = new EventIndex();
+        fetchedWaitlistIds = new ArrayList<>();
+        adapter = new EventAdapter(getContext(), this);
         eventRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         eventRecyclerView.setAdapter(adapter);
+        eventCatalog = EventCatalog.getInstance(requireContext());
+        searchIndex = eventCatalog.getSearchIndex();
+        setupPaging();
+        setupSearch();
 
         notificationRepository = new NotificationRepository();
 
@@ -135,23 +159,163 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
         observeUnreadNotifications();
     }
 
+    /**
+     * Shows the upcoming events stored in the {@link EventCatalog} straight away, then swaps in
+     * the live feed once its first page arrives. The catalog is synced in the background so the
+     * next cold start is current too.
+     */
     private void observeEvents() {
-        eventRepository.getAllEvents().observe(getViewLifecycleOwner(), newEvents -> {
+        eventCatalog.upcoming(new Date(), PAGE_SIZE, cached -> {
+            // The feed beat the disk, or the view is gone.
+            if (getView() == null || feedHasEvents || cached.isEmpty()) return;
+            Log.d("EventListFragment", "Showing " + cached.size() + " events from the catalog.");
+            eventIndex.setFeedEvents(cached);
+            filterAndDisplayEvents();
+        });
+        openFeed();
+        filterModel.getFilters().observe(getViewLifecycleOwner(), filters -> openFeed());
+        filterModel.getDate().observe(getViewLifecycleOwner(), date -> openFeed());
+        eventRepository.syncCatalog(eventCatalog, new EventCatalog.SyncListener() {
+            @Override
+            public void onSynced(int changed) {
+                // The search index took the changes in too.
+                if (changed > 0 && getView() != null && !searchQuery.isEmpty()) filterAndDisplayEvents();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.w("EventListFragment", "Event catalog sync failed, it is retried next launch.", e);
+            }
+        });
+    }
+
+    /**
+     * Opens the discover feed with the selected categories and date pushed into its query, so
+     * only matching events are read. Reopens it when the filters change, and does nothing if
+     * they haven't. The date only applies alongside categories, as in
+     * {@link #filterAndDisplayEvents()}.
+     */
+    private void openFeed() {
+        List<String> categories = new ArrayList<>();
+        Date startingAfter = null;
+        ArrayList<String> filters = filterModel.getFilters().getValue();
+        if (filters != null && !filters.isEmpty()) {
+            categories.addAll(filters);
+            startingAfter = filterModel.getDate().getValue();
+        }
+        if (eventFeed != null && categories.equals(feedCategories)
+                && Objects.equals(startingAfter, feedStartingAfter)) {
+            return;
+        }
+        if (eventFeed != null) {
+            eventFeed.getEvents().removeObservers(getViewLifecycleOwner());
+            eventFeed.close();
+        }
+        feedCategories = categories;
+        feedStartingAfter = startingAfter;
+        feedHasEvents = false;
+        EventFeed feed = eventRepository.openEventFeed(PAGE_SIZE, categories, startingAfter);
+        eventFeed = feed;
+        feed.getEvents().observe(getViewLifecycleOwner(), newEvents -> {
+            // A feed starts out empty, keep the catalog or the previous filters' events on
+            // screen until a page is in.
+            if (!feedHasEvents && newEvents.isEmpty() && !feed.isExhausted()) return;
             Log.d("EventListFragment", "Data updated. " + newEvents.size() + " events received.");
-            allEvents.clear();
-            allEvents.addAll(newEvents);
+            feedHasEvents = !newEvents.isEmpty();
+            eventIndex.setFeedEvents(newEvents);
+            // Live pages are newer than the last catalog sync.
+            searchIndex.putAll(newEvents);
             filterAndDisplayEvents();
         });
+        feed.loadNextPage();
+    }
+
+    /**
+     * Loads another page of the feed as the user nears the bottom of the list and keeps the
+     * feed's live listeners on whatever is currently on screen.
+     */
+    private void setupPaging() {
+        eventRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                List<Event> shown = adapter.getCurrentList();
+                if (layoutManager == null || shown.isEmpty()) return;
+                int first = layoutManager.findFirstVisibleItemPosition();
+                int last = layoutManager.findLastVisibleItemPosition();
+                if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) return;
+
+                List<String> visibleIds = new ArrayList<>();
+                for (int i = first; i <= last && i < shown.size(); ++i) {
+                    visibleIds.add(shown.get(i).getEventId());
+                }
+                eventFeed.setVisibleWindow(visibleIds);
+
+                if (toggleGroup.getCheckedButtonId() == R.id.discover_filter_button && searchQuery.isEmpty()
+                        && last >= shown.size() - PREFETCH_DISTANCE) {
+                    eventFeed.loadNextPage();
+                }
+            }
+        });
+    }
+
+    /**
+     * Searches the catalog's {@link EventSearchIndex} as the user types. While there is a query
+     * the Discover tab shows its results instead of the feed.
+     */
+    private void setupSearch() {
+        searchInput.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchQuery = s.toString().trim();
+                filterAndDisplayEvents();
+            }
+
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) { }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) { }
+        });
     }
 
     private void observeUserProfile() {
         profileViewModel.getProfileLiveData().observe(getViewLifecycleOwner(), profile -> {
             currentUserProfile = profile;
+            fetchWaitlistEvents(profile);
             filterAndDisplayEvents();
             updateNotificationButtonUI(profile);
         });
     }
 
+    /**
+     * Waitlisted events can be anywhere in the feed (or past its loaded pages) so they are
+     * fetched directly by ID. Only refetches when the set of waitlisted events changes.
+     */
+    private void fetchWaitlistEvents(ProfileModel profile) {
+        if (profile == null || profile.getOnWaitlistEventIds() == null) return;
+        List<String> waitlistIds = new ArrayList<>(profile.getOnWaitlistEventIds());
+        if (waitlistIds.equals(fetchedWaitlistIds)) return;
+        fetchedWaitlistIds = waitlistIds;
+
+        eventRepository.getEventsByIds(waitlistIds, new EventRepository.EventsCallback() {
+            @Override
+            public void onEventsFetched(List<Event> events) {
+                // The view is gone, e.g. the fragment is on the back stack. The next view
+                // starts with a fresh index and fetches again.
+                if (getView() == null) return;
+                eventIndex.setWaitlistEvents(events);
+                filterAndDisplayEvents();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e("EventListFragment", "Failed to fetch waitlisted events.", e);
+                fetchedWaitlistIds = new ArrayList<>();
+            }
+        });
+    }
+
     /**
      * This function updates the bell to be greyed out and the badge to be hidden
      * when notifications are off, otherwise both ui components are visible.
@@ -177,10 +341,19 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
 
 
     private void observeUnreadNotifications() {
-        // Observe the list of notifications from the repository
-        notificationRepository.getMyNotifications().observe(getViewLifecycleOwner(), notifications -> {
-            // Filter the list to get a count of only the unread notifications
-            long unreadCount = notifications.stream().filter(n -> !n.isReadStatus()).count();
+        // The count is kept on the profile document, which is already being listened to, so the
+        // badge costs no reads of its own.
+        profileViewModel.getProfileLiveData().observe(getViewLifecycleOwner(), profile -> {
+            if (profile == null) return;
+            Long unreadCount = profile.getUnreadNotificationCount();
+            if (unreadCount == null) {
+                // Profiles from before the counter existed get it counted once.
+                if (!unreadCountReconciled) {
+                    unreadCountReconciled = true;
+                    notificationRepository.reconcileUnreadCount();
+                }
+                unreadCount = 0L;
+            }
 
             if (unreadCount > 0) {
                 // If there are unread items, make the badge visible
@@ -202,31 +375,20 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
 
     private void filterAndDisplayEvents() {
         List<Event> filteredList;
-        if (allEvents == null || currentUserProfile == null) {
+        if (eventIndex == null || currentUserProfile == null) {
             return;
         }
-        // all selected by default so that all show, but visibility will still be set to gone for now
-        // if an event has the chip name in its categories field, show that event
-        // for testing purposes, we will hardcode the selectedFilters to have "Business" and "Food"
 
         int checkedId = toggleGroup.getCheckedButtonId();
 
         ArrayList<String> userWaitlistEventIds = currentUserProfile.getOnWaitlistEventIds();
-        if (userWaitlistEventIds == null) {
-            userWaitlistEventIds = new ArrayList<>();
-        }
+        eventIndex.setWaitlist(userWaitlistEventIds == null ? new ArrayList<>() : userWaitlistEventIds);
 
-        if (checkedId == R.id.discover_filter_button) {
-            ArrayList<String> finalUserWaitlistEventIds = userWaitlistEventIds;
-
-            // display events who have the selectedFIlters as items in their categories attribute
-            for (Event event : allEvents) {
-                Log.d("EventListFragment", "Event: " + event.toString());
-                //Log.d("EventListFragment", "categories of event: " + event.getCategories().toString());
-                Log.d("EventListFragment", "date of event: " + event.getEventStartDate().toString());
-            }
+        if (checkedId == R.id.discover_filter_button && !searchQuery.isEmpty()) {
+            filteredList = searchIndex.search(searchQuery, SEARCH_LIMIT);
+        } else if (checkedId == R.id.discover_filter_button) {
             selectedFilters = filterModel.getFilters().getValue();
-            if (selectedFilters.size() > 0) {
+            if (selectedFilters != null && selectedFilters.size() > 0) {
                 // Set selected chips
                 for (var selected : selectedFilters) {
                     for (int i = 0; i < chipGroup.getChildCount(); ++i) {
@@ -243,67 +405,52 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
                 // also set the chips visibility
                 chipGroup.setVisibility(View.VISIBLE);
 
-                // finally, display the filtered eventrs
-                ArrayList<String> finalSelectedFilters = selectedFilters;
-
-                Date selectedDate = filterModel.getDate().getValue();
-                if (selectedDate == null) {
-                    Log.e("EventListFragment", "selected date is null");
-                }
-
-
-
-                List<Event> intermediateList = allEvents.stream()
-                        .filter(event -> event.getCategories().containsAll(finalSelectedFilters))
-                        .filter(event -> !finalUserWaitlistEventIds.contains(event.getEventId()))
-                        .collect(Collectors.toList());
-
-                if (selectedDate != null) {
-                    Log.d("EventListFragment", "date selected: + " + selectedDate);
-
-                    for (Event event : allEvents) {
-                        Log.d("EventListFragment", "Event: " + event.toString());
-                        //Log.d("EventListFragment", "categories of event: " + event.getCategories().toString());
-                        Log.d("EventListFragment", "date of event: " + event.getEventStartDate().toString());
-
-                        Log.d("EventListFragment", "is date of event after selected date?: " + event.getEventStartDate().after(selectedDate));
-                    }
-
-                    filteredList = intermediateList.stream()
-                            .filter(event -> event.getEventStartDate().after(selectedDate))
-                            .collect(Collectors.toList());
-                } else {
-                    filteredList = intermediateList;
-                }
+                // finally, display the events in every selected category, after the date if one is picked
+                filteredList = eventIndex.discover(selectedFilters, filterModel.getDate().getValue());
             } else {
                 chipGroup.setVisibility(View.GONE);
-                ArrayList<String> finalUserWaitlistEventIds3 = userWaitlistEventIds;
-                filteredList = allEvents.stream()
-                        .filter(event -> !finalUserWaitlistEventIds3.contains(event.getEventId()))
-                        .collect(Collectors.toList());
+                filteredList = eventIndex.discover(new ArrayList<>(), null);
             }
         } else if (checkedId == R.id.waitlist_filter_button) {
-            ArrayList<String> finalUserWaitlistEventIds1 = userWaitlistEventIds;
-            filteredList = allEvents.stream()
-                    .filter(event -> finalUserWaitlistEventIds1.contains(event.getEventId()))
-                    .collect(Collectors.toList());
+            filteredList = eventIndex.waitlisted();
         } else {
             filteredList = new ArrayList<>();
             //TODO: add other filter for attending
         }
 
-
-
         Log.d("EventListFragment", "Filtered list size: " + filteredList.size());
-        displayedEvents.clear();
-        displayedEvents.addAll(filteredList);
-        adapter.notifyDataSetChanged();
+        adapter.setEvents(filteredList);
+
+        // Filters can hide most of a page, keep pulling pages until the screen has something on it.
+        if (checkedId == R.id.discover_filter_button && searchQuery.isEmpty()
+                && filteredList.size() < PAGE_SIZE && eventFeed != null && !eventFeed.isExhausted()) {
+            eventFeed.loadNextPage();
+        }
     }
 
     @Override
     public void onEventClick(int position) {
-        Event clickedEvent = displayedEvents.get(position);
-        EventViewFragment eventViewFragment = EventViewFragment.newInstance(clickedEvent);
+        Event clickedEvent = adapter.getEvent(position);
+        if (clickedEvent.isCatalogSummary()) {
+            // Summaries only hold what the list shows, load the whole event first.
+            eventRepository.getEventById(clickedEvent.getEventId(), new EventRepository.SingleEventListener() {
+                @Override
+                public void onEventLoaded(Event event) {
+                    if (event != null && isAdded()) openEvent(event);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Log.e("EventListFragment", "Failed to load event " + clickedEvent.getEventId(), e);
+                }
+            });
+            return;
+        }
+        openEvent(clickedEvent);
+    }
+
+    private void openEvent(Event event) {
+        EventViewFragment eventViewFragment = EventViewFragment.newInstance(event);
 
         if (getActivity() != null) {
             getActivity().getSupportFragmentManager().beginTransaction()
@@ -317,9 +464,6 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
     public void onResume() {
         super.onResume();
         Log.d("EventListFragment", "onResume called.");
-        if (eventRepository != null) {
-            observeEvents();
-        }
 
         if (getActivity() instanceof MainActivity) {
             ((MainActivity) getActivity()).setBottomNavigationVisibility(View.VISIBLE);
@@ -327,4 +471,13 @@ public class EventListFragment extends Fragment implements EventAdapter.OnEventL
 
         filterAndDisplayEvents();
     }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (eventFeed != null) {
+            eventFeed.close();
+            eventFeed = null;
+        }
+    }
 }
@@ -1,21 +1,31 @@
 package com.rocket.radar.events;
 
 import android.util.Log;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MutableLiveData;
 
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
 import com.rocket.radar.R;
+import com.rocket.radar.firestore.ListenerRegistry;
+import com.rocket.radar.lottery.EventMembership;
+import com.rocket.radar.lottery.LotteryPolicy;
+import com.rocket.radar.lottery.LotteryRun;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -26,6 +36,8 @@ import java.util.Map;
 public class EventRepository {
 
     private static final String TAG = "EventRepository";
+    // Firestore rejects `in` filters with more values than this.
+    private static final int MAX_IN_QUERY_SIZE = 30;
 
     // 🔹 This is now the source of truth for Firestore
     private static FirebaseFirestore firestore = FirebaseFirestore.getInstance();
@@ -56,26 +68,104 @@ public class EventRepository {
      * and returns the data wrapped in LiveData.
      */
     // FIXME: This is bad practice and going to spike our firestore reads really hard.
-    // TODO: EventListFragment should query the firestore for events upcoming soon, and as the user
-    // nears the bottom of the list should load additional events as they are required.
-    // But that's hard and annoying so part 4 it is.
+    // EventListFragment has moved to openEventFeed, the other screens still need moving over.
+    // Every caller shares the one listener through the registry, see ListenerRegistry.
     public LiveData<List<Event>> getAllEvents() {
-        MutableLiveData<List<Event>> eventsLiveData = new MutableLiveData<>();
-        events.addSnapshotListener((value, error) -> {
-            if (error != null) {
-                Log.e(TAG, "Listen failed.", error);
-                return;
-            }
+        return ListenerRegistry.getInstance().query(events.getPath(), events, (value, emitter) -> {
             ArrayList<Event> eventList = new ArrayList<>();
-            if (value != null) {
-                for (QueryDocumentSnapshot doc : value) {
-                    Event event = doc.toObject(Event.class);
-                    eventList.add(event);
-                }
+            for (QueryDocumentSnapshot doc : value) {
+                Event event = doc.toObject(Event.class);
+                eventList.add(event);
             }
-            eventsLiveData.postValue(eventList);
+            emitter.emit(eventList);
         });
-        return eventsLiveData;
+    }
+
+    /**
+     * Opens a paginated feed of upcoming events, soonest first. Nothing is fetched until
+     * {@link EventFeed#loadNextPage()} is called, and the caller owns closing the feed.
+     *
+     * @param pageSize Number of events fetched per page.
+     * @return A new feed starting from the current time.
+     */
+    public EventFeed openEventFeed(int pageSize) {
+        return openEventFeed(pageSize, new ArrayList<>(), null);
+    }
+
+    /**
+     * Opens a paginated feed of upcoming events matching the event list's filters, soonest first.
+     * The filters are part of the query, so only matching events are read.
+     *
+     * <p>A query can hold a single array-contains clause, so only the first category is matched
+     * by Firestore. Events must have every category, so the caller still checks the rest, see
+     * {@link EventIndex#discover}.</p>
+     *
+     * @param pageSize Number of events fetched per page.
+     * @param categories Categories an event must have. Empty means any.
+     * @param startingAfter Only events starting after this, or null for any upcoming event.
+     * @return A new feed starting from the current time.
+     */
+    public EventFeed openEventFeed(int pageSize, List<String> categories, @Nullable Date startingAfter) {
+        Date now = new Date();
+        Query upcoming = startingAfter != null && startingAfter.after(now)
+                ? events.whereGreaterThan("eventStartDate", startingAfter)
+                : events.whereGreaterThanOrEqualTo("eventStartDate", now);
+        if (!categories.isEmpty()) {
+            // Needs the categories + eventStartDate index in firestore.indexes.json.
+            upcoming = upcoming.whereArrayContains("categories", categories.get(0));
+        }
+        return new EventFeed(upcoming.orderBy("eventStartDate"), pageSize);
+    }
+
+    /**
+     * Brings the on-device {@link EventCatalog} up to date with every event changed since its
+     * last sync.
+     *
+     * @param catalog The catalog to update.
+     * @param listener Receives the outcome.
+     */
+    public void syncCatalog(EventCatalog catalog, EventCatalog.SyncListener listener) {
+        catalog.sync(events, listener);
+    }
+
+    public interface EventsCallback {
+        void onEventsFetched(List<Event> events);
+        void onError(Exception e);
+    }
+
+    /**
+     * Fetches a specific set of events by ID. Firestore caps {@code in} queries so the IDs are
+     * split into chunks and queried in parallel.
+     *
+     * @param eventIds IDs of the events to fetch. Missing events are skipped.
+     * @param callback Receives the events once every chunk has come back.
+     */
+    public void getEventsByIds(List<String> eventIds, EventsCallback callback) {
+        if (eventIds == null || eventIds.isEmpty()) {
+            callback.onEventsFetched(new ArrayList<>());
+            return;
+        }
+
+        List<Task<QuerySnapshot>> chunks = new ArrayList<>();
+        for (int i = 0; i < eventIds.size(); i += MAX_IN_QUERY_SIZE) {
+            List<String> chunk = eventIds.subList(i, Math.min(i + MAX_IN_QUERY_SIZE, eventIds.size()));
+            chunks.add(events.whereIn(FieldPath.documentId(), new ArrayList<>(chunk)).get());
+        }
+
+        Tasks.whenAllSuccess(chunks)
+                .addOnSuccessListener(results -> {
+                    List<Event> fetched = new ArrayList<>();
+                    for (Object result : results) {
+                        for (QueryDocumentSnapshot doc : (QuerySnapshot) result) {
+                            fetched.add(doc.toObject(Event.class));
+                        }
+                    }
+                    callback.onEventsFetched(fetched);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching events by id", e);
+                    callback.onError(e);
+                });
     }
 
     /**
@@ -87,6 +177,16 @@ public class EventRepository {
     }
 
     public void addUserToAttending(Event event, String uid) {
+        addUserToAttending(event, uid, null);
+    }
+
+    /**
+     * Adds a user to an event's attending list.
+     *
+     * @param notificationsEnabled The user's notification setting, copied onto the membership
+     *                             document so group sends don't read profiles. Null if unknown.
+     */
+    public void addUserToAttending(Event event, String uid, @Nullable Boolean notificationsEnabled) {
         if (event == null || event.getEventId() == null) {
             Log.e(TAG, "Event is null or has no ID.");
             return;
@@ -101,6 +201,7 @@ public class EventRepository {
 
             Map<String, Object> attendingData = new HashMap<>();
             attendingData.put("timestamp", FieldValue.serverTimestamp());
+            putNotificationsEnabled(attendingData, notificationsEnabled);
 
             // 3. Set the data. If the document already exists, this overwrites it but
             // that's fine. If it doesn't exist, it is created.
@@ -111,6 +212,16 @@ public class EventRepository {
     }
 
     public void addUserToCancelled(Event event, String uid) {
+        addUserToCancelled(event, uid, null);
+    }
+
+    /**
+     * Adds a user to an event's cancelled list.
+     *
+     * @param notificationsEnabled The user's notification setting, copied onto the membership
+     *                             document so group sends don't read profiles. Null if unknown.
+     */
+    public void addUserToCancelled(Event event, String uid, @Nullable Boolean notificationsEnabled) {
         if (event == null || event.getEventId() == null) {
             Log.e(TAG, "Event is null or has no ID.");
             return;
@@ -125,6 +236,7 @@ public class EventRepository {
 
             Map<String, Object> cancelledData = new HashMap<>();
             cancelledData.put("timestamp", FieldValue.serverTimestamp());
+            putNotificationsEnabled(cancelledData, notificationsEnabled);
 
             // 3. Set the data. If the document already exists, this overwrites it but
             // that's fine. If it doesn't exist, it is created.
@@ -152,6 +264,12 @@ public class EventRepository {
                 .addOnFailureListener(e -> Log.e(TAG, "Error removing user " + uid + " from invited users", e));
     }
 
+    private static void putNotificationsEnabled(Map<String, Object> membership, @Nullable Boolean notificationsEnabled) {
+        if (notificationsEnabled != null) {
+            membership.put(EventMembership.NOTIFICATIONS_ENABLED, notificationsEnabled);
+        }
+    }
+
     public interface WaitlistSizeListener {
         void onSizeReceived(int size);
 
@@ -254,7 +372,17 @@ public class EventRepository {
             docRef = events.document(event.getEventId());
         }
 
-        docRef.set(event)
+        // The banner goes in the same batch so the event never points at a missing image.
+        WriteBatch batch = firestore.batch();
+        byte[] banner = event.takeBannerForUpload();
+        if (banner != null) {
+            event.setBannerImageId(BannerImageRepository.getInstance()
+                    .putBanner(batch, banner, event.getBannerWidth(), event.getBannerHeight()));
+        }
+        // Cleared so the server stamps it, edits pass through here too.
+        event.setUpdatedAt(null);
+        batch.set(docRef, event);
+        batch.commit()
                 .addOnSuccessListener(aVoid ->
                         Log.d(TAG, "Event successfully written: " + event.getEventTitle()))
                 .addOnFailureListener(e ->
@@ -266,6 +394,16 @@ public class EventRepository {
 
 
     public void addUserToWaitlist(Event event, String userId, GeoPoint location){
+        addUserToWaitlist(event, userId, location, null);
+    }
+
+    /**
+     * Adds a user to an event's waitlist.
+     *
+     * @param notificationsEnabled The user's notification setting, copied onto the membership
+     *                             document so group sends don't read profiles. Null if unknown.
+     */
+    public void addUserToWaitlist(Event event, String userId, GeoPoint location, @Nullable Boolean notificationsEnabled) {
         if (event == null || event.getEventId() == null) {
             Log.e(TAG, "Event is null or has no ID.");
             return;
@@ -280,6 +418,10 @@ public class EventRepository {
 
             Map<String, Object> waitlistData = new HashMap<>();
             waitlistData.put("timestamp", FieldValue.serverTimestamp());
+            // Places the entrant in the event's persisted shuffle, used for replacement draws. The
+            // key only depends on the event and the entrant, so rejoining lands in the same spot.
+            waitlistData.put(LotteryRun.DRAW_KEY, LotteryPolicy.drawKey(event.getEventId(), userId));
+            putNotificationsEnabled(waitlistData, notificationsEnabled);
             if (location != null) {
                 waitlistData.put("signupLocation", location);
             } else {
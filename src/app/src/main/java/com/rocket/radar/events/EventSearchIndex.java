@@ -0,0 +1,394 @@
+package com.rocket.radar.events;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+
+/**
+ * On-device full-text index over event titles, taglines and descriptions.
+ *
+ * <p>Text is lower-cased and split into words, and every word is broken into trigrams with a
+ * marker in front, so {@code "music"} is posted under {@code ^mu, mus, usi, sic}. The events
+ * posted under all of a query word's grams are its candidates: {@code "mus"} only needs
+ * {@code ^mu} and {@code mus}. Each gram keeps a sorted {@code int[]} of posting entries, an
+ * event slot with the fields it appears in packed into the low bits, so finding candidates is a
+ * few binary-searched intersections. The grams can come from different words of a field, so
+ * {@code "music"} is a candidate for "Muse Fusion Basic", and every candidate is then checked
+ * against the sorted words kept per field, where a query word must be a prefix of one word. None
+ * of this looks at an {@link Event}.</p>
+ *
+ * <p>Results are ranked by where each query word was found (title over tagline over
+ * description), with a bonus for whole-word matches, then soonest first. Events are added,
+ * updated and removed one at a time, and re-putting an event whose text didn't change is free.
+ * Methods are synchronized so the index can be filled in the background and queried from the
+ * main thread.</p>
+ */
+public class EventSearchIndex {
+
+    private static final int TITLE = 1;
+    private static final int TAGLINE = 1 << 1;
+    private static final int DESCRIPTION = 1 << 2;
+    private static final int FIELD_BITS = 3;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+
+    private static final int TITLE_SCORE = 8;
+    private static final int TAGLINE_SCORE = 4;
+    private static final int DESCRIPTION_SCORE = 2;
+    private static final int WHOLE_WORD_SCORE = 1;
+
+    // Marks the start of each word. Normalized text only holds letters and digits, so it never clashes.
+    private static final char WORD_START = '^';
+
+    /**
+     * Sorted posting entries of one gram, {@code slot << FIELD_BITS | fields}.
+     */
+    private static final class Postings {
+        int[] entries = new int[4];
+        int size = 0;
+
+        /**
+         * @return Index of the slot's entry, or {@code -(insertion point) - 1}.
+         */
+        int find(int slot) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int midSlot = entries[mid] >>> FIELD_BITS;
+                if (midSlot < slot) {
+                    low = mid + 1;
+                } else if (midSlot > slot) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        void add(int slot, int fields) {
+            int index = find(slot);
+            if (index >= 0) {
+                entries[index] |= fields;
+                return;
+            }
+            index = -index - 1;
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            System.arraycopy(entries, index, entries, index + 1, size - index);
+            entries[index] = slot << FIELD_BITS | fields;
+            size++;
+        }
+
+        void remove(int slot) {
+            int index = find(slot);
+            if (index < 0) return;
+            System.arraycopy(entries, index + 1, entries, index, size - index - 1);
+            size--;
+        }
+    }
+
+    private final Map<String, Integer> slotById = new HashMap<>();
+    private final List<Event> bySlot = new ArrayList<>();
+    // The grams each slot is posted under, so an update can take it out again.
+    private final List<long[]> gramsBySlot = new ArrayList<>();
+    // Each slot's distinct words per field, sorted, indexed by the field's bit position.
+    private final List<String[][]> wordsBySlot = new ArrayList<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+
+    /**
+     * Adds an event, or updates the one with the same id.
+     */
+    public synchronized void put(Event event) {
+        String id = event.getEventId();
+        if (id == null) return;
+        Integer existing = slotById.get(id);
+        if (existing != null) {
+            Event old = bySlot.get(existing);
+            if (sameText(old, event)) {
+                bySlot.set(existing, event);
+                return;
+            }
+            unpost(existing);
+            bySlot.set(existing, event);
+            post(existing, event);
+            return;
+        }
+        int slot;
+        if (freeSlots.isEmpty()) {
+            slot = bySlot.size();
+            bySlot.add(event);
+            gramsBySlot.add(null);
+            wordsBySlot.add(null);
+        } else {
+            slot = freeSlots.pop();
+            bySlot.set(slot, event);
+        }
+        slotById.put(id, slot);
+        post(slot, event);
+    }
+
+    /**
+     * Adds or updates several events.
+     */
+    public void putAll(Collection<Event> events) {
+        // One at a time, so a search can get in between.
+        for (Event event : events) {
+            put(event);
+        }
+    }
+
+    /**
+     * Drops an event from the index. Does nothing if it isn't there.
+     */
+    public synchronized void remove(String eventId) {
+        Integer slot = slotById.remove(eventId);
+        if (slot == null) return;
+        unpost(slot);
+        bySlot.set(slot, null);
+        freeSlots.push(slot);
+    }
+
+    /**
+     * @return Number of events indexed.
+     */
+    public synchronized int size() {
+        return slotById.size();
+    }
+
+    /**
+     * Finds the events containing every word of a query, each as a word or the start of one.
+     *
+     * @param query Text typed by the user.
+     * @param limit Most events to return.
+     * @return Best matches first, empty for a blank query.
+     */
+    public synchronized List<Event> search(String query, int limit) {
+        List<String> words = words(query);
+        List<Event> results = new ArrayList<>();
+        if (words.isEmpty() || limit <= 0) return results;
+
+        int[] slots = null;
+        int[] scores = null;
+        int count = 0;
+        for (String word : words) {
+            int[][] matches = match(word);
+            if (matches == null) return results;
+            if (slots == null) {
+                slots = matches[0];
+                scores = matches[1];
+                count = slots.length;
+                continue;
+            }
+            // Both are sorted by slot, merge them.
+            int kept = 0;
+            int i = 0;
+            int j = 0;
+            while (i < count && j < matches[0].length) {
+                if (slots[i] < matches[0][j]) {
+                    i++;
+                } else if (slots[i] > matches[0][j]) {
+                    j++;
+                } else {
+                    slots[kept] = slots[i];
+                    scores[kept] = scores[i] + matches[1][j];
+                    kept++;
+                    i++;
+                    j++;
+                }
+            }
+            count = kept;
+            if (count == 0) return results;
+        }
+
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        int[] finalSlots = slots;
+        int[] finalScores = scores;
+        Arrays.sort(order, (a, b) -> {
+            if (finalScores[a] != finalScores[b]) return Integer.compare(finalScores[b], finalScores[a]);
+            int byStart = Long.compare(startKey(bySlot.get(finalSlots[a])), startKey(bySlot.get(finalSlots[b])));
+            return byStart != 0 ? byStart : Integer.compare(finalSlots[a], finalSlots[b]);
+        });
+        for (int i = 0; i < count && i < limit; i++) {
+            results.add(bySlot.get(slots[order[i]]));
+        }
+        return results;
+    }
+
+    /**
+     * Events matching one query word.
+     *
+     * @return The matching slots in ascending order and their scores, or null if nothing matches.
+     */
+    private int[][] match(String word) {
+        List<Postings> lists = new ArrayList<>();
+        for (long gram : queryGrams(word)) {
+            Postings list = postings.get(gram);
+            if (list == null) return null;
+            lists.add(list);
+        }
+        // Walk the shortest list and look the rest up.
+        lists.sort((a, b) -> Integer.compare(a.size, b.size));
+        Postings shortest = lists.get(0);
+
+        int[] slots = new int[shortest.size];
+        int[] scores = new int[shortest.size];
+        int count = 0;
+        for (int i = 0; i < shortest.size; i++) {
+            int slot = shortest.entries[i] >>> FIELD_BITS;
+            int fields = shortest.entries[i] & FIELD_MASK;
+            for (int l = 1; l < lists.size() && fields != 0; l++) {
+                Postings list = lists.get(l);
+                int index = list.find(slot);
+                fields = index < 0 ? 0 : fields & list.entries[index];
+            }
+            // The grams must all come from one field, not be spread over several.
+            if (fields == 0) continue;
+            // And from one word of it, not be spread over several.
+            String[][] words = wordsBySlot.get(slot);
+            int matched = 0;
+            boolean wholeWord = false;
+            for (int field = TITLE; field <= DESCRIPTION; field <<= 1) {
+                if ((fields & field) == 0) continue;
+                String[] fieldWords = words[Integer.numberOfTrailingZeros(field)];
+                int index = Arrays.binarySearch(fieldWords, word);
+                if (index >= 0) {
+                    matched |= field;
+                    wholeWord = true;
+                } else if (-index - 1 < fieldWords.length && fieldWords[-index - 1].startsWith(word)) {
+                    matched |= field;
+                }
+            }
+            if (matched == 0) continue;
+            int score = (matched & TITLE) != 0 ? TITLE_SCORE
+                    : (matched & TAGLINE) != 0 ? TAGLINE_SCORE
+                    : DESCRIPTION_SCORE;
+            if (wholeWord) score += WHOLE_WORD_SCORE;
+            slots[count] = slot;
+            scores[count] = score;
+            count++;
+        }
+        if (count == 0) return null;
+        return new int[][]{Arrays.copyOf(slots, count), Arrays.copyOf(scores, count)};
+    }
+
+    private void post(int slot, Event event) {
+        Map<Long, Integer> fieldsByGram = new HashMap<>();
+        addGrams(fieldsByGram, event.getEventTitle(), TITLE);
+        addGrams(fieldsByGram, event.getTagline(), TAGLINE);
+        addGrams(fieldsByGram, event.getDescription(), DESCRIPTION);
+        long[] grams = new long[fieldsByGram.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : fieldsByGram.entrySet()) {
+            grams[i++] = entry.getKey();
+            postings.computeIfAbsent(entry.getKey(), key -> new Postings()).add(slot, entry.getValue());
+        }
+        gramsBySlot.set(slot, grams);
+        wordsBySlot.set(slot, new String[][]{
+                sortedWords(event.getEventTitle()),
+                sortedWords(event.getTagline()),
+                sortedWords(event.getDescription())});
+    }
+
+    private void unpost(int slot) {
+        long[] grams = gramsBySlot.get(slot);
+        if (grams == null) return;
+        for (long gram : grams) {
+            Postings list = postings.get(gram);
+            if (list == null) continue;
+            list.remove(slot);
+            if (list.size == 0) postings.remove(gram);
+        }
+        gramsBySlot.set(slot, null);
+        wordsBySlot.set(slot, null);
+    }
+
+    private static void addGrams(Map<Long, Integer> fieldsByGram, String text, int field) {
+        for (String word : words(text)) {
+            String marked = WORD_START + word;
+            for (int i = 0; i + 3 <= marked.length(); i++) {
+                fieldsByGram.merge(gram(marked, i), field, (a, b) -> a | b);
+            }
+            // Lets a single typed letter match the start of a word.
+            fieldsByGram.merge(gram(marked.substring(0, 2), 0), field, (a, b) -> a | b);
+        }
+    }
+
+    /**
+     * Grams a query word must all be posted under. Its end is left open, so it matches as a
+     * prefix.
+     */
+    private static List<Long> queryGrams(String word) {
+        String marked = WORD_START + word;
+        List<Long> grams = new ArrayList<>();
+        if (marked.length() < 3) {
+            grams.add(gram(marked, 0));
+            return grams;
+        }
+        for (int i = 0; i + 3 <= marked.length(); i++) {
+            long gram = gram(marked, i);
+            if (!grams.contains(gram)) grams.add(gram);
+        }
+        return grams;
+    }
+
+    /**
+     * @return The distinct words of a text, sorted so a prefix can be binary searched.
+     */
+    private static String[] sortedWords(String text) {
+        return new TreeSet<>(words(text)).toArray(new String[0]);
+    }
+
+    /**
+     * Packs up to three chars starting at {@code from} into one key.
+     */
+    private static long gram(String text, int from) {
+        long key = 0;
+        for (int i = from; i < from + 3; i++) {
+            key = key << 16 | (i < text.length() ? text.charAt(i) : 0);
+        }
+        return key;
+    }
+
+    /**
+     * Lower-cases text and splits it into runs of letters and digits.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) return words;
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                word.append(Character.toLowerCase(c));
+            } else if (word.length() > 0) {
+                words.add(word.toString());
+                word.setLength(0);
+            }
+        }
+        if (word.length() > 0) words.add(word.toString());
+        return words;
+    }
+
+    private static boolean sameText(Event a, Event b) {
+        return Objects.equals(a.getEventTitle(), b.getEventTitle())
+                && Objects.equals(a.getTagline(), b.getTagline())
+                && Objects.equals(a.getDescription(), b.getDescription());
+    }
+
+    private static long startKey(Event event) {
+        return event.getEventStartDate() == null ? Long.MAX_VALUE : event.getEventStartDate().getTime();
+    }
+}
@@ -23,7 +23,6 @@ import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.google.android.material.button.MaterialButton;
-import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.GeoPoint;
 import com.rocket.radar.MainActivity;
 import com.rocket.radar.R;
@@ -33,7 +32,6 @@ import com.rocket.radar.profile.ProfileModel;
 import com.rocket.radar.profile.ProfileRepository;
 import com.rocket.radar.profile.ProfileViewModel;
 
-import java.io.ByteArrayOutputStream;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -151,12 +149,7 @@ public class EventViewFragment extends Fragment {
             eventDescription.setText(event.getDescription());
 
             // Load and display the event banner image
-            if (event.getBannerImageBlob() != null) {
-                Bitmap bannerBitmap = event.getBannerImageBitmap();
-                if (bannerBitmap != null) {
-                    eventImageView.setImageBitmap(bannerBitmap);
-                }
-            }
+            BannerCache.getInstance(requireContext()).into(event, eventImageView, 0);
 
             repo.getWaitlistSize(event, new EventRepository.WaitlistSizeListener() {
                 @Override
@@ -248,7 +241,7 @@ public class EventViewFragment extends Fragment {
 
                 // event side attending list
                 // call to event repo
-                repo.addUserToAttending(event, currentProfile.getUid());
+                repo.addUserToAttending(event, currentProfile.getUid(), currentProfile.isNotificationsEnabled());
                 repo.removeUserFromInvited(event, currentProfile.getUid());
 
                 // client side list of attending events
@@ -269,15 +262,15 @@ public class EventViewFragment extends Fragment {
             joinAndLeaveWaitlistButton.setOnClickListener(v -> {
                 // TODO: Implement reject invitation
                 // deal with backend stuff
-                repo.addUserToCancelled(event, currentProfile.getUid());
+                repo.addUserToCancelled(event, currentProfile.getUid(), currentProfile.isNotificationsEnabled());
                 repo.removeUserFromInvited(event, currentProfile.getUid());
 
                 // deal with client side logic
                 currentProfile.addCancelledEventId(event.getEventId());
                 currentProfile.removeInvitedEventId(event.getEventId());
 
-                // automatically re-run the lottery for 1 person
-                lottery.handleRunLottery(event, 1);
+                // automatically give the freed seat to the next person in the shuffled waitlist
+                lottery.handleReplacementDraw(1, null);
 
                 navigateBack();
                 Toast.makeText(getContext(), "Invitation rejected (not implemented)", Toast.LENGTH_SHORT).show();
@@ -364,7 +357,7 @@ public class EventViewFragment extends Fragment {
             GeoPoint lastKnownLocation = currentProfile.getLastKnownLocation();
 
             // 2. Pass the user ID and location to the repository method.
-            repo.addUserToWaitlist(event, currentProfile.getUid(), lastKnownLocation);
+            repo.addUserToWaitlist(event, currentProfile.getUid(), lastKnownLocation, currentProfile.isNotificationsEnabled());
 
             navigateBack();
             Toast.makeText(getContext(), "Added to waitlist!", Toast.LENGTH_SHORT).show();
@@ -418,16 +411,12 @@ public class EventViewFragment extends Fragment {
             // Convert URI to Bitmap
             Bitmap bitmap = MediaStore.Images.Media.getBitmap(requireActivity().getContentResolver(), uri);
 
-            // Compress bitmap to Blob
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 70, outputStream);
-            Blob imageBlob = Blob.fromBytes(outputStream.toByteArray());
-
-            // Update the image in the UI immediately
+            // Update the image in the UI immediately, dropping any banner still loading
+            BannerCache.getInstance(requireContext()).cancel(eventImageView);
             eventImageView.setImageBitmap(bitmap);
 
-            // Update the event object
-            event.setBannerImageBlob(imageBlob);
+            // Compress the banner onto the event, it is uploaded to the image store on save
+            event.stageBannerImage(bitmap);
 
             // Save to Firebase using createEvent (which uses set() and will update if exists)
             repo.createEvent(event);
@@ -41,7 +41,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 import kotlinx.serialization.descriptors.PrimitiveKind;
 
@@ -67,6 +66,8 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
     private ListView entrantsListView;
     private SimpleAdapter entrantsAdapter;
     private ArrayList<Map<String, String>> currentEntrants; // Each map is a tuple: {"name": name, "id": id}
+    private final Map<String, Integer> rowByUserId = new HashMap<>(); // uid -> index in currentEntrants
+    private int entrantsGeneration = 0;
 
     private Event event;
     private EventRepository eventRepository;
@@ -213,6 +214,9 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
     private void filterAndDisplayEntrants(TabLayout.Tab tab) {
         // 1. Clear the member list. The adapter is already connected to this list.
         currentEntrants.clear();
+        rowByUserId.clear();
+        // Results for a tab the user already left are dropped.
+        final int generation = ++entrantsGeneration;
 
         String status = getStatusStringForTab(tab);
 
@@ -243,40 +247,7 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
                                 return;
                             }
 
-                            // Create placeholder tuples with just the ID
-                            for (String userId : userIds) {
-                                Map<String, String> entrantTuple = new HashMap<>();
-                                entrantTuple.put("id", userId);
-                                entrantTuple.put(TUPLE_NAME_KEY, "Loading..."); // Placeholder name
-                                currentEntrants.add(entrantTuple);
-                            }
-                            entrantsAdapter.notifyDataSetChanged(); // Show loading state
-
-                            // Use an array to make the counter 'final' for use in the inner class
-                            final int[] profilesToFetch = {userIds.size()};
-
-                            for (String userId : userIds) {
-                                profileRepository.readProfile(userId, new ProfileRepository.ReadCallback() {
-                                    @Override
-                                    public void onProfileLoaded(ProfileModel profile) {
-                                        Log.d(TAG, "Fetched user name: " + profile.getName());
-                                        // Find the tuple with this ID and update its name
-                                        updateEntrantName(userId, profile.getName());
-                                        profilesToFetch[0]--; // Decrement the counter
-                                        // If this was the last profile to fetch, update the UI
-                                        if (profilesToFetch[0] == 0) {
-                                            entrantsAdapter.notifyDataSetChanged();
-                                        }
-                                    }
-
-                                    @Override
-                                    public void onError(Exception e) {
-                                        Log.e(TAG, "Error fetching user profile", e);
-                                        profilesToFetch[0]--; // Also decrement on error to avoid getting stuck
-                                        updateEntrantName(userId, "Error Loading Name");
-                                    }
-                                });
-                            }
+                            showEntrants(userIds, generation);
                         }
 
                         @Override
@@ -307,36 +278,7 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
                                 return;
                             }
 
-                            // Create placeholder tuples
-                            for (String userId : userIds) {
-                                Map<String, String> entrantTuple = new HashMap<>();
-                                entrantTuple.put("id", userId);
-                                entrantTuple.put(TUPLE_NAME_KEY, "Loading...");
-                                currentEntrants.add(entrantTuple);
-                            }
-                            entrantsAdapter.notifyDataSetChanged();
-
-                            final int[] profilesToFetch = {userIds.size()};
-
-                            for (String userId : userIds) {
-                                profileRepository.readProfile(userId, new ProfileRepository.ReadCallback() {
-                                    @Override
-                                    public void onProfileLoaded(ProfileModel profile) {
-                                        updateEntrantName(userId, profile.getName());
-                                        profilesToFetch[0]--;
-                                        if (profilesToFetch[0] == 0) {
-                                            entrantsAdapter.notifyDataSetChanged();
-                                        }
-                                    }
-
-                                    @Override
-                                    public void onError(Exception e) {
-                                        updateEntrantName(userId, "Error Loading Name");
-                                        Log.e(TAG, "Error fetching user profile for invited", e);
-                                        profilesToFetch[0]--;
-                                    }
-                                });
-                            }
+                            showEntrants(userIds, generation);
                         }
 
                         @Override
@@ -364,34 +306,7 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
                                 return;
                             }
 
-                            for (String userId : userIds) {
-                                Map<String, String> entrantTuple = new HashMap<>();
-                                entrantTuple.put("id", userId);
-                                entrantTuple.put(TUPLE_NAME_KEY, "Loading...");
-                                currentEntrants.add(entrantTuple);
-                            }
-                            entrantsAdapter.notifyDataSetChanged();
-
-                            final int[] profilesToFetch = { userIds.size() };
-
-                            for (String userId : userIds) {
-                                profileRepository.readProfile(userId, new ProfileRepository.ReadCallback() {
-                                    @Override
-                                    public void onProfileLoaded(ProfileModel profile) {
-                                        updateEntrantName(userId, profile.getName());
-                                        if (--profilesToFetch[0] == 0) {
-                                            entrantsAdapter.notifyDataSetChanged();
-                                        }
-                                    }
-
-                                    @Override
-                                    public void onError(Exception e) {
-                                        updateEntrantName(userId, "Error Loading Name");
-                                        Log.e(TAG, "Error fetching user profile for selected", e);
-                                        profilesToFetch[0]--;
-                                    }
-                                });
-                            }
+                            showEntrants(userIds, generation);
                         }
                         @Override
                         public void onError(Exception e) {
@@ -418,35 +333,7 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
                                 return;
                             }
 
-                            for (String userId : userIds) {
-                                Map<String, String> entrantTuple = new HashMap<>();
-                                entrantTuple.put("id", userId);
-                                entrantTuple.put(TUPLE_NAME_KEY, "Loading...");
-                                currentEntrants.add(entrantTuple);
-                            }
-                            entrantsAdapter.notifyDataSetChanged();
-
-                            final int[] profilesToFetch = {userIds.size()};
-
-                            for (String userId : userIds) {
-                                profileRepository.readProfile(userId, new ProfileRepository.ReadCallback() {
-                                    @Override
-                                    public void onProfileLoaded(ProfileModel profile) {
-                                        updateEntrantName(userId, profile.getName());
-                                        profilesToFetch[0]--;
-                                        if (profilesToFetch[0] == 0) {
-                                            entrantsAdapter.notifyDataSetChanged();
-                                        }
-                                    }
-
-                                    @Override
-                                    public void onError(Exception e) {
-                                        updateEntrantName(userId, "Error Loading Name");
-                                        Log.e(TAG, "Error fetching user profile for cancelled", e);
-                                        profilesToFetch[0]--;
-                                    }
-                                });
-                            }
+                            showEntrants(userIds, generation);
                         }
 
                         @Override
@@ -468,12 +355,52 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
         }
     }
 
-    private void updateEntrantName(String userId, String name) {
-        for (Map<String, String> entrant : currentEntrants) {
-            if (Objects.equals(entrant.get("id"), userId)) {
-                entrant.put(TUPLE_NAME_KEY, name);
-                return;
+    /**
+     * Shows a tab's entrants with placeholder names, then fills in every name from one batched
+     * profile read and refreshes the list once.
+     *
+     * @param userIds The tab's entrants.
+     * @param generation The tab load these entrants belong to.
+     */
+    private void showEntrants(List<String> userIds, int generation) {
+        if (generation != entrantsGeneration) return;
+        for (String userId : userIds) {
+            Map<String, String> entrantTuple = new HashMap<>();
+            entrantTuple.put("id", userId);
+            entrantTuple.put(TUPLE_NAME_KEY, "Loading..."); // Placeholder name
+            rowByUserId.put(userId, currentEntrants.size());
+            currentEntrants.add(entrantTuple);
+        }
+        entrantsAdapter.notifyDataSetChanged(); // Show loading state
+
+        profileRepository.readProfiles(userIds, new ProfileRepository.BatchReadCallback() {
+            @Override
+            public void onProfilesLoaded(Map<String, ProfileModel> profiles) {
+                if (generation != entrantsGeneration) return;
+                Log.d(TAG, "Fetched " + profiles.size() + " of " + userIds.size() + " entrant profiles.");
+                for (String userId : userIds) {
+                    ProfileModel profile = profiles.get(userId);
+                    updateEntrantName(userId, profile != null ? profile.getName() : "Unknown User");
+                }
+                entrantsAdapter.notifyDataSetChanged();
             }
+
+            @Override
+            public void onError(Exception e) {
+                if (generation != entrantsGeneration) return;
+                Log.e(TAG, "Error fetching entrant profiles", e);
+                for (String userId : userIds) {
+                    updateEntrantName(userId, "Error Loading Name");
+                }
+                entrantsAdapter.notifyDataSetChanged();
+            }
+        });
+    }
+
+    private void updateEntrantName(String userId, String name) {
+        Integer row = rowByUserId.get(userId);
+        if (row != null) {
+            currentEntrants.get(row).put(TUPLE_NAME_KEY, name);
         }
     }
 
@@ -593,8 +520,7 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
 
                     // 2. Iterate through the list and cancel each one
                     for (String userId : userIds) {
-                        // A. Move from Invited -> Cancelled in Firestore (Event side)
-                        eventRepository.addUserToCancelled(event, userId);
+                        // A. Remove from Invited in Firestore (Event side)
                         eventRepository.removeUserFromInvited(event, userId);
 
                         // B. Update the User's Profile (Client side logic)
@@ -602,6 +528,9 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
                         profileRepository.readProfile(userId, new ProfileRepository.ReadCallback() {
                             @Override
                             public void onProfileLoaded(ProfileModel userProfile) {
+                                // Add to Cancelled with the user's notification setting, so
+                                // messages to the cancelled group respect it
+                                eventRepository.addUserToCancelled(event, userId, userProfile.isNotificationsEnabled());
                                 userProfile.addCancelledEventId(event.getEventId());
                                 userProfile.removeInvitedEventId(event.getEventId());
                             }
@@ -609,16 +538,17 @@ public class OrganizerEntrantsFragment extends Fragment implements OnMapReadyCal
                             @Override
                             public void onError(Exception e) {
                                 Log.e(TAG, "Error updating profile for user: " + userId, e);
+                                eventRepository.addUserToCancelled(event, userId);
                             }
                         });
                     }
 
-                    // 3. Automatically re-run the lottery to fill the spots
-                    // We re-run for exactly the number of people we just cancelled
+                    // 3. Automatically refill the spots
+                    // We draw exactly as many replacements as people we just cancelled
                     int spotsFreed = userIds.size();
-                    new LotteryLogic(event).handleRunLottery(event, spotsFreed);
+                    new LotteryLogic(event).handleReplacementDraw(spotsFreed, null);
 
-                    Toast.makeText(getContext(), "Cancelled " + spotsFreed + " entrants. Lottery re-run.", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(getContext(), "Cancelled " + spotsFreed + " entrants. Spots refilled.", Toast.LENGTH_SHORT).show();
 
                     // Refresh the list view
                     filterAndDisplayEntrants(tabs.getTabAt(tabs.getSelectedTabPosition()));
@@ -0,0 +1,227 @@
+package com.rocket.radar.firestore;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Commits a large number of writes as a sequence of {@link WriteBatch}es that each stay within
+ * Firestore's 500 operation limit.
+ *
+ * <p>Writes are grouped into units. All writes of a unit always land in the same batch, so a unit
+ * is applied atomically even when the whole job isn't. Batches are committed one after another
+ * in the order units were added, which lets an optional {@link Checkpoint} record how far the job
+ * got inside each batch so a failed job can pick up where it stopped.</p>
+ *
+ * <p>A failed batch can also be retried in place (see {@link #retries(int)}). Only enable that
+ * for jobs whose writes are idempotent, e.g. sets on deterministic document ids, since a batch
+ * whose acknowledgement was lost may already have been applied.</p>
+ */
+public class ChunkedBatchWriter {
+    private static final String TAG = "ChunkedBatchWriter";
+
+    /**
+     * The most operations Firestore accepts in one batch.
+     */
+    public static final int MAX_BATCH_OPS = 500;
+
+    /**
+     * A single write, replayed onto whichever batch its unit ends up in.
+     */
+    private interface Write {
+        void applyTo(WriteBatch batch);
+    }
+
+    /**
+     * Adds one write to every batch recording how many units will have been committed once the
+     * batch lands. Takes one operation of each batch's budget unless told otherwise, see
+     * {@link #checkpoint(Checkpoint, int)}.
+     */
+    public interface Checkpoint {
+        void applyTo(WriteBatch batch, int committedUnits);
+    }
+
+    /**
+     * Reports on a job. Called on the main thread.
+     */
+    public interface Listener {
+        /**
+         * @param committedUnits Units committed so far.
+         * @param totalUnits Units in the job.
+         */
+        void onProgress(int committedUnits, int totalUnits);
+
+        /**
+         * Every batch committed.
+         * @param totalUnits Units in the job.
+         */
+        void onComplete(int totalUnits);
+
+        /**
+         * A batch failed, later batches were not attempted.
+         * @param e The failure.
+         * @param committedUnits Units committed before the failure.
+         */
+        void onError(Exception e, int committedUnits);
+    }
+
+    /**
+     * A group of writes that must be committed together.
+     */
+    public static class Unit {
+        private final List<Write> writes = new ArrayList<>();
+
+        public Unit set(DocumentReference ref, Object data) {
+            writes.add(batch -> batch.set(ref, data));
+            return this;
+        }
+
+        public Unit set(DocumentReference ref, Object data, SetOptions options) {
+            writes.add(batch -> batch.set(ref, data, options));
+            return this;
+        }
+
+        public Unit update(DocumentReference ref, Map<String, Object> data) {
+            writes.add(batch -> batch.update(ref, data));
+            return this;
+        }
+
+        public Unit delete(DocumentReference ref) {
+            writes.add(batch -> batch.delete(ref));
+            return this;
+        }
+
+        int size() {
+            return writes.size();
+        }
+    }
+
+    private final FirebaseFirestore db;
+    private final List<Unit> units = new ArrayList<>();
+    private Checkpoint checkpoint;
+    private int checkpointOps = 0;
+    private int retries = 0;
+
+    public ChunkedBatchWriter(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    /**
+     * Starts a new unit. Writes added to it are committed atomically.
+     */
+    public Unit unit() {
+        Unit unit = new Unit();
+        units.add(unit);
+        return unit;
+    }
+
+    /**
+     * Sets the write added to every batch to record progress.
+     */
+    public ChunkedBatchWriter checkpoint(Checkpoint checkpoint) {
+        return checkpoint(checkpoint, 1);
+    }
+
+    /**
+     * Sets the writes added to every batch to record progress.
+     *
+     * @param ops The most writes the checkpoint adds to a batch.
+     */
+    public ChunkedBatchWriter checkpoint(Checkpoint checkpoint, int ops) {
+        this.checkpoint = checkpoint;
+        this.checkpointOps = ops;
+        return this;
+    }
+
+    /**
+     * Retries each failed batch before giving up on the job.
+     *
+     * @param retries Extra attempts per batch.
+     */
+    public ChunkedBatchWriter retries(int retries) {
+        this.retries = retries;
+        return this;
+    }
+
+    /**
+     * @return The number of units added so far.
+     */
+    public int size() {
+        return units.size();
+    }
+
+    /**
+     * Commits every unit, batch by batch.
+     *
+     * @param listener Receives progress and the single final result.
+     */
+    public void commit(Listener listener) {
+        int capacity = checkpoint == null ? MAX_BATCH_OPS : MAX_BATCH_OPS - checkpointOps;
+        List<List<Unit>> chunks = new ArrayList<>();
+        List<Unit> current = new ArrayList<>();
+        int ops = 0;
+        for (Unit unit : units) {
+            if (unit.size() > capacity) {
+                listener.onError(new IllegalArgumentException(
+                        "A unit of " + unit.size() + " writes doesn't fit in one batch"), 0);
+                return;
+            }
+            if (ops + unit.size() > capacity) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                ops = 0;
+            }
+            current.add(unit);
+            ops += unit.size();
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        commitChunk(chunks, 0, 0, 0, listener);
+    }
+
+    private void commitChunk(List<List<Unit>> chunks, int index, int committed, int attempt, Listener listener) {
+        if (index >= chunks.size()) {
+            listener.onComplete(units.size());
+            return;
+        }
+        List<Unit> chunk = chunks.get(index);
+        int committedAfter = committed + chunk.size();
+
+        WriteBatch batch = db.batch();
+        for (Unit unit : chunk) {
+            for (Write write : unit.writes) {
+                write.applyTo(batch);
+            }
+        }
+        if (checkpoint != null) {
+            checkpoint.applyTo(batch, committedAfter);
+        }
+
+        long started = SystemClock.elapsedRealtime();
+        batch.commit()
+                .addOnSuccessListener(aVoid -> {
+                    Log.d(TAG, "Committed batch " + (index + 1) + "/" + chunks.size() + " (" + committedAfter + "/" + units.size() + " units) in "
+                            + (SystemClock.elapsedRealtime() - started) + " ms");
+                    listener.onProgress(committedAfter, units.size());
+                    commitChunk(chunks, index + 1, committedAfter, 0, listener);
+                })
+                .addOnFailureListener(e -> {
+                    if (attempt < retries) {
+                        Log.w(TAG, "Batch " + (index + 1) + "/" + chunks.size() + " failed, retrying", e);
+                        commitChunk(chunks, index, committed, attempt + 1, listener);
+                        return;
+                    }
+                    Log.e(TAG, "Batch " + (index + 1) + "/" + chunks.size() + " failed", e);
+                    listener.onError(e, committed);
+                });
+    }
+}
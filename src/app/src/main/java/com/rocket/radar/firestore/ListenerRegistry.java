@@ -0,0 +1,246 @@
+package com.rocket.radar.firestore;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shares Firestore snapshot listeners between everyone observing the same query or document.
+ *
+ * <p>Each key maps to a single {@link LiveData}. The Firestore listener is attached when the
+ * first observer becomes active and removed as soon as the last lifecycle owner stops, so
+ * re-observing the same key (for example on every {@code onResume}) never stacks another
+ * listener. New observers get the last value straight away without another read.</p>
+ *
+ * <p>The registry holds its LiveData weakly. A key stays as long as anything still references its
+ * LiveData: a lifecycle owner observing it, an attached Firestore listener, or a holder that
+ * stopped observing for now, like a {@link androidx.lifecycle.MediatorLiveData} going inactive.
+ * Such a holder observing again gets the same listener back, the one the registry counts. Keys
+ * nobody references any more are dropped as the registry is used.</p>
+ *
+ * <p>Keys should identify the query exactly, the document or collection path is usually enough.</p>
+ */
+public class ListenerRegistry {
+    private static final String TAG = "ListenerRegistry";
+
+    private static ListenerRegistry instance = null;
+
+    /**
+     * Publishes a value to everyone observing a shared listener. Safe to call from any thread.
+     */
+    public interface Emitter<T> {
+        void emit(T value);
+    }
+
+    /**
+     * Turns a query snapshot into the value handed to observers. May emit asynchronously.
+     */
+    public interface QueryHandler<T> {
+        void onSnapshot(@NonNull QuerySnapshot snapshot, @NonNull Emitter<T> emitter);
+
+        /**
+         * Called every time the listener is attached, before its first snapshot. A re-attached
+         * listener starts over and delivers every document as added, so a handler keeping state
+         * across snapshots resets it here.
+         */
+        default void onAttach() {}
+    }
+
+    /**
+     * Turns a document snapshot into the value handed to observers. May emit asynchronously.
+     */
+    public interface DocumentHandler<T> {
+        void onSnapshot(@NonNull DocumentSnapshot snapshot, @NonNull Emitter<T> emitter);
+    }
+
+    private interface Attacher<T> {
+        ListenerRegistration attach(Emitter<T> emitter);
+    }
+
+    private final Map<String, WeakReference<SharedListenerLiveData<?>>> listeners = new HashMap<>();
+
+    private ListenerRegistry() {}
+
+    public static synchronized ListenerRegistry getInstance() {
+        if (instance == null) {
+            instance = new ListenerRegistry();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the shared LiveData for a query, creating it if nobody has asked for this key yet.
+     *
+     * @param key Identifies the query. Callers asking for the same key share one listener.
+     * @param query The query to listen to.
+     * @param handler Maps each snapshot to the observed value.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> LiveData<T> query(String key, Query query, QueryHandler<T> handler) {
+        SharedListenerLiveData<?> shared = lookup(key);
+        if (shared == null) {
+            shared = new SharedListenerLiveData<T>(key, emitter -> {
+                handler.onAttach();
+                return query.addSnapshotListener((snapshot, error) -> {
+                    if (error != null) {
+                        Log.e(TAG, "Listen failed for " + key, error);
+                        return;
+                    }
+                    if (snapshot != null) {
+                        handler.onSnapshot(snapshot, emitter);
+                    }
+                });
+            });
+            listeners.put(key, new WeakReference<>(shared));
+        }
+        return (LiveData<T>) shared;
+    }
+
+    /**
+     * Gets the shared LiveData for a single document, creating it if nobody has asked for this
+     * key yet.
+     *
+     * @param key Identifies the document. Callers asking for the same key share one listener.
+     * @param document The document to listen to.
+     * @param handler Maps each snapshot to the observed value.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> LiveData<T> document(String key, DocumentReference document, DocumentHandler<T> handler) {
+        SharedListenerLiveData<?> shared = lookup(key);
+        if (shared == null) {
+            shared = new SharedListenerLiveData<T>(key, emitter ->
+                    document.addSnapshotListener((snapshot, error) -> {
+                        if (error != null) {
+                            Log.e(TAG, "Listen failed for " + key, error);
+                            emitter.emit(null);
+                            return;
+                        }
+                        if (snapshot != null) {
+                            handler.onSnapshot(snapshot, emitter);
+                        }
+                    }));
+            listeners.put(key, new WeakReference<>(shared));
+        }
+        return (LiveData<T>) shared;
+    }
+
+    /**
+     * @return The key's LiveData if anything still references it, dropping the key otherwise.
+     */
+    private SharedListenerLiveData<?> lookup(String key) {
+        WeakReference<SharedListenerLiveData<?>> ref = listeners.get(key);
+        SharedListenerLiveData<?> shared = ref == null ? null : ref.get();
+        if (ref != null && shared == null) {
+            listeners.remove(key);
+            Log.d(TAG, "Evicted " + key);
+        }
+        return shared;
+    }
+
+    /**
+     * @param key A listener key.
+     * @return The number of Firestore listeners currently attached for the key, 0 or 1.
+     */
+    public synchronized int getLiveListenerCount(String key) {
+        SharedListenerLiveData<?> shared = lookup(key);
+        return shared == null ? 0 : shared.liveListeners;
+    }
+
+    /**
+     * @param key A listener key.
+     * @return The number of distinct observers registered on the key's LiveData, active or not.
+     */
+    public synchronized int getSubscriberCount(String key) {
+        SharedListenerLiveData<?> shared = lookup(key);
+        return shared == null ? 0 : shared.subscribers.size();
+    }
+
+    /**
+     * @return The number of Firestore listeners currently attached, per key.
+     */
+    public synchronized Map<String, Integer> getLiveListenerCounts() {
+        Map<String, Integer> counts = new HashMap<>();
+        Iterator<Map.Entry<String, WeakReference<SharedListenerLiveData<?>>>> entries = listeners.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, WeakReference<SharedListenerLiveData<?>>> entry = entries.next();
+            SharedListenerLiveData<?> shared = entry.getValue().get();
+            if (shared == null) {
+                entries.remove();
+            } else {
+                counts.put(entry.getKey(), shared.liveListeners);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * LiveData already tracks how many of its observers are active, so the listener simply
+     * follows {@link #onActive()} and {@link #onInactive()}. While attached, the Firestore
+     * listener references this LiveData through its emitter, which keeps the key registered.
+     */
+    private static class SharedListenerLiveData<T> extends LiveData<T> {
+        private final String key;
+        private final Attacher<T> attacher;
+        private ListenerRegistration registration;
+        int liveListeners = 0;
+        // LiveData ignores an observer added twice, so count each one once.
+        final Set<Observer<? super T>> subscribers = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        SharedListenerLiveData(String key, Attacher<T> attacher) {
+            this.key = key;
+            this.attacher = attacher;
+        }
+
+        @Override
+        protected void onActive() {
+            if (registration != null) return;
+            registration = attacher.attach(this::postValue);
+            liveListeners++;
+            Log.d(TAG, "Attached listener for " + key + " (" + subscribers.size() + " subscribers, " + liveListeners + " live)");
+        }
+
+        @Override
+        protected void onInactive() {
+            if (registration == null) return;
+            registration.remove();
+            registration = null;
+            liveListeners--;
+            Log.d(TAG, "Detached listener for " + key + " (" + subscribers.size() + " subscribers, " + liveListeners + " live)");
+        }
+
+        @Override
+        public void observe(@NonNull LifecycleOwner owner, @NonNull Observer<? super T> observer) {
+            super.observe(owner, observer);
+            subscribers.add(observer);
+        }
+
+        @Override
+        public void observeForever(@NonNull Observer<? super T> observer) {
+            super.observeForever(observer);
+            subscribers.add(observer);
+        }
+
+        @Override
+        public void removeObserver(@NonNull Observer<? super T> observer) {
+            super.removeObserver(observer);
+            subscribers.remove(observer);
+        }
+    }
+}
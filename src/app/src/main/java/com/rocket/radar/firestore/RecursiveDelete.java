@@ -0,0 +1,242 @@
+package com.rocket.radar.firestore;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Deletes a document together with everything that hangs off it, in batches.
+ *
+ * <p>The client SDK can't list a document's subcollections, so the caller names them
+ * ({@link #collection}) along with any other documents that must go too ({@link #document}), and
+ * the document that owns it all ({@link #last}). Collections are emptied page by page with one
+ * batch per page, loose documents are deleted in batches without being read first (deleting a
+ * missing document is not an error), and at most {@link #parallelism(int)} of these jobs run at
+ * once. The last document is only deleted once every other delete has landed, so a job that
+ * fails part way leaves it in place and can simply be run again.</p>
+ *
+ * <p>Callbacks arrive on the main thread.</p>
+ */
+public class RecursiveDelete {
+    private static final String TAG = "RecursiveDelete";
+
+    /**
+     * Documents read and deleted per page, one batch each.
+     */
+    private static final int PAGE_SIZE = ChunkedBatchWriter.MAX_BATCH_OPS;
+    private static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Reports on a deletion. Called on the main thread.
+     */
+    public interface Listener {
+        /**
+         * Everything was deleted.
+         * @param deleted Documents deleted, counting loose documents whether or not they existed.
+         */
+        void onComplete(int deleted);
+
+        /**
+         * A delete failed. Other running jobs are allowed to finish, the last document is kept.
+         * @param e The first failure.
+         */
+        void onError(Exception e);
+    }
+
+    /**
+     * One unit of work, calls back exactly once with the documents it deleted or a failure.
+     */
+    private interface Job {
+        void run(JobCallback callback);
+    }
+
+    private interface JobCallback {
+        void onDone(int deleted, Exception error);
+    }
+
+    private final FirebaseFirestore db;
+    private final List<CollectionReference> collections = new ArrayList<>();
+    private final List<DocumentReference> documents = new ArrayList<>();
+    private DocumentReference last;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    public RecursiveDelete(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    /**
+     * Adds a collection to empty.
+     */
+    public RecursiveDelete collection(CollectionReference collection) {
+        collections.add(collection);
+        return this;
+    }
+
+    /**
+     * Adds a document to delete without reading it first.
+     */
+    public RecursiveDelete document(DocumentReference document) {
+        documents.add(document);
+        return this;
+    }
+
+    /**
+     * Adds several documents to delete without reading them first.
+     */
+    public RecursiveDelete documents(Collection<DocumentReference> documents) {
+        this.documents.addAll(documents);
+        return this;
+    }
+
+    /**
+     * Sets the document deleted once everything else is gone.
+     */
+    public RecursiveDelete last(DocumentReference document) {
+        this.last = document;
+        return this;
+    }
+
+    /**
+     * @param parallelism Jobs (a collection, or a batch of loose documents) running at once.
+     */
+    public RecursiveDelete parallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Runs the deletion.
+     *
+     * @param listener Receives the single final result.
+     */
+    public void run(Listener listener) {
+        Deque<Job> queue = new ArrayDeque<>();
+        for (CollectionReference collection : collections) {
+            queue.add(callback -> emptyCollection(collection, 0, callback));
+        }
+        for (int start = 0; start < documents.size(); start += PAGE_SIZE) {
+            List<DocumentReference> chunk = documents.subList(start, Math.min(start + PAGE_SIZE, documents.size()));
+            queue.add(callback -> deleteAll(chunk, callback));
+        }
+        new Run(queue, listener).start();
+    }
+
+    /**
+     * Drains the job queue with at most {@link #parallelism} jobs in flight.
+     */
+    private class Run {
+        private final Deque<Job> queue;
+        private final Listener listener;
+        private final long started = SystemClock.elapsedRealtime();
+        private int running = 0;
+        private int deleted = 0;
+        private Exception failure;
+
+        Run(Deque<Job> queue, Listener listener) {
+            this.queue = queue;
+            this.listener = listener;
+        }
+
+        void start() {
+            if (queue.isEmpty()) {
+                finish();
+                return;
+            }
+            while (running < parallelism && !queue.isEmpty()) {
+                launch(queue.poll());
+            }
+        }
+
+        private void launch(Job job) {
+            running++;
+            job.run((jobDeleted, error) -> {
+                running--;
+                deleted += jobDeleted;
+                if (error != null && failure == null) {
+                    failure = error;
+                    queue.clear();
+                }
+                if (!queue.isEmpty()) {
+                    launch(queue.poll());
+                } else if (running == 0) {
+                    finish();
+                }
+            });
+        }
+
+        private void finish() {
+            if (failure != null) {
+                Log.e(TAG, "Deletion failed after " + deleted + " documents", failure);
+                listener.onError(failure);
+                return;
+            }
+            if (last == null) {
+                done();
+                return;
+            }
+            last.delete()
+                    .addOnSuccessListener(aVoid -> {
+                        deleted++;
+                        done();
+                    })
+                    .addOnFailureListener(e -> {
+                        Log.e(TAG, "Failed to delete " + last.getPath(), e);
+                        listener.onError(e);
+                    });
+        }
+
+        private void done() {
+            Log.d(TAG, "Deleted " + deleted + " documents in " + (SystemClock.elapsedRealtime() - started) + " ms");
+            listener.onComplete(deleted);
+        }
+    }
+
+    private void emptyCollection(CollectionReference collection, int deletedSoFar, JobCallback callback) {
+        // Deleted documents drop out of the query, so every page starts from the top.
+        collection.orderBy(FieldPath.documentId()).limit(PAGE_SIZE).get()
+                .addOnSuccessListener(page -> {
+                    if (page.isEmpty()) {
+                        callback.onDone(deletedSoFar, null);
+                        return;
+                    }
+                    WriteBatch batch = db.batch();
+                    for (DocumentSnapshot doc : page.getDocuments()) {
+                        batch.delete(doc.getReference());
+                    }
+                    int deletedNow = deletedSoFar + page.size();
+                    boolean more = page.size() == PAGE_SIZE;
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> {
+                                if (more) {
+                                    emptyCollection(collection, deletedNow, callback);
+                                } else {
+                                    callback.onDone(deletedNow, null);
+                                }
+                            })
+                            .addOnFailureListener(e -> callback.onDone(deletedSoFar, e));
+                })
+                .addOnFailureListener(e -> callback.onDone(deletedSoFar, e));
+    }
+
+    private void deleteAll(List<DocumentReference> chunk, JobCallback callback) {
+        WriteBatch batch = db.batch();
+        for (DocumentReference doc : chunk) {
+            batch.delete(doc);
+        }
+        batch.commit()
+                .addOnSuccessListener(aVoid -> callback.onDone(chunk.size(), null))
+                .addOnFailureListener(e -> callback.onDone(0, e));
+    }
+}
@@ -2,15 +2,35 @@ package com.rocket.radar.lottery;
 
 import android.util.Log;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.AggregateSource;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.rocket.radar.events.Event;
 import com.rocket.radar.events.EventRepository;
+import com.rocket.radar.firestore.ChunkedBatchWriter;
 import com.rocket.radar.notifications.NotificationRepository;
-import com.rocket.radar.profile.ProfileRepository;
 
 import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
 
 /**
  * Handles the core logic for running an event lottery.
@@ -19,17 +39,22 @@ import java.util.List;
  * <ul>
  *     <li>Fetching the current waitlist for a specific event.</li>
  *     <li>Selecting a random subset of users based on event capacity or a specified sample number.</li>
- *     <li>Moving selected users from the waitlist to the invited list in the database.</li>
+ *     <li>Moving selected users from the waitlist to the invited list in the database, in
+ *     resumable chunked batches.</li>
  *     <li>Sending notifications to both the winners (invited) and losers (remaining waitlisted).</li>
  * </ul>
  */
 public class LotteryLogic {
 
+    // Most values Firestore accepts in one 'in' filter.
+    private static final int MAX_IDS_PER_QUERY = 30;
+
     private final Event event;
     String TAG = "LotteryLogic";
     EventRepository eventRepository = new EventRepository();
     NotificationRepository notificationRepository = new NotificationRepository();
-    private ProfileRepository profileRepository = new ProfileRepository();
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private LotterySampler sampler = new FisherYatesSampler();
 
     /**
      * Constructs a new LotteryLogic instance for a specific event.
@@ -40,6 +65,38 @@ public class LotteryLogic {
         this.event = event;
     }
 
+    /**
+     * Replaces how winners are picked.
+     *
+     * @param sampler The sampler used by later draws.
+     */
+    public void setSampler(LotterySampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * Reports on a lottery draw. Called on the main thread.
+     */
+    public interface LotteryListener {
+        /**
+         * @param invited Winners moved to the invited list so far.
+         * @param total Winners in this draw.
+         */
+        void onProgress(int invited, int total);
+
+        /**
+         * Every winner was moved and notifications were sent.
+         * @param invitedUserIds The winners.
+         */
+        void onComplete(List<String> invitedUserIds);
+
+        /**
+         * The draw stopped part way. Running the lottery again resumes it with the same winners.
+         * @param e The failure.
+         */
+        void onError(Exception e);
+    }
+
     /**
      * Runs the lottery using the default event capacity.
      * <p>
@@ -53,110 +110,504 @@ public class LotteryLogic {
         handleRunLottery(event, null);
     }
 
+    /**
+     * Runs the lottery without reporting back to the caller.
+     *
+     * @see #handleRunLottery(Event, Integer, LotteryListener)
+     */
+    public void handleRunLottery(Event event, @Nullable Integer sampleNum) {
+        handleRunLottery(event, sampleNum, null);
+    }
+
     /**
      * Executes the lottery logic to select random winners from the waitlist.
      * <p>
      * This method performs the following steps asynchronously:
      * <ol>
+     *     <li>Resumes the last draw instead if it never finished committing.</li>
+     *     <li>Claims the event's main draw in a transaction, so the lottery runner can't draw it at
+     *     the same time, see {@link LotteryClaim}. Stops if it was already drawn.</li>
      *     <li>Fetches the current waitlist entrants from the repository.</li>
      *     <li>Determines the number of users to invite based on the {@code sampleNum} or the event capacity.</li>
      *     <li>If the waitlist is smaller than the capacity, everyone is invited.</li>
      *     <li>If the waitlist exceeds capacity, random entrants are selected.</li>
-     *     <li>Updates the database to move users to the "invited" list and remove them from the "waitlist".</li>
+     *     <li>Records the winners in the claimed run document under {@code events/{id}/lotteryRuns},
+     *     unless the claim was taken over meanwhile.</li>
+     *     <li>Moves the winners in chunked batches. Each winner's waitlist removal, invite and
+     *     profile update share a batch so nobody is ever both waitlisted and invited.</li>
      *     <li>Sends push notifications to both the winners and the remaining waitlisted users.</li>
      * </ol>
      *
      * @param event     The event for which the lottery is being run.
      * @param sampleNum The specific number of users to select. If {@code null}, the method defaults
      *                  to filling the event's defined capacity.
+     * @param listener  Receives progress and the result, may be null.
      */
-    public void handleRunLottery(Event event, @Nullable Integer sampleNum) {
-        // samples a subset of Waitlisted users (which is the size of event capacity)
-        // and adds them to invitedUsers by calling event repository
-        Log.d(TAG, "Running Lottery!");
+    public void handleRunLottery(Event event, @Nullable Integer sampleNum, @Nullable LotteryListener listener) {
+        LotteryListener callback = listener != null ? listener : new LoggingListener();
+        CollectionReference runs = eventRef().collection(LotteryRun.COLLECTION);
+        resumeOr(runs, callback, () -> claimAndDraw(sampleNum, runs, callback));
+    }
 
-        ArrayList<String> waitlistedUsers = new ArrayList<>();
+    /**
+     * Refills seats freed by declined or cancelled invitations.
+     * <p>
+     * Every waitlist entry carries a random {@link LotteryRun#DRAW_KEY} that stays the same when
+     * the entrant rejoins, so the waitlist ordered by that key is a persisted shuffle and the
+     * replacements are simply its first {@code seats} entries. This reads and writes only the
+     * entrants that win instead of the whole waitlist. Only the new winners are notified. If the event has an
+     * unfinished run it is finished first, then the replacements are drawn.
+     *
+     * @param seats    Number of seats to refill.
+     * @param listener Receives progress and the result, may be null.
+     */
+    public void handleReplacementDraw(int seats, @Nullable LotteryListener listener) {
+        LotteryListener callback = listener != null ? listener : new LoggingListener();
+        CollectionReference runs = eventRef().collection(LotteryRun.COLLECTION);
+        resumeThen(runs, callback, () -> drawReplacements(seats, runs, callback));
+    }
 
+    /**
+     * Finishes the event's unfinished run first if it has one, then starts the new draw. The
+     * listener hears the progress of both, but only the new draw completes it.
+     */
+    private void resumeThen(CollectionReference runs, LotteryListener listener, Runnable newDraw) {
+        resumeOr(runs, new LotteryListener() {
+            @Override
+            public void onProgress(int invited, int total) {
+                listener.onProgress(invited, total);
+            }
 
-        eventRepository.getWaitlistSize(this.event, new EventRepository.WaitlistSizeListener() {
             @Override
-            public void onSizeReceived(int size) {
-                Log.d(TAG, "Waitlist size received: " + size);
+            public void onComplete(List<String> invitedUserIds) {
+                newDraw.run();
             }
 
             @Override
-            public void onWaitlistEntrantsFetched(List<String> userIds) {
-                Log.d(TAG, "Waitlist entrants fetched: " + userIds);
-                waitlistedUsers.addAll(userIds);
-                ArrayList<String> invitedUsers = new ArrayList<>();
-
-                if (sampleNum != null && sampleNum < waitlistedUsers.size()){
-                    for (int i = 0; i < sampleNum; i++) {
-                        int randomIndex = (int) (Math.random() * waitlistedUsers.size());
-                        String chosenUserId = waitlistedUsers.get(randomIndex);
-                        Log.d(TAG, "Chosen user ID: " + chosenUserId);
-
-                        moveUserToInvited(chosenUserId, invitedUsers);
-                        waitlistedUsers.remove(randomIndex);
+            public void onError(Exception e) {
+                listener.onError(e);
+            }
+        }, newDraw);
+    }
+
+    /**
+     * Resumes the event's unfinished run if it has one, otherwise starts a new draw.
+     */
+    private void resumeOr(CollectionReference runs, LotteryListener listener, Runnable newDraw) {
+        runs.whereEqualTo(LotteryRun.STATUS, LotteryRun.STATUS_PENDING).limit(1).get()
+                .addOnSuccessListener(pending -> {
+                    if (!pending.isEmpty()) {
+                        DocumentSnapshot run = pending.getDocuments().get(0);
+                        Log.d(TAG, "Resuming unfinished lottery run " + run.getId());
+                        resumeRun(run, listener);
+                    } else {
+                        newDraw.run();
                     }
-                } else if (waitlistedUsers.size() < LotteryLogic.this.event.getEventCapacity()) {
-                    // add everyone on waitlist to invited
-                    Log.d(TAG, "Waitlist size is less than event capacity, Everyone is invited!");
-                    for (String userId : waitlistedUsers) {
-                        moveUserToInvited(userId, invitedUsers);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error checking for unfinished lottery runs.", e);
+                    listener.onError(e);
+                });
+    }
+
+    /**
+     * Claims the event's main draw before sampling. The claim is per call, so a second tap while
+     * a draw is in flight is turned away like anyone else.
+     */
+    private void claimAndDraw(@Nullable Integer sampleNum, CollectionReference runs, LotteryListener listener) {
+        String owner = LotteryRun.RUNNER_APP + ":" + UUID.randomUUID();
+        DocumentReference eventRef = eventRef();
+        DocumentReference runRef = runs.document(LotteryRun.INITIAL_RUN_ID);
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot current = transaction.get(eventRef);
+                    DocumentSnapshot claim = transaction.get(runRef);
+                    Timestamp claimedAt = claim.getTimestamp(LotteryRun.CREATED_AT);
+                    LotteryClaim.Outcome outcome = LotteryClaim.decide(current.get(LotteryEvent.DRAWN_AT) != null,
+                            claim.getString(LotteryRun.STATUS), claim.getString(LotteryRun.OWNER),
+                            claimedAt == null ? null : claimedAt.toDate(), owner, new Date());
+                    if (outcome == LotteryClaim.Outcome.CLAIMED) {
+                        Map<String, Object> claimData = new HashMap<>();
+                        claimData.put(LotteryRun.STATUS, LotteryRun.STATUS_CLAIMED);
+                        claimData.put(LotteryRun.OWNER, owner);
+                        claimData.put(LotteryRun.KIND, LotteryRun.KIND_INITIAL);
+                        claimData.put(LotteryRun.RUNNER, LotteryRun.RUNNER_APP);
+                        claimData.put(LotteryRun.CREATED_AT, FieldValue.serverTimestamp());
+                        transaction.set(runRef, claimData);
                     }
-                } else {
-                    Log.d(TAG, "Waitlist size is greater than event capacity, Lottery started!");
-                    int numInvited = LotteryLogic.this.event.getEventCapacity();
-                    for (int i = 0; i < numInvited; i++) {
-                        int randomIndex = (int) (Math.random() * waitlistedUsers.size());
-                        String chosenUserId = waitlistedUsers.get(randomIndex);
-                        Log.d(TAG, "Chosen user ID: " + chosenUserId);
-
-                        moveUserToInvited(chosenUserId, invitedUsers);
-                        waitlistedUsers.remove(randomIndex);
+                    return outcome;
+                })
+                .addOnSuccessListener(outcome -> {
+                    switch (outcome) {
+                        case CLAIMED:
+                            draw(sampleNum, runRef, owner, listener);
+                            break;
+                        case RESUME:
+                            // Someone recorded the winners since we checked, finish theirs.
+                            resumeOr(runs, listener, () -> claimAndDraw(sampleNum, runs, listener));
+                            break;
+                        case DRAWN:
+                            Log.d(TAG, "Lottery for " + event.getEventTitle() + " was already drawn.");
+                            listener.onComplete(new ArrayList<>());
+                            break;
+                        default:
+                            listener.onError(new IllegalStateException("The lottery for " + event.getEventTitle() + " is already being drawn"));
+                            break;
                     }
-                }
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error claiming the lottery.", e);
+                    listener.onError(e);
+                });
+    }
+
+    private void draw(@Nullable Integer sampleNum, DocumentReference runRef, String owner, LotteryListener listener) {
+        // samples a subset of Waitlisted users (which is the size of event capacity)
+        // and adds them to invitedUsers
+        Log.d(TAG, "Running Lottery!");
+
+        eventRef().collection("waitlistedUsers").get()
+                .addOnSuccessListener(snapshot -> {
+                    List<String> userIds = new ArrayList<>();
+                    List<String> muted = new ArrayList<>();
+                    for (QueryDocumentSnapshot doc : snapshot) {
+                        userIds.add(doc.getId());
+                        if (Boolean.FALSE.equals(doc.getBoolean(EventMembership.NOTIFICATIONS_ENABLED))) {
+                            muted.add(doc.getId());
+                        }
+                    }
+                    Log.d(TAG, "Waitlist entrants fetched: " + userIds.size());
+                    int numInvited = LotteryPolicy.winnerCount(userIds.size(), event.getEventCapacity(), sampleNum);
+                    if (numInvited == userIds.size()) {
+                        Log.d(TAG, "Waitlist size is within event capacity, Everyone is invited!");
+                    } else {
+                        Log.d(TAG, "Waitlist size is greater than event capacity, Lottery started!");
+                    }
+
+                    long seed = new SplittableRandom().nextLong();
+                    List<String> invitedUsers = LotteryPolicy.drawWinners(userIds, numInvited, seed, sampler);
+
+                    Map<String, Object> audit = new HashMap<>();
+                    // Replaying the waitlist with this seed reproduces the winners.
+                    audit.put(LotteryRun.SEED, seed);
+                    audit.put(LotteryRun.WAITLIST_SIZE, userIds.size());
+                    audit.put(LotteryRun.OWNER, owner);
+                    muted.retainAll(new HashSet<>(invitedUsers));
+                    recordInitialRun(runRef, owner, runData(invitedUsers, muted, LotteryRun.KIND_INITIAL, audit), invitedUsers, muted, listener);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error getting waitlist data.", e);
+                    listener.onError(e);
+                });
+    }
+
+    private void drawReplacements(int seats, CollectionReference runs, LotteryListener listener) {
+        Log.d(TAG, "Drawing " + seats + " replacements for " + event.getEventTitle());
+        CollectionReference waitlist = eventRef().collection("waitlistedUsers");
+        Query shuffled = waitlist.orderBy(LotteryRun.DRAW_KEY);
+        // Entries from before draw keys existed are missing from the ordered query. Two count
+        // aggregations are enough to tell whether any are left without reading the waitlist.
+        waitlist.count().get(AggregateSource.SERVER)
+                .continueWithTask(all -> {
+                    long total = all.getResult().getCount();
+                    return shuffled.count().get(AggregateSource.SERVER)
+                            .continueWith(keyed -> total - keyed.getResult().getCount());
+                })
+                .addOnSuccessListener(missing -> {
+                    if (missing > 0) {
+                        backfillDrawKeys(() -> pickReplacements(shuffled, seats, runs, listener), listener);
+                    } else {
+                        pickReplacements(shuffled, seats, runs, listener);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error counting the waitlist.", e);
+                    listener.onError(e);
+                });
+    }
+
+    private void pickReplacements(Query shuffled, int seats, CollectionReference runs, LotteryListener listener) {
+        shuffled.limit(seats).get()
+                .addOnSuccessListener(snapshot -> {
+                    List<String> winners = new ArrayList<>();
+                    List<String> muted = new ArrayList<>();
+                    for (QueryDocumentSnapshot doc : snapshot) {
+                        winners.add(doc.getId());
+                        if (Boolean.FALSE.equals(doc.getBoolean(EventMembership.NOTIFICATIONS_ENABLED))) {
+                            muted.add(doc.getId());
+                        }
+                    }
+                    if (winners.isEmpty()) {
+                        Log.d(TAG, "Nobody left on the waitlist to invite.");
+                        listener.onComplete(winners);
+                        return;
+                    }
+                    startRun(runs, winners, muted, LotteryRun.KIND_REPLACEMENT, new HashMap<>(), listener);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error reading the waitlist order.", e);
+                    listener.onError(e);
+                });
+    }
+
+    /**
+     * Gives every waitlist entry that lacks one a draw key.
+     */
+    private void backfillDrawKeys(Runnable then, LotteryListener listener) {
+        eventRef().collection("waitlistedUsers").get()
+                .addOnSuccessListener(snapshot -> {
+                    ChunkedBatchWriter writer = new ChunkedBatchWriter(db);
+                    for (QueryDocumentSnapshot doc : snapshot) {
+                        if (doc.contains(LotteryRun.DRAW_KEY)) continue;
+                        Map<String, Object> key = new HashMap<>();
+                        key.put(LotteryRun.DRAW_KEY, LotteryPolicy.drawKey(event.getEventId(), doc.getId()));
+                        writer.unit().update(doc.getReference(), key);
+                    }
+                    if (writer.size() == 0) {
+                        then.run();
+                        return;
+                    }
+                    Log.d(TAG, "Assigning draw keys to " + writer.size() + " waitlist entries.");
+                    writer.commit(new ChunkedBatchWriter.Listener() {
+                        @Override
+                        public void onProgress(int committedUnits, int totalUnits) {}
+
+                        @Override
+                        public void onComplete(int totalUnits) {
+                            then.run();
+                        }
+
+                        @Override
+                        public void onError(Exception e, int committedUnits) {
+                            Log.e(TAG, "Error assigning draw keys.", e);
+                            listener.onError(e);
+                        }
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error getting waitlist data.", e);
+                    listener.onError(e);
+                });
+    }
+
+    /**
+     * Records the winners before touching any entrant so a failed commit can be resumed with the
+     * same draw instead of drawing again, then moves them.
+     */
+    private void startRun(CollectionReference runs, List<String> winners, List<String> muted, String kind, Map<String, Object> extra, LotteryListener listener) {
+        DocumentReference runRef = runs.document();
+        runRef.set(runData(winners, muted, kind, extra))
+                .addOnSuccessListener(aVoid -> commitWinners(runRef, winners, muted, 0, kind, listener))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error recording lottery run.", e);
+                    listener.onError(e);
+                });
+    }
+
+    /**
+     * Replaces the main draw's claim with its winners, as long as this call still holds the
+     * claim, then moves them. A draw that had nobody to invite is recorded as complete together
+     * with the event's drawn marker, so the runner doesn't draw it again and send the results
+     * twice.
+     */
+    private void recordInitialRun(DocumentReference runRef, String owner, Map<String, Object> run, List<String> winners, List<String> muted, LotteryListener listener) {
+        boolean empty = winners.isEmpty();
+        if (empty) {
+            run.put(LotteryRun.STATUS, LotteryRun.STATUS_COMPLETE);
+        }
+        DocumentReference eventRef = eventRef();
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot claim = transaction.get(runRef);
+                    if (!LotteryClaim.stillOwns(claim.getString(LotteryRun.STATUS), claim.getString(LotteryRun.OWNER), owner)) {
+                        return false;
+                    }
+                    transaction.set(runRef, run);
+                    if (empty) {
+                        transaction.update(eventRef, LotteryEvent.DRAWN_AT, FieldValue.serverTimestamp());
+                    }
+                    return true;
+                })
+                .addOnSuccessListener(recorded -> {
+                    if (!recorded) {
+                        listener.onError(new IllegalStateException("The claim on the lottery for " + event.getEventTitle() + " expired and was taken over"));
+                    } else if (empty) {
+                        sendResultNotifications();
+                        listener.onComplete(new ArrayList<>());
+                    } else {
+                        commitWinners(runRef, winners, muted, 0, LotteryRun.KIND_INITIAL, listener);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error recording lottery run.", e);
+                    listener.onError(e);
+                });
+    }
+
+    private Map<String, Object> runData(List<String> winners, List<String> muted, String kind, Map<String, Object> extra) {
+        Map<String, Object> run = new HashMap<>(extra);
+        run.put(LotteryRun.WINNERS, winners);
+        run.put(LotteryRun.MUTED, muted);
+        run.put(LotteryRun.KIND, kind);
+        run.put(LotteryRun.COMMITTED, 0);
+        run.put(LotteryRun.STATUS, LotteryRun.STATUS_PENDING);
+        run.put(LotteryRun.RUNNER, LotteryRun.RUNNER_APP);
+        run.put(LotteryRun.CREATED_AT, FieldValue.serverTimestamp());
+        return run;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resumeRun(DocumentSnapshot run, LotteryListener listener) {
+        List<String> winners = (List<String>) run.get(LotteryRun.WINNERS);
+        Long committed = run.getLong(LotteryRun.COMMITTED);
+        List<String> muted = (List<String>) run.get(LotteryRun.MUTED);
+        String kind = run.getString(LotteryRun.KIND);
+        if (winners == null) {
+            listener.onError(new IllegalStateException("Lottery run " + run.getId() + " has no winners"));
+            return;
+        }
+        commitWinners(run.getReference(), winners, muted == null ? new ArrayList<>() : muted,
+                committed == null ? 0 : committed.intValue(),
+                kind == null ? LotteryRun.KIND_INITIAL : kind, listener);
+    }
 
-                eventRepository.setInvitedUserIds(LotteryLogic.this.event, invitedUsers);
-                Log.d(TAG, "Added invited users" + invitedUsers + "to event " + LotteryLogic.this.event.getEventTitle() + "!");
-
-                // send notification to users that won the lottery
-                String title = LotteryLogic.this.event.getEventTitle();
-                String body = "You won the lottery!";
-                String eventId = LotteryLogic.this.event.getEventId();
-                String groupCollection = "invitedUsers";
-                notificationRepository.sendNotificationToGroup(title, body, eventId, groupCollection);
-                Log.d(TAG, "WIN Notification sent to invited users" + invitedUsers + "to event " + LotteryLogic.this.event.getEventTitle() + "!");
-
-                // send notification to users that lost the lottery
-                String body2 = "You lost the lottery!";
-                String groupCollection2 = "waitlistedUsers";
-                notificationRepository.sendNotificationToGroup(title, body2, eventId, groupCollection2);
-                Log.d(TAG, "LOST Notification sent to waitlisted users" + waitlistedUsers + "to event " + LotteryLogic.this.event.getEventTitle() + "!");
+    /**
+     * Moves the winners from the waitlist to the invited list, starting after the ones an earlier
+     * attempt already committed. Every batch also advances the run's checkpoint, and the last one
+     * marks the run complete.
+     * <p>
+     * Winners whose account was deleted since the draw only lose their waitlist entry, so their
+     * user document isn't brought back. They are found by reading the remaining winners' user
+     * documents first. One deleted after that read fails its batch on the profile update, and
+     * the resumed run reads again and skips them.
+     */
+    private void commitWinners(DocumentReference runRef, List<String> winners, List<String> muted, int alreadyCommitted, String kind, LotteryListener listener) {
+        List<String> remaining = winners.subList(alreadyCommitted, winners.size());
+        List<Task<QuerySnapshot>> reads = new ArrayList<>();
+        for (int start = 0; start < remaining.size(); start += MAX_IDS_PER_QUERY) {
+            List<String> chunk = remaining.subList(start, Math.min(start + MAX_IDS_PER_QUERY, remaining.size()));
+            reads.add(db.collection("users").whereIn(FieldPath.documentId(), new ArrayList<>(chunk)).get());
+        }
+        Tasks.whenAllSuccess(reads)
+                .addOnSuccessListener(results -> {
+                    Set<String> existing = new HashSet<>();
+                    for (Object result : results) {
+                        for (QueryDocumentSnapshot user : (QuerySnapshot) result) {
+                            existing.add(user.getId());
+                        }
+                    }
+                    writeWinners(runRef, winners, muted, alreadyCommitted, kind, existing, listener);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error reading the winners' accounts, run it again to resume.", e);
+                    listener.onError(e);
+                });
+    }
+
+    private void writeWinners(DocumentReference runRef, List<String> winners, List<String> muted, int alreadyCommitted, String kind, Set<String> existing, LotteryListener listener) {
+        String eventId = event.getEventId();
+        Set<String> mutedSet = new HashSet<>(muted);
+        DocumentReference eventRef = eventRef();
+        List<String> remaining = winners.subList(alreadyCommitted, winners.size());
+
+        ChunkedBatchWriter writer = new ChunkedBatchWriter(db);
+        for (String userId : remaining) {
+            if (!existing.contains(userId)) {
+                // Still a unit, so the checkpoint keeps counting winners.
+                Log.d(TAG, "Skipping winner " + userId + ", their account is gone.");
+                writer.unit().delete(eventRef.collection("waitlistedUsers").document(userId));
+                continue;
             }
+            Map<String, Object> invitedData = new HashMap<>();
+            invitedData.put("timestamp", FieldValue.serverTimestamp());
+            if (mutedSet.contains(userId)) {
+                invitedData.put(EventMembership.NOTIFICATIONS_ENABLED, false);
+            }
+            Map<String, Object> profileUpdate = new HashMap<>();
+            profileUpdate.put("onInvitedEventIds", FieldValue.arrayUnion(eventId));
+
+            // Every write here is idempotent so replaying a winner on resume is harmless.
+            writer.unit()
+                    .delete(eventRef.collection("waitlistedUsers").document(userId))
+                    .set(eventRef.collection("invitedUsers").document(userId), invitedData)
+                    .update(db.collection("users").document(userId), profileUpdate);
+        }
+        boolean initial = !LotteryRun.KIND_REPLACEMENT.equals(kind);
+        // The run's progress, plus the event's drawn marker in the batch finishing a main draw.
+        writer.checkpoint((batch, committedUnits) -> {
+            int committed = alreadyCommitted + committedUnits;
+            Map<String, Object> progress = new HashMap<>();
+            progress.put(LotteryRun.COMMITTED, committed);
+            progress.put(LotteryRun.STATUS, committed >= winners.size() ? LotteryRun.STATUS_COMPLETE : LotteryRun.STATUS_PENDING);
+            batch.update(runRef, progress);
+            if (initial && committed >= winners.size()) {
+                batch.update(eventRef, LotteryEvent.DRAWN_AT, FieldValue.serverTimestamp());
+            }
+        }, 2);
 
+        writer.commit(new ChunkedBatchWriter.Listener() {
             @Override
-            public void onError(Exception e) {
-                Log.e(TAG, "Error getting waitlist data.", e);
+            public void onProgress(int committedUnits, int totalUnits) {
+                listener.onProgress(alreadyCommitted + committedUnits, winners.size());
+            }
+
+            @Override
+            public void onComplete(int totalUnits) {
+                Log.d(TAG, "Added " + winners.size() + " invited users to event " + event.getEventTitle() + "!");
+                if (LotteryRun.KIND_REPLACEMENT.equals(kind)) {
+                    // Everyone else already heard how the main draw went.
+                    List<String> recipients = new ArrayList<>(winners);
+                    recipients.removeAll(mutedSet);
+                    notificationRepository.sendNotificationToUsers(event.getEventTitle(), "You won the lottery!", event.getEventId(), recipients);
+                } else {
+                    sendResultNotifications();
+                }
+                listener.onComplete(winners);
+            }
+
+            @Override
+            public void onError(Exception e, int committedUnits) {
+                Log.e(TAG, "Lottery stopped after " + (alreadyCommitted + committedUnits) + "/" + winners.size() + " winners, run it again to resume.", e);
+                listener.onError(e);
             }
         });
     }
 
+    private void sendResultNotifications() {
+        // send notification to users that won the lottery
+        String title = event.getEventTitle();
+        String body = "You won the lottery!";
+        String eventId = event.getEventId();
+        String groupCollection = "invitedUsers";
+        notificationRepository.sendNotificationToGroup(title, body, eventId, groupCollection);
+        Log.d(TAG, "WIN Notification sent to invited users of event " + title + "!");
+
+        // send notification to users that lost the lottery
+        String body2 = "You lost the lottery!";
+        String groupCollection2 = "waitlistedUsers";
+        notificationRepository.sendNotificationToGroup(title, body2, eventId, groupCollection2);
+        Log.d(TAG, "LOST Notification sent to waitlisted users of event " + title + "!");
+    }
+
+    private DocumentReference eventRef() {
+        return db.collection("events").document(event.getEventId());
+    }
 
     /**
-     * Moves a user from the waitlist to the invited list.
-     * <p>
-     * This helper method updates the local list of invited users and triggers
-     * database updates to remove the user from the waitlist and update their
-     * individual profile status.
-     *
-     * @param userId       The ID of the user to move.
-     * @param invitedUsers The list of invited user IDs to which the user will be added.
+     * Used when the caller doesn't want to hear back, so failures still end up in the log.
      */
-    private void moveUserToInvited(String userId, List<String> invitedUsers) {
-        invitedUsers.add(userId);
-        eventRepository.removeUserFromWaitlist(event, userId);
-        profileRepository.updateUserInvitedList(userId, event.getEventId());
+    private class LoggingListener implements LotteryListener {
+        @Override
+        public void onProgress(int invited, int total) {
+            Log.d(TAG, "Lottery progress: " + invited + "/" + total);
+        }
+
+        @Override
+        public void onComplete(List<String> invitedUserIds) {
+            Log.d(TAG, "Lottery complete for " + event.getEventTitle());
+        }
+
+        @Override
+        public void onError(Exception e) {
+            Log.e(TAG, "Lottery failed for " + event.getEventTitle(), e);
+        }
     }
 }
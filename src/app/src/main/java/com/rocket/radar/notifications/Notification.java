@@ -101,4 +101,40 @@ public class Notification {
      * @param userNotificationId The ID of the document in the user's notification sub-collection.
      */
     public void setUserNotificationId(String userNotificationId) { this.userNotificationId = userNotificationId; }
+
+    /**
+     * Sets the main title of the notification.
+     * @param eventTitle The notification title string.
+     */
+    public void setEventTitle(String eventTitle) { this.eventTitle = eventTitle; }
+
+    /**
+     * Sets the type of the notification.
+     * @param notificationType The notification type string.
+     */
+    public void setNotificationType(String notificationType) { this.notificationType = notificationType; }
+
+    /**
+     * Sets the ID of the event associated with the notification.
+     * @param eventId The event ID string.
+     */
+    public void setEventId(String eventId) { this.eventId = eventId; }
+
+    /**
+     * Sets the drawable resource ID for the notification's icon.
+     * @param image The integer ID of the drawable resource.
+     */
+    public void setImage(int image) { this.image = image; }
+
+    /**
+     * Sets when the notification was created.
+     * @param timestamp The creation time.
+     */
+    public void setTimestamp(Date timestamp) { this.timestamp = timestamp; }
+
+    /**
+     * Sets the ID of the notification content this notification was built from.
+     * @param notificationId The document ID string.
+     */
+    public void setNotificationId(String notificationId) { this.notificationId = notificationId; }
 }
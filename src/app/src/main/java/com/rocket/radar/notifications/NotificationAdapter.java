@@ -8,9 +8,14 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.rocket.radar.R;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 import com.rocket.radar.MainActivity;
 import com.rocket.radar.events.Event;
 import com.rocket.radar.events.EventRepository;
@@ -23,74 +28,100 @@ import com.rocket.radar.events.EventViewFragment;
  * It handles multiple view types:
  * - A standard notification item.
  * - A separator to distinguish between read and unread notifications.
- * - An empty state message for when there are no notifications.
  * It also manages the visual state for read/unread notifications.
+ *
+ * Rows are diffed against the previous list on a background thread ({@link ListAdapter}), so a
+ * notification being marked read only rebinds and moves that one row.
  */
-public class NotificationAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+public class NotificationAdapter extends ListAdapter<NotificationAdapter.Row, RecyclerView.ViewHolder> {
 
-    // --- NEW VIEW TYPE ADDED ---
     private static final int VIEW_TYPE_NOTIFICATION = 1;
     private static final int VIEW_TYPE_SEPARATOR = 2;
-    private static final int VIEW_TYPE_EMPTY = 3; // For the "No notifications" message
 
     private final Context context;
-    private final List<Notification> notificationList;
-    private final NotificationRepository repository;
+    private final ReadListener readListener;
     private final EventRepository eventRepository;
 
+    /**
+     * Told when the user opens an unread notification.
+     */
+    public interface ReadListener {
+        void onRead(Notification notification);
+    }
+
+    /**
+     * One row of the list, either a notification or the "Previously Read" separator.
+     */
+    static final class Row {
+        static final Row SEPARATOR = new Row(null);
+
+        @Nullable final Notification notification;
+
+        private Row(@Nullable Notification notification) {
+            this.notification = notification;
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<Row> DIFF = new DiffUtil.ItemCallback<Row>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Row oldRow, @NonNull Row newRow) {
+            if (oldRow.notification == null || newRow.notification == null) {
+                return oldRow.notification == newRow.notification;
+            }
+            return Objects.equals(oldRow.notification.getUserNotificationId(), newRow.notification.getUserNotificationId());
+        }
 
-    private int separatorIndex = -1;
+        @Override
+        public boolean areContentsTheSame(@NonNull Row oldRow, @NonNull Row newRow) {
+            if (oldRow.notification == null || newRow.notification == null) {
+                return oldRow.notification == newRow.notification;
+            }
+            Notification o = oldRow.notification;
+            Notification n = newRow.notification;
+            return o.isReadStatus() == n.isReadStatus()
+                    && Objects.equals(o.getEventTitle(), n.getEventTitle())
+                    && Objects.equals(o.getNotificationType(), n.getNotificationType())
+                    && Objects.equals(o.getEventId(), n.getEventId());
+        }
+    };
 
     /**
      * Constructs a new NotificationAdapter.
      *
      * @param context The current context, used for inflating layouts.
-     * @param notificationList The list of notifications to be displayed.
-     * @param repository The repository to handle data operations, like marking notifications as read.
+     * @param readListener Marks notifications as read when they are opened.
+     * @param eventRepository Loads the event a notification opens.
      */
     public NotificationAdapter(Context context,
-                               List<Notification> notificationList,
-                               NotificationRepository repository,
+                               ReadListener readListener,
                                EventRepository eventRepository) {
+        super(DIFF);
         this.context = context;
-        this.notificationList = notificationList;
-        this.repository = repository;
+        this.readListener = readListener;
         this.eventRepository = eventRepository;
     }
 
     /**
      * Updates the list of notifications displayed by the adapter.
-     * This method clears the existing list, adds the new notifications, recalculates the
-     * separator position, and refreshes the RecyclerView.
+     * The "Previously Read" separator goes just before the first read notification, or at the
+     * end if every notification is unread. There is no separator when there are no notifications.
      *
-     * @param newNotifications The new list of notifications to display.
+     * @param notifications The notifications to display, unread first.
      */
-    public void setNotifications(List<Notification> newNotifications) {
-        notificationList.clear();
-        notificationList.addAll(newNotifications);
-        calculateSeparatorIndex();
-        notifyDataSetChanged();
-    }
-
-    /**
-     * Calculates the position for the "Previously Read" separator.
-     * The separator is placed just before the first read notification. If all notifications are
-     * unread, the separator is placed at the end of the list. If there are no notifications,
-     * the separator is not shown.
-     */
-    private void calculateSeparatorIndex() {
-        separatorIndex = -1;
-        for (int i = 0; i < notificationList.size(); i++) {
-            if (notificationList.get(i).isReadStatus()) {
-                separatorIndex = i;
-                return;
+    public void setNotifications(List<Notification> notifications) {
+        List<Row> rows = new ArrayList<>(notifications.size() + 1);
+        boolean separated = false;
+        for (Notification notification : notifications) {
+            if (!separated && notification.isReadStatus()) {
+                rows.add(Row.SEPARATOR);
+                separated = true;
             }
+            rows.add(new Row(notification));
         }
-        // This case handles when there are notifications, but all of them are unread.
-        // In this scenario, we still want a separator, but it should be at the end of the list.
-        if (separatorIndex == -1 && !notificationList.isEmpty()) {
-            separatorIndex = notificationList.size();
+        if (!separated && !notifications.isEmpty()) {
+            rows.add(Row.SEPARATOR);
         }
+        submitList(rows);
     }
 
     /**
@@ -101,26 +132,13 @@ public class NotificationAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
      */
     @Override
     public int getItemViewType(int position) {
-        // If the list is empty, we only show the empty view type.
-        if (notificationList.isEmpty()) {
-            return VIEW_TYPE_EMPTY;
-        }
-        // Otherwise, use the existing logic.
-        if (separatorIndex != -1 && position == separatorIndex) {
-            return VIEW_TYPE_SEPARATOR;
-        }
-        return VIEW_TYPE_NOTIFICATION;
+        return getItem(position).notification == null ? VIEW_TYPE_SEPARATOR : VIEW_TYPE_NOTIFICATION;
     }
 
     @NonNull
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         LayoutInflater inflater = LayoutInflater.from(context);
-        // Handle creating the new empty view holder
-        if (viewType == VIEW_TYPE_EMPTY) {
-            View view = inflater.inflate(R.layout.notification_empty_state, parent, false);
-            return new EmptyViewHolder(view);
-        }
         if (viewType == VIEW_TYPE_SEPARATOR) {
             View view = inflater.inflate(R.layout.notification_separator, parent, false);
             return new SeparatorViewHolder(view);
@@ -130,7 +148,6 @@ public class NotificationAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         return new NotificationViewHolder(view);
     }
 
-    // --- MODIFIED ---
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
         // Handle each view type
@@ -141,22 +158,8 @@ public class NotificationAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
                 break;
 
             case VIEW_TYPE_NOTIFICATION:
-                // This is the original binding logic
-                int listIndex = position;
-                if (separatorIndex != -1 && position > separatorIndex) {
-                    listIndex--;
-                }
-
                 NotificationViewHolder notificationHolder = (NotificationViewHolder) holder;
-
-                if (listIndex < 0 || listIndex >= notificationList.size()) {
-                    Log.e("NotificationAdapter", "CRITICAL BUG: Invalid index. Position: " + position + ", ListIndex: " + listIndex);
-                    holder.itemView.setVisibility(View.GONE);
-                    return;
-                }
-                holder.itemView.setVisibility(View.VISIBLE);
-
-                Notification notification = notificationList.get(listIndex);
+                Notification notification = getItem(position).notification;
 
                 notificationHolder.eventTitle.setText(notification.getEventTitle());
                 notificationHolder.notificationType.setText(notification.getNotificationType());
@@ -171,7 +174,7 @@ public class NotificationAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
 
                 notificationHolder.itemView.setOnClickListener(v -> {
                     if (!notification.isReadStatus()) {
-                        repository.markNotificationAsRead(notification.getUserNotificationId());
+                        readListener.onRead(notification);
                     }
 
                     String eventId = notification.getEventId();
@@ -217,23 +220,6 @@ public class NotificationAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     }
 
 
-    /**
-     * Returns the total number of items in the data set held by the adapter.
-     * This includes notifications and the separator, if present.
-     *
-     * @return The total number of items.
-     */
-    @Override
-    public int getItemCount() {
-        int count = notificationList.size();
-        // If a separator exists (is not -1), we need one extra space for it.
-        if (separatorIndex != -1) {
-            count++;
-        }
-        return count;
-    }
-
-
     /**
      * ViewHolder for a single notification item. Caches view references and binds data.
      */
@@ -265,17 +251,4 @@ public class NotificationAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
             separatorText = itemView.findViewById(R.id.separator_text);
         }
     }
-
-    /**
-     * ViewHolder for the empty state view, displayed when there are no notifications.
-     */
-    public static class EmptyViewHolder extends RecyclerView.ViewHolder {
-        /**
-         * Constructs the ViewHolder for the empty state.
-         * @param itemView The empty state view.
-         */
-        public EmptyViewHolder(@NonNull View itemView) {
-            super(itemView);
-        }
-    }
 }
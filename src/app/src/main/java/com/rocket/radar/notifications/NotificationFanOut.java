@@ -0,0 +1,189 @@
+package com.rocket.radar.notifications;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes notification stubs for a list of recipients in bounded chunks, a few chunks at a time.
+ *
+ * <p>Recipients are split into chunks that each fit in one write, and up to {@code parallelism}
+ * chunks are in flight at once, so a group of thousands doesn't wait on one round trip per chunk
+ * without flooding the project with concurrent commits. A failed chunk is retried, which is only
+ * safe because a {@link ChunkWriter} must be idempotent. One chunk failing for good doesn't stop
+ * the others. Used from the main thread, the app side counterpart of the runner's fan-out.</p>
+ */
+class NotificationFanOut {
+    private static final String TAG = "NotificationFanOut";
+
+    /**
+     * Writes the stubs of one chunk. Must be safe to call again with the same recipients.
+     */
+    interface ChunkWriter {
+        /**
+         * @return The number of stubs written, recipients that were skipped don't count.
+         */
+        Task<Integer> write(List<String> userIds);
+    }
+
+    /**
+     * Hears the result once every chunk has finished. Called on the main thread.
+     */
+    interface Listener {
+        void onComplete(Stats stats);
+    }
+
+    /**
+     * What a fan-out did and how long it took.
+     */
+    static final class Stats {
+        final int recipients;
+        final int stubs;
+        final int chunks;
+        final int failedChunks;
+        final int retries;
+        final long elapsedMillis;
+        // Latency of each chunk's last attempt, in chunk order.
+        final long[] chunkMillis;
+
+        Stats(int recipients, int stubs, int chunks, int failedChunks, int retries, long elapsedMillis, long[] chunkMillis) {
+            this.recipients = recipients;
+            this.stubs = stubs;
+            this.chunks = chunks;
+            this.failedChunks = failedChunks;
+            this.retries = retries;
+            this.elapsedMillis = elapsedMillis;
+            this.chunkMillis = chunkMillis;
+        }
+
+        long stubsPerSecond() {
+            return stubs * 1000L / Math.max(1, elapsedMillis);
+        }
+
+        /**
+         * @param percentile Between 0 and 100.
+         * @return The chunk latency at that percentile in milliseconds.
+         */
+        long chunkMillis(int percentile) {
+            if (chunkMillis.length == 0) return 0;
+            long[] sorted = chunkMillis.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)];
+        }
+
+        @Override
+        public String toString() {
+            return stubs + "/" + recipients + " stubs in " + chunks + " chunks (" + failedChunks + " failed), "
+                    + stubsPerSecond() + " stubs/s, chunk p50 " + chunkMillis(50) + " ms, p95 " + chunkMillis(95)
+                    + " ms, max " + chunkMillis(100) + " ms, " + retries + " retries";
+        }
+    }
+
+    private final int chunkSize;
+    private final int parallelism;
+    private final int retries;
+
+    /**
+     * @param chunkSize Recipients per chunk.
+     * @param parallelism Chunks in flight at once.
+     * @param retries Extra attempts per chunk.
+     */
+    NotificationFanOut(int chunkSize, int parallelism, int retries) {
+        if (chunkSize < 1 || parallelism < 1 || retries < 0) {
+            throw new IllegalArgumentException("chunkSize and parallelism must be positive, retries can't be negative");
+        }
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.retries = retries;
+    }
+
+    /**
+     * Writes every recipient's stub.
+     *
+     * @param userIds The recipients.
+     * @param writer Writes one chunk.
+     * @param listener Hears the result once every chunk finished.
+     */
+    void run(List<String> userIds, ChunkWriter writer, Listener listener) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < userIds.size(); start += chunkSize) {
+            chunks.add(new ArrayList<>(userIds.subList(start, Math.min(start + chunkSize, userIds.size()))));
+        }
+        Run run = new Run(userIds.size(), chunks, writer, listener);
+        if (chunks.isEmpty()) {
+            run.complete();
+            return;
+        }
+        for (int i = 0; i < Math.min(parallelism, chunks.size()); i++) {
+            run.next();
+        }
+    }
+
+    /**
+     * The state of one {@link #run}. Only touched from task callbacks on the main thread.
+     */
+    private class Run {
+        private final int recipients;
+        private final List<List<String>> chunks;
+        private final ChunkWriter writer;
+        private final Listener listener;
+        private final long[] chunkMillis;
+        private final long started = SystemClock.elapsedRealtime();
+        private int nextChunk = 0;
+        private int finished = 0;
+        private int stubs = 0;
+        private int failed = 0;
+        private int retried = 0;
+
+        Run(int recipients, List<List<String>> chunks, ChunkWriter writer, Listener listener) {
+            this.recipients = recipients;
+            this.chunks = chunks;
+            this.writer = writer;
+            this.listener = listener;
+            this.chunkMillis = new long[chunks.size()];
+        }
+
+        void next() {
+            if (nextChunk < chunks.size()) {
+                attempt(nextChunk++, 0);
+            }
+        }
+
+        private void attempt(int index, int attempt) {
+            List<String> chunk = chunks.get(index);
+            long chunkStarted = SystemClock.elapsedRealtime();
+            writer.write(chunk).addOnCompleteListener(task -> {
+                chunkMillis[index] = SystemClock.elapsedRealtime() - chunkStarted;
+                if (task.isSuccessful()) {
+                    Integer written = task.getResult();
+                    stubs += written == null ? 0 : written;
+                } else if (attempt < retries) {
+                    Log.w(TAG, "Chunk " + (index + 1) + "/" + chunks.size() + " failed, retrying", task.getException());
+                    retried++;
+                    attempt(index, attempt + 1);
+                    return;
+                } else {
+                    Log.e(TAG, "Chunk " + (index + 1) + "/" + chunks.size() + " of " + chunk.size() + " recipients failed", task.getException());
+                    failed++;
+                }
+                finished++;
+                if (finished == chunks.size()) {
+                    complete();
+                } else {
+                    next();
+                }
+            });
+        }
+
+        void complete() {
+            listener.onComplete(new Stats(recipients, stubs, chunks.size(), failed, retried,
+                    SystemClock.elapsedRealtime() - started, chunkMillis));
+        }
+    }
+}
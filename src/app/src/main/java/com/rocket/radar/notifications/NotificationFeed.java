@@ -0,0 +1,284 @@
+package com.rocket.radar.notifications;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A paged view over the current user's inbox, queried as two partitions ordered by timestamp.
+ *
+ * <p>Unread notifications are a single live query capped at {@link #UNREAD_LIMIT}. Read ones
+ * are paged newest first: the newest page stays live (open-ended at the top, so notifications
+ * that get read show up in it) and older pages are fetched once with
+ * {@link #loadOlderRead()} as the user scrolls. Opening the inbox therefore costs the same no
+ * matter how long the user's history is. A notification read long after it arrived may belong
+ * to an older page that was already fetched, it shows up there the next time the inbox is
+ * opened.</p>
+ *
+ * <p>Both partitions feed one {@link NotificationInbox}, which keeps the list sorted for the
+ * adapter. Read marks made through the feed are applied to it right away, while the writes are
+ * coalesced by the repository and land a moment later. Call {@link #close()} when the owning
+ * view is destroyed.</p>
+ */
+public class NotificationFeed {
+    private static final String TAG = "NotificationFeed";
+
+    /**
+     * Most unread notifications shown at once. Anything past it is older than what fits on
+     * screen many times over.
+     */
+    static final int UNREAD_LIMIT = 100;
+
+    private final Query unreadQuery;
+    private final Query readQuery;
+    private final int pageSize;
+    private final NotificationRepository repository;
+    private final NotificationInbox inbox = new NotificationInbox();
+    private final MutableLiveData<List<Notification>> notificationsLiveData = new MutableLiveData<>();
+    // Marked read locally but not yet seen as read in a snapshot.
+    private final Set<String> pendingRead = new HashSet<>();
+
+    private ListenerRegistration unreadRegistration;
+    private ListenerRegistration newestReadRegistration;
+    // Oldest read notification fetched so far, older pages start after it.
+    private DocumentSnapshot oldestRead;
+    private boolean loading = false;
+    private boolean exhausted = false;
+    private boolean closed = false;
+
+    /**
+     * @param stubs The user's notification stubs.
+     * @param pageSize Number of read notifications fetched per page.
+     * @param repository Writes the read marks.
+     */
+    NotificationFeed(Query stubs, int pageSize, NotificationRepository repository) {
+        this.unreadQuery = stubs.whereEqualTo("readStatus", false)
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(UNREAD_LIMIT);
+        this.readQuery = stubs.whereEqualTo("readStatus", true)
+                .orderBy("timestamp", Query.Direction.DESCENDING);
+        this.pageSize = pageSize;
+        this.repository = repository;
+    }
+
+    /**
+     * @return LiveData holding every notification loaded so far, unread first, then newest first.
+     */
+    public LiveData<List<Notification>> getNotifications() {
+        return notificationsLiveData;
+    }
+
+    /**
+     * @return true once every read notification has been loaded.
+     */
+    public boolean isExhausted() {
+        return exhausted;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Starts listening to the unread notifications and the newest page of read ones.
+     */
+    void open() {
+        unreadRegistration = unreadQuery.addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Listen failed on unread notifications.", error);
+                return;
+            }
+            if (snapshot != null && !closed) {
+                apply(snapshot, false);
+            }
+        });
+
+        loading = true;
+        readQuery.limit(pageSize).get()
+                .addOnSuccessListener(snapshot -> {
+                    loading = false;
+                    if (closed) return;
+                    if (snapshot.size() < pageSize) {
+                        exhausted = true;
+                    }
+                    if (snapshot.isEmpty()) {
+                        // Nothing read yet, keep watching for the first one.
+                        newestReadRegistration = listenNewestRead(readQuery.limit(pageSize));
+                        publish();
+                        return;
+                    }
+                    List<DocumentSnapshot> docs = snapshot.getDocuments();
+                    oldestRead = docs.get(docs.size() - 1);
+                    // Fixed lower bound so the page only grows as notifications are read.
+                    newestReadRegistration = listenNewestRead(readQuery.endAt(oldestRead));
+                })
+                .addOnFailureListener(e -> {
+                    loading = false;
+                    Log.e(TAG, "Failed to load read notifications.", e);
+                });
+    }
+
+    /**
+     * Fetches the next page of older read notifications. Does nothing if a page is already in
+     * flight or everything has been loaded.
+     */
+    public void loadOlderRead() {
+        if (loading || exhausted || closed || oldestRead == null) return;
+        loading = true;
+        readQuery.startAfter(oldestRead).limit(pageSize).get()
+                .addOnSuccessListener(snapshot -> {
+                    loading = false;
+                    if (closed) return;
+                    if (snapshot.size() < pageSize) {
+                        exhausted = true;
+                    }
+                    if (snapshot.isEmpty()) return;
+                    List<DocumentSnapshot> docs = snapshot.getDocuments();
+                    oldestRead = docs.get(docs.size() - 1);
+                    for (DocumentSnapshot doc : docs) {
+                        inbox.put(NotificationRepository.fromStub(doc, doc));
+                    }
+                    Log.d(TAG, "Loaded " + docs.size() + " older read notifications.");
+                    publish();
+                })
+                .addOnFailureListener(e -> {
+                    loading = false;
+                    Log.e(TAG, "Failed to load older notifications.", e);
+                });
+    }
+
+    /**
+     * Marks a notification as read, showing it as read straight away.
+     *
+     * @param notification A notification from this feed.
+     */
+    public void markRead(Notification notification) {
+        if (closed || notification.isReadStatus()) return;
+        String stubId = notification.getUserNotificationId();
+        pendingRead.add(stubId);
+        inbox.put(asRead(notification));
+        publish();
+        repository.markNotificationAsRead(stubId);
+    }
+
+    /**
+     * Marks every notification of the user as read, including unread ones past
+     * {@link #UNREAD_LIMIT} that were never loaded. The loaded ones show as read straight away.
+     */
+    public void markAllRead() {
+        if (closed) return;
+        for (Notification notification : inbox.snapshot()) {
+            if (notification.isReadStatus()) continue;
+            pendingRead.add(notification.getUserNotificationId());
+            inbox.put(asRead(notification));
+        }
+        publish();
+        repository.markAllAsRead();
+    }
+
+    /**
+     * Removes every listener held by the feed and writes any read marks still pending. The
+     * feed can't be used after this.
+     */
+    public void close() {
+        closed = true;
+        repository.flushReadMarks();
+        if (unreadRegistration != null) {
+            unreadRegistration.remove();
+            unreadRegistration = null;
+        }
+        if (newestReadRegistration != null) {
+            newestReadRegistration.remove();
+            newestReadRegistration = null;
+        }
+    }
+
+    /**
+     * Shows notifications whose read marks couldn't be written as unread again, so the inbox
+     * matches what is stored. Ones whose stub was deleted are removed by the listeners anyway.
+     */
+    void onReadMarksDropped(Collection<String> userNotificationIds) {
+        if (closed) return;
+        for (String stubId : userNotificationIds) {
+            if (!pendingRead.remove(stubId)) continue;
+            Notification current = inbox.get(stubId);
+            if (current != null) {
+                inbox.put(withReadStatus(current, false));
+            }
+        }
+        publish();
+    }
+
+    private ListenerRegistration listenNewestRead(Query query) {
+        return query.addSnapshotListener((snapshot, error) -> {
+            if (error != null) {
+                Log.e(TAG, "Listen failed on read notifications.", error);
+                return;
+            }
+            if (snapshot != null && !closed) {
+                apply(snapshot, true);
+            }
+        });
+    }
+
+    /**
+     * Applies one partition's changes. A notification moving between partitions is removed from
+     * one and added to the other in either order, so a removal only counts if the inbox still
+     * holds the notification in the partition reporting it. Notifications marked read locally
+     * stay read until their write shows up.
+     */
+    private void apply(QuerySnapshot snapshot, boolean read) {
+        for (DocumentChange change : snapshot.getDocumentChanges()) {
+            QueryDocumentSnapshot doc = change.getDocument();
+            if (change.getType() == DocumentChange.Type.REMOVED) {
+                Notification current = inbox.get(doc.getId());
+                if (current != null && current.isReadStatus() == read) {
+                    inbox.remove(doc.getId());
+                }
+            } else {
+                Notification notification = NotificationRepository.fromStub(doc, doc);
+                if (read) {
+                    pendingRead.remove(doc.getId());
+                } else if (pendingRead.contains(doc.getId())) {
+                    notification = asRead(notification);
+                }
+                inbox.put(notification);
+            }
+        }
+        publish();
+    }
+
+    private static Notification asRead(Notification notification) {
+        return withReadStatus(notification, true);
+    }
+
+    private static Notification withReadStatus(Notification notification, boolean read) {
+        Notification copy = new Notification();
+        copy.setEventTitle(notification.getEventTitle());
+        copy.setNotificationType(notification.getNotificationType());
+        copy.setEventId(notification.getEventId());
+        copy.setImage(notification.getImage());
+        copy.setTimestamp(notification.getTimestamp());
+        copy.setNotificationId(notification.getNotificationId());
+        copy.setUserNotificationId(notification.getUserNotificationId());
+        copy.setReadStatus(read);
+        return copy;
+    }
+
+    private void publish() {
+        notificationsLiveData.setValue(inbox.snapshot());
+    }
+}
@@ -7,7 +7,7 @@ package com.rocket.radar.notifications;
  *
  * This fragment manages the UI state, showing a "no notifications" message when the list
  * is empty. It also handles navigation, allowing the user to return to the previous screen.
- * The sorting of notifications (unread first, then by date) is handled within this class.
+ * Notifications arrive sorted (unread first, then by date) from the repository's inbox model.
  */
 
 import android.os.Bundle;
@@ -26,16 +26,22 @@ import com.rocket.radar.MainActivity;
 import com.rocket.radar.R;
 import com.rocket.radar.events.EventRepository;
 
-import java.util.ArrayList;
 
 public class NotificationFragment extends Fragment {
 
     private RecyclerView notificationRecyclerView;
     private TextView emptyNotificationsTextView; // We need this again
     private Button backButton;
+    private Button markAllReadButton;
+
+    // Read notifications fetched per page.
+    private static final int PAGE_SIZE = 20;
+    // How close to the end of the list we get before asking for older notifications.
+    private static final int PREFETCH_DISTANCE = 5;
 
     private NotificationAdapter adapter;
     private NotificationRepository notificationRepository;
+    private NotificationFeed notificationFeed;
     private RecyclerView.AdapterDataObserver adapterObserver; // Declare the observer
 
     /**
@@ -57,6 +63,7 @@ public class NotificationFragment extends Fragment {
         notificationRecyclerView = view.findViewById(R.id.notification_recycler_view);
         emptyNotificationsTextView = view.findViewById(R.id.empty_notifications_text);
         backButton = view.findViewById(R.id.back_arrow);
+        markAllReadButton = view.findViewById(R.id.mark_all_read_button);
 
         return view;
     }
@@ -87,8 +94,9 @@ public class NotificationFragment extends Fragment {
 
         adapter = new NotificationAdapter(
                 getContext(),
-                new ArrayList<>(),
-                notificationRepository,
+                notification -> {
+                    if (notificationFeed != null) notificationFeed.markRead(notification);
+                },
                 eventRepository
         );
 
@@ -140,7 +148,8 @@ public class NotificationFragment extends Fragment {
 
     /**
      * Sets up the click listener for the back button, which pops the back stack to
-     * return the user to the previous screen.
+     * return the user to the previous screen, and for the button marking every
+     * notification as read.
      */
     private void setupClickListeners() {
         backButton.setOnClickListener(v -> {
@@ -148,29 +157,37 @@ public class NotificationFragment extends Fragment {
                 getParentFragmentManager().popBackStack();
             }
         });
+        markAllReadButton.setOnClickListener(v -> {
+            if (notificationFeed != null) notificationFeed.markAllRead();
+        });
     }
 
     /**
-     * Subscribes to the notification data stream from the {@link NotificationRepository}.
-     * When new data is received, it sorts the notifications (unread first, then by date)
-     * and updates the adapter.
+     * Opens the paged inbox from the {@link NotificationRepository} and loads older read
+     * notifications as the user nears the bottom of the list. The feed keeps the notifications
+     * sorted (unread first, then by date), and the adapter diffs each update against what it
+     * shows.
      */
     private void observeNotifications() {
-        notificationRepository.getMyNotifications().observe(getViewLifecycleOwner(), newNotifications -> {
+        notificationFeed = notificationRepository.openInbox(PAGE_SIZE);
+        if (notificationFeed == null) return;
+        notificationFeed.getNotifications().observe(getViewLifecycleOwner(), newNotifications -> {
             Log.d("NotificationFragment", "Data updated. " + newNotifications.size() + " notifications received.");
 
-            newNotifications.sort((n1, n2) -> {
-                int readCompare = Boolean.compare(n1.isReadStatus(), n2.isReadStatus());
-                if (readCompare != 0) { return readCompare; }
-                if (n1.getTimestamp() != null && n2.getTimestamp() != null) {
-                    return n2.getTimestamp().compareTo(n1.getTimestamp());
-                }
-                return 0;
-            });
-
             // The registered observer will handle showing/hiding the empty view automatically.
             adapter.setNotifications(newNotifications);
         });
+
+        notificationRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+                if (layoutManager == null || dy <= 0) return;
+                if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    notificationFeed.loadOlderRead();
+                }
+            }
+        });
     }
 
     /**
@@ -203,6 +220,10 @@ public class NotificationFragment extends Fragment {
         if (adapter != null && adapterObserver != null) {
             adapter.unregisterAdapterDataObserver(adapterObserver);
         }
+        if (notificationFeed != null) {
+            notificationFeed.close();
+            notificationFeed = null;
+        }
         if (getActivity() instanceof MainActivity) {
             ((MainActivity) getActivity()).setBottomNavigationVisibility(View.VISIBLE);
         }
@@ -0,0 +1,92 @@
+package com.rocket.radar.notifications;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The current user's notifications, kept sorted as individual stubs are added, changed or
+ * removed.
+ *
+ * <p>Snapshot listeners report which documents changed, so each change is applied in place
+ * (binary search on the sorted list) instead of rebuilding and re-sorting the whole inbox.
+ * Order is unread first, then newest first. Notifications whose timestamp is still pending on
+ * the server count as the newest.</p>
+ */
+public class NotificationInbox {
+
+    /**
+     * Unread first, then newest first, ties broken by stub id so the order is total.
+     */
+    public static final Comparator<Notification> ORDER = (n1, n2) -> {
+        int readCompare = Boolean.compare(n1.isReadStatus(), n2.isReadStatus());
+        if (readCompare != 0) return readCompare;
+        long t1 = n1.getTimestamp() == null ? Long.MAX_VALUE : n1.getTimestamp().getTime();
+        long t2 = n2.getTimestamp() == null ? Long.MAX_VALUE : n2.getTimestamp().getTime();
+        int timeCompare = Long.compare(t2, t1);
+        if (timeCompare != 0) return timeCompare;
+        return String.valueOf(n1.getUserNotificationId()).compareTo(String.valueOf(n2.getUserNotificationId()));
+    };
+
+    private final Map<String, Notification> byStubId = new HashMap<>();
+    private final List<Notification> sorted = new ArrayList<>();
+
+    /**
+     * Adds a notification, or replaces the one with the same stub id.
+     *
+     * @param notification The notification, keyed by {@link Notification#getUserNotificationId()}.
+     */
+    public synchronized void put(Notification notification) {
+        remove(notification.getUserNotificationId());
+        byStubId.put(notification.getUserNotificationId(), notification);
+        int index = Collections.binarySearch(sorted, notification, ORDER);
+        sorted.add(index < 0 ? -index - 1 : index, notification);
+    }
+
+    /**
+     * Removes a notification if present.
+     *
+     * @param userNotificationId Its stub id.
+     */
+    public synchronized void remove(String userNotificationId) {
+        Notification old = byStubId.remove(userNotificationId);
+        if (old == null) return;
+        int index = Collections.binarySearch(sorted, old, ORDER);
+        if (index >= 0) {
+            sorted.remove(index);
+        } else {
+            // Only reachable if someone mutated a notification after putting it in.
+            sorted.remove(old);
+        }
+    }
+
+    /**
+     * Forgets every notification, used when a listener is attached again and replays the inbox.
+     */
+    public synchronized void clear() {
+        byStubId.clear();
+        sorted.clear();
+    }
+
+    /**
+     * @param userNotificationId A stub id.
+     * @return The notification with that stub id, or null.
+     */
+    public synchronized Notification get(String userNotificationId) {
+        return byStubId.get(userNotificationId);
+    }
+
+    /**
+     * @return A sorted copy safe to hand to the UI.
+     */
+    public synchronized List<Notification> snapshot() {
+        return new ArrayList<>(sorted);
+    }
+
+    public synchronized int size() {
+        return sorted.size();
+    }
+}
@@ -1,27 +1,30 @@
 package com.rocket.radar.notifications;
 
 import android.util.Log;
-import androidx.lifecycle.LiveData;
-import androidx.lifecycle.MutableLiveData;
 
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.AggregateSource;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
-import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.rocket.radar.R;
+import com.rocket.radar.lottery.EventMembership;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 /**
  * Repository class for managing notifications.
@@ -33,12 +36,32 @@ import java.util.concurrent.atomic.AtomicInteger;
  * 'notifications' collection, and then references (stubs) to this content are distributed to each
  * relevant user's sub-collection ('users/{uid}/notifications'). This stub also contains user-specific
  * metadata like the read status.
+ *
+ * Stubs also carry a copy of the content fields, so the inbox renders straight from the stub
+ * snapshot. Legacy stubs that only hold 'notificationRef' are resolved once and then have the
+ * content written back into them, which migrates each inbox the first time it is opened.
  */
 public class NotificationRepository {
 
     private static final String TAG = "NotificationRepository";
+    private static final int FAN_OUT_RETRIES = 2;
+    // Each recipient takes two reads and two writes of a fan-out transaction.
+    private static final int RECIPIENTS_PER_TRANSACTION = 100;
+    private static final int FAN_OUT_PARALLELISM = 4;
+    // Most values Firestore accepts in one 'in' filter.
+    private static final int MAX_IDS_PER_QUERY = 30;
+    // Field on the user document holding how many of their notifications are unread.
+    public static final String UNREAD_COUNT = "unreadNotificationCount";
+    // Set on the user document once every legacy stub has been migrated.
+    private static final String STUBS_INLINED = "notificationStubsInlined";
+    // Content fields copied into every stub.
+    private static final String[] INLINE_FIELDS = {"eventTitle", "notificationType", "eventId", "image", "timestamp"};
     private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final NotificationFanOut fanOut = new NotificationFanOut(RECIPIENTS_PER_TRANSACTION, FAN_OUT_PARALLELISM, FAN_OUT_RETRIES);
     private CollectionReference userNotificationsRef; // This will point to users/{uid}/notifications
+    private ReadStatusBatcher readMarks;
+    // Feeds opened through this repository, told about read marks that couldn't be written.
+    private final List<NotificationFeed> feeds = new ArrayList<>();
 
     /**
      * Constructs a NotificationRepository and initializes the Firestore reference
@@ -65,93 +88,195 @@ public class NotificationRepository {
     }
 
     /**
-     * Fetches the notifications for the currently logged-in user in real-time.
-     * It listens to the user's notification sub-collection, resolves the notification
-     * content from the top-level 'notifications' collection, and returns them as LiveData.
+     * Opens a paged inbox for the currently logged-in user, see {@link NotificationFeed}. The
+     * caller owns closing the feed.
+     *
+     * <p>The feed queries stubs by {@code readStatus} and {@code timestamp}, which legacy stubs
+     * don't have inline. The first time a user opens the inbox their legacy stubs are migrated
+     * in the background, and they show up in the feed as they are rewritten.</p>
      *
-     * @return A LiveData object containing a list of the user's notifications.
+     * @param pageSize Number of read notifications fetched per page.
+     * @return The opened feed, or null if nobody is logged in.
      */
-    public LiveData<List<Notification>> getMyNotifications() {
-        MutableLiveData<List<Notification>> resolvedNotificationsLiveData = new MutableLiveData<>();
+    public NotificationFeed openInbox(int pageSize) {
         if (userNotificationsRef == null) {
-            Log.e(TAG, "User is not logged in. Cannot fetch notifications.");
-            resolvedNotificationsLiveData.postValue(new ArrayList<>());
-            return resolvedNotificationsLiveData;
+            Log.e(TAG, "User is not logged in. Cannot open the inbox.");
+            return null;
         }
+        migrateLegacyStubsOnce();
+        reconcileUnreadCount();
+        NotificationFeed feed = new NotificationFeed(userNotificationsRef, pageSize, this);
+        feed.open();
+        feeds.add(feed);
+        return feed;
+    }
 
-        userNotificationsRef.addSnapshotListener((userNotificationsSnapshot, error) -> {
-            if (error != null) {
-                Log.e(TAG, "Listen failed on user notifications.", error);
-                return;
-            }
-            if (userNotificationsSnapshot == null || userNotificationsSnapshot.isEmpty()) {
-                resolvedNotificationsLiveData.postValue(new ArrayList<>()); // Post empty list if no notifications
-                return;
-            }
-
-            List<Notification> resolvedList = new ArrayList<>();
-            // Use an atomic counter to know when all async fetches are complete
-            AtomicInteger pendingFetches = new AtomicInteger(userNotificationsSnapshot.size());
-
-            for (QueryDocumentSnapshot userDoc : userNotificationsSnapshot) {
-                // Get the reference from the user's notification stub
-                DocumentReference notificationContentRef = userDoc.getDocumentReference("notificationRef");
-                boolean readStatus = Boolean.TRUE.equals(userDoc.getBoolean("readStatus"));
-
-                if (notificationContentRef != null) {
-                    notificationContentRef.get().addOnSuccessListener(contentDoc -> {
-                        if (contentDoc.exists()) {
-                            Notification notification = contentDoc.toObject(Notification.class);
-                            if (notification != null) {
-                                // Manually set the UI-specific fields
-                                notification.setUserNotificationId(userDoc.getId());
-                                notification.setReadStatus(readStatus);
-                                resolvedList.add(notification);
-                            }
-                        }
-                        // Decrement counter and check if all fetches are done
-                        if (pendingFetches.decrementAndGet() == 0) {
-                            resolvedNotificationsLiveData.postValue(resolvedList);
-                        }
-                    }).addOnFailureListener(e -> {
-                        Log.e(TAG, "Failed to fetch notification content.", e);
-                        if (pendingFetches.decrementAndGet() == 0) {
-                            resolvedNotificationsLiveData.postValue(resolvedList);
-                        }
-                    });
-                } else {
-                    // If ref is null, just decrement and continue
-                    if (pendingFetches.decrementAndGet() == 0) {
-                        resolvedNotificationsLiveData.postValue(resolvedList);
-                    }
+    /**
+     * Inlines the content of every legacy stub the user has, then records on the user document
+     * that it was done so later opens skip the scan.
+     */
+    private void migrateLegacyStubsOnce() {
+        DocumentReference userRef = userNotificationsRef.getParent();
+        if (userRef == null) return;
+        userRef.get().addOnSuccessListener(userDoc -> {
+            if (Boolean.TRUE.equals(userDoc.getBoolean(STUBS_INLINED))) return;
+            userNotificationsRef.get().addOnSuccessListener(stubs -> {
+                List<Task<Void>> migrations = new ArrayList<>();
+                for (QueryDocumentSnapshot stub : stubs) {
+                    DocumentReference contentRef = stub.getDocumentReference("notificationRef");
+                    if (stub.contains("eventTitle") || contentRef == null) continue;
+                    migrations.add(contentRef.get().continueWithTask(fetch -> {
+                        DocumentSnapshot contentDoc = fetch.getResult();
+                        return contentDoc.exists() ? migrateStub(stub.getReference(), contentDoc) : Tasks.forResult(null);
+                    }));
                 }
-            }
+                Log.d(TAG, "Migrating " + migrations.size() + " legacy notification stubs.");
+                // Only mark the user done once every legacy stub was resolved and rewritten.
+                Tasks.whenAll(migrations)
+                        .addOnSuccessListener(aVoid -> userRef.update(STUBS_INLINED, true))
+                        .addOnFailureListener(e -> Log.w(TAG, "Legacy stub migration incomplete, will retry next time.", e));
+            });
         });
-        return resolvedNotificationsLiveData;
     }
 
     /**
-     * Updates the 'readStatus' of a specific notification for the current user to true.
+     * Builds the notification shown in the inbox.
+     *
+     * @param userDoc The user's stub, holds the read status.
+     * @param contentDoc Holds the content, the stub itself once it has been migrated.
+     */
+    static Notification fromStub(DocumentSnapshot userDoc, DocumentSnapshot contentDoc) {
+        Notification notification = new Notification();
+        notification.setEventTitle(contentDoc.getString("eventTitle"));
+        notification.setNotificationType(contentDoc.getString("notificationType"));
+        notification.setEventId(contentDoc.getString("eventId"));
+        Long image = contentDoc.getLong("image");
+        notification.setImage(image == null ? R.drawable.ic_radar : image.intValue());
+        notification.setTimestamp(contentDoc.getDate("timestamp"));
+        // Migrated stubs share their content's id, legacy ones point at it.
+        DocumentReference contentRef = userDoc.getDocumentReference("notificationRef");
+        notification.setNotificationId(contentRef != null ? contentRef.getId() : userDoc.getId());
+        // Manually set the UI-specific fields
+        notification.setUserNotificationId(userDoc.getId());
+        notification.setReadStatus(Boolean.TRUE.equals(userDoc.getBoolean("readStatus")));
+        return notification;
+    }
+
+    /**
+     * Copies a legacy stub's content into it, so later snapshots need no extra read.
+     *
+     * @return The stub's update.
+     */
+    private Task<Void> migrateStub(DocumentReference stubRef, DocumentSnapshot contentDoc) {
+        Map<String, Object> inline = new HashMap<>();
+        for (String field : INLINE_FIELDS) {
+            Object value = contentDoc.get(field);
+            if (value != null) inline.put(field, value);
+        }
+        if (!inline.containsKey("eventTitle")) inline.put("eventTitle", "");
+        return stubRef.update(inline)
+                .addOnFailureListener(e -> Log.w(TAG, "Could not migrate notification stub " + stubRef.getId(), e));
+    }
+
+    /**
+     * Marks a notification stub of the current user as read. Marks are coalesced for a short
+     * window and written in batches (see {@link ReadStatusBatcher}), and the unread count is
+     * recounted once per batch rather than adjusted per notification.
      *
      * @param userNotificationId The unique ID of the notification stub in the user's sub-collection.
      */
     public void markNotificationAsRead(String userNotificationId) {
         if (userNotificationsRef == null || userNotificationId == null) return;
-        userNotificationsRef.document(userNotificationId)
-                .update("readStatus", true)
-                .addOnSuccessListener(aVoid -> Log.d(TAG, "Notification marked as read: " + userNotificationId))
-                .addOnFailureListener(e -> Log.e(TAG, "Error marking notification as read", e));
+        readMarks().mark(userNotificationId);
+    }
+
+    /**
+     * Marks every unread notification of the current user as read, in chunked batches.
+     */
+    public void markAllAsRead() {
+        if (userNotificationsRef == null) return;
+        userNotificationsRef.whereEqualTo("readStatus", false).get()
+                .addOnSuccessListener(unread -> {
+                    List<String> ids = new ArrayList<>();
+                    for (QueryDocumentSnapshot stub : unread) {
+                        ids.add(stub.getId());
+                    }
+                    Log.d(TAG, "Marking " + ids.size() + " notifications as read.");
+                    ReadStatusBatcher batcher = readMarks();
+                    batcher.markAll(ids);
+                    batcher.flush();
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Error fetching unread notifications", e));
+    }
+
+    /**
+     * Writes any read marks still waiting for their window to close, e.g. when the inbox is
+     * left.
+     */
+    public void flushReadMarks() {
+        if (readMarks != null) readMarks.flush();
+    }
+
+    private ReadStatusBatcher readMarks() {
+        if (readMarks == null) {
+            readMarks = new ReadStatusBatcher(db, userNotificationsRef, new ReadStatusBatcher.Listener() {
+                @Override
+                public void onCommitted() {
+                    reconcileUnreadCount();
+                }
+
+                @Override
+                public void onDropped(Collection<String> userNotificationIds) {
+                    for (NotificationFeed feed : feeds) {
+                        feed.onReadMarksDropped(userNotificationIds);
+                    }
+                }
+            });
+        }
+        return readMarks;
+    }
+
+    /**
+     * Recounts the current user's unread notifications with a count aggregation and stores the
+     * result, correcting any drift in the maintained counter (e.g. a stub deleted without its
+     * count).
+     *
+     * <p>A count can't be read inside a transaction, so the counter is read before counting and
+     * the result is stored by a transaction only if the counter still holds that value. A
+     * notification fanned out meanwhile moves the counter, and the repair is skipped rather than
+     * overwriting it. The next recount picks it up.</p>
+     */
+    public void reconcileUnreadCount() {
+        if (userNotificationsRef == null) return;
+        DocumentReference userRef = userNotificationsRef.getParent();
+        userRef.get()
+                .continueWithTask(before -> {
+                    Long counted = before.getResult().getLong(UNREAD_COUNT);
+                    return userNotificationsRef.whereEqualTo("readStatus", false).count().get(AggregateSource.SERVER)
+                            .continueWithTask(count -> db.runTransaction(transaction -> {
+                                DocumentSnapshot userDoc = transaction.get(userRef);
+                                if (!userDoc.exists() || !Objects.equals(userDoc.getLong(UNREAD_COUNT), counted)) {
+                                    Log.d(TAG, "Unread count moved while recounting, leaving it.");
+                                    return null;
+                                }
+                                transaction.update(userRef, UNREAD_COUNT, count.getResult().getCount());
+                                return null;
+                            }));
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Error reconciling unread count", e));
     }
 
     /**
      * Sends a notification to a specific group of users associated with an event (e.g., attendees).
-     * This method first reads the event document to get the list of user IDs.
+     * Recipients resolve from the group's membership documents: each one carries a copy of the
+     * member's notification setting, so one query covers the group. Only members whose membership
+     * predates that copy have their profile read.
      *
      * @param title      The title of the notification.
      * @param body       The body text of the notification.
      * @param eventId    The ID of the event to get the user group from.
-     * @param groupCollection The field in the event document that contains the list of user IDs
-     *                   (e.g., "attendees", "onWaitlistEventIds").
+     * @param groupCollection The event sub-collection that holds the group
+     *                   (e.g., "invitedUsers", "waitlistedUsers").
      */
     public void sendNotificationToGroup(String title, String body, String eventId, String groupCollection) {
         if (eventId == null || eventId.isEmpty() || groupCollection == null || groupCollection.isEmpty()) {
@@ -159,7 +284,7 @@ public class NotificationRepository {
             return;
         }
 
-        // 1. Fetch the user IDs from the specified sub-collection of the event.
+        // 1. Fetch the members of the specified sub-collection of the event.
         db.collection("events").document(eventId).collection(groupCollection).get()
                 .addOnSuccessListener(userCollectionSnapshot -> {
                     if (userCollectionSnapshot.isEmpty()) {
@@ -167,48 +292,79 @@ public class NotificationRepository {
                         return;
                     }
 
-                    List<String> userIds = new ArrayList<>();
+                    // 2. Keep the members with notifications enabled. Memberships without the
+                    // copied setting are left to the member's profile.
+                    List<String> usersToNotify = new ArrayList<>();
+                    List<String> unknown = new ArrayList<>();
                     for (QueryDocumentSnapshot userDoc : userCollectionSnapshot) {
-                        userIds.add(userDoc.getId());
+                        Boolean enabled = userDoc.getBoolean(EventMembership.NOTIFICATIONS_ENABLED);
+                        if (enabled == null) {
+                            unknown.add(userDoc.getId());
+                        } else if (enabled) {
+                            usersToNotify.add(userDoc.getId());
+                        } else {
+                            Log.d(TAG, "Skipping user " + userDoc.getId() + " because they have notifications disabled.");
+                        }
                     }
-
-                    // 2. Create a list of tasks to fetch each user's profile document.
-                    List<Task<DocumentSnapshot>> userFetchTasks = new ArrayList<>();
-                    for (String userId : userIds) {
-                        userFetchTasks.add(db.collection("users").document(userId).get());
+                    if (unknown.isEmpty()) {
+                        sendNotificationToUsers(title, body, eventId, usersToNotify);
+                        return;
                     }
+                    withProfileEnabled(unknown, enabled -> {
+                        usersToNotify.addAll(enabled);
+                        sendNotificationToUsers(title, body, eventId, usersToNotify);
+                    });
 
-                    // 3. Wait for ALL user profile fetches to complete.
-                    Tasks.whenAllSuccess(userFetchTasks).addOnSuccessListener(userSnapshots -> {
-                        // This list contains DocumentSnapshot objects for each user.
-
-                        // 4. Filter the list to get only the users with notifications enabled.
-                        List<String> usersToNotify = new ArrayList<>();
-                        for (Object snapshot : userSnapshots) {
-                            DocumentSnapshot userDoc = (DocumentSnapshot) snapshot;
-
-                            // This is the check. It defaults to 'true' if the field doesn't exist.
-                            // It only skips if the field exists and is explicitly 'false'.
-                            if (!Boolean.FALSE.equals(userDoc.getBoolean("notificationsEnabled"))) {
-                                usersToNotify.add(userDoc.getId());
-                            } else {
-                                Log.d(TAG, "Skipping user " + userDoc.getId() + " because they have notifications disabled.");
-                            }
-                        }
-
-                        if (usersToNotify.isEmpty()) {
-                            Log.d(TAG, "No users in the group have notifications enabled. Aborting.");
-                            return;
-                        }
-
-                        Log.d(TAG, "Preparing to send notification to " + usersToNotify.size() + " enabled users.");
-
-                        // 5. Create and fan out the notification ONLY to the filtered list.
-                        createAndFanOutNotification(title, body, eventId, usersToNotify);
+                }).addOnFailureListener(e -> Log.e(TAG, "Failed to fetch users from collection '" + groupCollection + "' for event: " + eventId, e));
+    }
 
-                    }).addOnFailureListener(e -> Log.e(TAG, "Failed to fetch one or more user profiles.", e));
+    /**
+     * Sends a notification to specific users. The caller has already left out anyone who turned
+     * notifications off, e.g. from their membership documents.
+     *
+     * @param title   The title of the notification.
+     * @param body    The body text of the notification.
+     * @param eventId The ID of the event the notification is about.
+     * @param userIds The users to notify.
+     */
+    public void sendNotificationToUsers(String title, String body, String eventId, List<String> userIds) {
+        if (userIds == null || userIds.isEmpty()) {
+            Log.d(TAG, "No users to notify for event " + eventId + ". Aborting.");
+            return;
+        }
+        Log.d(TAG, "Preparing to send notification to " + userIds.size() + " enabled users.");
+        createAndFanOutNotification(title, body, eventId, userIds);
+    }
 
-                }).addOnFailureListener(e -> Log.e(TAG, "Failed to fetch users from collection '" + groupCollection + "' for event: " + eventId, e));
+    /**
+     * Reads the profiles of members whose membership doesn't carry the setting and hands on the
+     * ones with notifications enabled, a few batched queries at a time. Users without a profile
+     * are left out. A query that fails only drops its own users, the send goes ahead without
+     * them.
+     */
+    private void withProfileEnabled(List<String> userIds, Consumer<List<String>> then) {
+        List<Task<QuerySnapshot>> reads = new ArrayList<>();
+        for (int start = 0; start < userIds.size(); start += MAX_IDS_PER_QUERY) {
+            List<String> chunk = userIds.subList(start, Math.min(start + MAX_IDS_PER_QUERY, userIds.size()));
+            reads.add(db.collection("users").whereIn(FieldPath.documentId(), new ArrayList<>(chunk)).get());
+        }
+        Tasks.whenAllComplete(reads).addOnCompleteListener(done -> {
+            List<String> enabled = new ArrayList<>();
+            for (Task<QuerySnapshot> read : reads) {
+                if (!read.isSuccessful()) {
+                    Log.w(TAG, "Could not read some profiles, skipping those users.", read.getException());
+                    continue;
+                }
+                for (QueryDocumentSnapshot profile : read.getResult()) {
+                    if (Boolean.TRUE.equals(profile.getBoolean("notificationsEnabled"))) {
+                        enabled.add(profile.getId());
+                    } else {
+                        Log.d(TAG, "Skipping user " + profile.getId() + " because they have notifications disabled.");
+                    }
+                }
+            }
+            then.accept(enabled);
+        });
     }
 
     /**
@@ -224,25 +380,46 @@ public class NotificationRepository {
 
         db.collection("notifications").add(newNotificationContent)
                 .addOnSuccessListener(contentRef -> {
-                    // Create a batch write to fan out the notification to all ELIGIBLE users.
-                    WriteBatch batch = db.batch();
-                    for (String userId : usersToNotify) {
-                        DocumentReference userStubRef = db.collection("users").document(userId)
-                                .collection("notifications").document();
-
-                        Map<String, Object> userStub = new HashMap<>();
-                        userStub.put("readStatus", false);
-                        userStub.put("notificationRef", contentRef);
-                        batch.set(userStubRef, userStub);
-                    }
-
-                    // Commit the batch.
-                    batch.commit()
-                            .addOnSuccessListener(aVoid -> Log.d(TAG, "Successfully fanned out notification to " + usersToNotify.size() + " users."))
-                            .addOnFailureListener(e -> Log.e(TAG, "Failed to commit batch for notification fan-out.", e));
+                    Map<String, Object> userStub = new HashMap<>(newNotificationContent);
+                    userStub.put("readStatus", false);
+                    userStub.put("notificationRef", contentRef);
+                    fanOut.run(usersToNotify, chunk -> writeStubs(chunk, contentRef.getId(), userStub), stats ->
+                            Log.d(TAG, "Fan-out of " + contentRef.getId() + " for event " + eventId + ": " + stats));
 
                 }).addOnFailureListener(e -> Log.e(TAG, "Failed to create main notification content.", e));
     }
 
+    /**
+     * Writes one chunk of stubs in a transaction, together with the recipients' unread counts.
+     * Stubs are keyed by the content id and a stub that already exists is left alone, so a chunk
+     * retried after its commit landed doesn't count the notification twice. Recipients whose
+     * user document is gone are skipped, rather than failing the chunk or getting a bare
+     * document back.
+     *
+     * @return The number of stubs written.
+     */
+    private Task<Integer> writeStubs(List<String> userIds, String stubId, Map<String, Object> userStub) {
+        return db.runTransaction(transaction -> {
+            // Every read has to happen before the first write.
+            List<String> fresh = new ArrayList<>();
+            for (String userId : userIds) {
+                DocumentReference userRef = db.collection("users").document(userId);
+                if (!transaction.get(userRef).exists()) {
+                    Log.d(TAG, "Skipping user " + userId + ", their account is gone.");
+                    continue;
+                }
+                if (!transaction.get(userRef.collection("notifications").document(stubId)).exists()) {
+                    fresh.add(userId);
+                }
+            }
+            for (String userId : fresh) {
+                DocumentReference userRef = db.collection("users").document(userId);
+                transaction.set(userRef.collection("notifications").document(stubId), userStub);
+                transaction.update(userRef, UNREAD_COUNT, FieldValue.increment(1));
+            }
+            return fresh.size();
+        });
+    }
+
 
 }
@@ -0,0 +1,182 @@
+package com.rocket.radar.notifications;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.rocket.radar.firestore.ChunkedBatchWriter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces read marks on a user's notification stubs and writes them together.
+ *
+ * <p>Marks collected within {@link #WINDOW_MILLIS} of the first one are committed as chunked
+ * batches, so tapping through a busy inbox, or clearing it at once, costs a few commits and a
+ * few listener callbacks instead of one per notification. The usual reason a batch fails is a
+ * stub deleted in the meantime, which fails the whole batch, so after a failure the stubs still
+ * there are looked up and written once more without the missing ones. Marks that still can't be
+ * written are handed back through {@link Listener#onDropped(Collection)}. Used from the main
+ * thread.</p>
+ */
+class ReadStatusBatcher {
+    private static final String TAG = "ReadStatusBatcher";
+
+    /**
+     * How long marks are collected before they are written.
+     */
+    static final long WINDOW_MILLIS = 500;
+
+    private static final Map<String, Object> READ = Collections.singletonMap("readStatus", true);
+    // Most values Firestore accepts in one 'in' filter.
+    private static final int MAX_IDS_PER_QUERY = 30;
+
+    /**
+     * Hears how the writes went. Called on the main thread.
+     */
+    interface Listener {
+        /**
+         * Called after every flush that wrote at least one mark.
+         */
+        void onCommitted();
+
+        /**
+         * Called with the stubs whose marks were given up on, because the stub is gone or the
+         * write kept failing.
+         */
+        void onDropped(Collection<String> userNotificationIds);
+    }
+
+    private final FirebaseFirestore db;
+    private final CollectionReference stubs;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flushTask = this::flush;
+    private final Set<String> pending = new HashSet<>();
+
+    /**
+     * @param db The database.
+     * @param stubs The user's notification stubs.
+     * @param listener Hears how the writes went.
+     */
+    ReadStatusBatcher(FirebaseFirestore db, CollectionReference stubs, Listener listener) {
+        this.db = db;
+        this.stubs = stubs;
+        this.listener = listener;
+    }
+
+    /**
+     * Queues a stub to be marked read, starting the window if none is open.
+     */
+    void mark(String userNotificationId) {
+        markAll(Collections.singletonList(userNotificationId));
+    }
+
+    /**
+     * Queues several stubs to be marked read, starting the window if none is open.
+     */
+    void markAll(Collection<String> userNotificationIds) {
+        boolean wasEmpty = pending.isEmpty();
+        pending.addAll(userNotificationIds);
+        if (wasEmpty && !pending.isEmpty()) {
+            handler.postDelayed(flushTask, WINDOW_MILLIS);
+        }
+    }
+
+    /**
+     * Writes every queued mark now instead of waiting for the window to close.
+     */
+    void flush() {
+        handler.removeCallbacks(flushTask);
+        if (pending.isEmpty()) return;
+        List<String> ids = new ArrayList<>(pending);
+        pending.clear();
+        write(ids, true);
+    }
+
+    /**
+     * @param retryExisting Whether a failure is followed by another attempt with only the stubs
+     *                      that still exist.
+     */
+    private void write(List<String> ids, boolean retryExisting) {
+        ChunkedBatchWriter writer = new ChunkedBatchWriter(db);
+        for (String id : ids) {
+            writer.unit().update(stubs.document(id), READ);
+        }
+        writer.commit(new ChunkedBatchWriter.Listener() {
+            @Override
+            public void onProgress(int committedUnits, int totalUnits) {}
+
+            @Override
+            public void onComplete(int totalUnits) {
+                Log.d(TAG, "Marked " + totalUnits + " notifications as read.");
+                listener.onCommitted();
+            }
+
+            @Override
+            public void onError(Exception e, int committedUnits) {
+                Log.e(TAG, "Marked " + committedUnits + " of " + ids.size() + " notifications as read before failing.", e);
+                if (committedUnits > 0) listener.onCommitted();
+                // Batches land in order, so everything from the failed one on is unwritten.
+                List<String> unwritten = new ArrayList<>(ids.subList(committedUnits, ids.size()));
+                if (retryExisting) {
+                    retryExisting(unwritten);
+                } else {
+                    listener.onDropped(unwritten);
+                }
+            }
+        });
+    }
+
+    /**
+     * Looks up which of the stubs still exist, drops the marks of the rest and writes the others
+     * once more.
+     */
+    private void retryExisting(List<String> ids) {
+        List<Task<QuerySnapshot>> lookups = new ArrayList<>();
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+            List<String> chunk = ids.subList(start, Math.min(start + MAX_IDS_PER_QUERY, ids.size()));
+            lookups.add(stubs.whereIn(FieldPath.documentId(), new ArrayList<>(chunk)).get());
+        }
+        Tasks.whenAllSuccess(lookups)
+                .addOnSuccessListener(results -> {
+                    Set<String> existing = new HashSet<>();
+                    for (Object result : results) {
+                        for (QueryDocumentSnapshot stub : (QuerySnapshot) result) {
+                            existing.add(stub.getId());
+                        }
+                    }
+                    List<String> missing = new ArrayList<>();
+                    List<String> retry = new ArrayList<>();
+                    for (String id : ids) {
+                        if (existing.contains(id)) {
+                            retry.add(id);
+                        } else {
+                            missing.add(id);
+                        }
+                    }
+                    if (!missing.isEmpty()) {
+                        Log.d(TAG, "Dropping read marks of " + missing.size() + " deleted notifications.");
+                        listener.onDropped(missing);
+                    }
+                    if (!retry.isEmpty()) write(retry, false);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Could not look up notifications to retry their read marks.", e);
+                    listener.onDropped(ids);
+                });
+    }
+}
@@ -153,10 +153,10 @@ public class AccountSettingsFragment extends Fragment {
                 profile.setName(username);
                 profile.setEmail(email);
                 profile.setPhoneNumber(phone);
-                profile.setNotificationsEnabled(notificationsEnabled.isChecked());
                 profile.setGeolocationEnabled(geolocationEnabled.isChecked());
                 profile.setRole(ProfileModel.UserRole.ADMIN); // debug line to make you admin
-                profileViewModel.updateProfile(profile);
+                // Saves the profile too.
+                profileViewModel.setNotificationsEnabled(profile, notificationsEnabled.isChecked());
             }
             Toast saveToast = Toast.makeText(this.getContext(), "Account settings saved!", Toast.LENGTH_SHORT);
             saveToast.show();
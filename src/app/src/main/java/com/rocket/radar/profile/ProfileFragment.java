@@ -47,7 +47,6 @@ public class ProfileFragment extends Fragment implements EventAdapter.OnEventLis
     private EventAdapter adapter;
     private MaterialButtonToggleGroup toggleGroup;
     private List<Event> allEvents;
-    private List<Event> displayedEvents;
     private EventRepository eventRepository;
 
 
@@ -103,8 +102,7 @@ public class ProfileFragment extends Fragment implements EventAdapter.OnEventLis
         eventRepository = EventRepository.getInstance();
         profileViewModel = new ViewModelProvider(requireActivity()).get(ProfileViewModel.class);
         allEvents = new ArrayList<>();
-        displayedEvents = new ArrayList<>();
-        adapter = new EventAdapter(getContext(), displayedEvents, this);
+        adapter = new EventAdapter(getContext(), this);
         myEventRecyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
         myEventRecyclerView.setAdapter(adapter);
 
@@ -179,9 +177,7 @@ public class ProfileFragment extends Fragment implements EventAdapter.OnEventLis
         }
 
         Log.d("EventListFragment", "Filtered list size: " + filteredList.size());
-        displayedEvents.clear();
-        displayedEvents.addAll(filteredList);
-        adapter.notifyDataSetChanged();
+        adapter.setEvents(filteredList);
     }
 
     /**
@@ -191,7 +187,7 @@ public class ProfileFragment extends Fragment implements EventAdapter.OnEventLis
      */
     @Override
     public void onEventClick(int position) {
-        Event clickedEvent = displayedEvents.get(position);
+        Event clickedEvent = adapter.getEvent(position);
 
         boolean isOrganizer = (toggleGroup.getCheckedButtonId() == R.id.my_events_filter_button);
 
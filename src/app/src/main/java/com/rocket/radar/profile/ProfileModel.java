@@ -24,6 +24,7 @@ public class ProfileModel implements Serializable {
     private String email;
     private transient Timestamp lastLogin;
     private Boolean notificationsEnabled, geolocationEnabled;
+    private Long unreadNotificationCount;
 
     private ArrayList<String> onWaitlistEventIds;
     private ArrayList<String> onMyEventIds;
@@ -284,6 +285,22 @@ public class ProfileModel implements Serializable {
         this.notificationsEnabled = notificationsEnabled;
     }
 
+    /**
+     * Returns the number of unread notifications, maintained by whoever sends or reads them.
+     * @return The count, or null if it was never set for this user.
+     */
+    public Long getUnreadNotificationCount() {
+        return unreadNotificationCount;
+    }
+
+    /**
+     * Sets the number of unread notifications.
+     * @param unreadNotificationCount the count.
+     */
+    public void setUnreadNotificationCount(Long unreadNotificationCount) {
+        this.unreadNotificationCount = unreadNotificationCount;
+    }
+
     /**
      * Returns an ArrayList that is the waitlist event ids (the user joined the waitlist for these events)
      * @return an ArrayList of the waitlist event ids
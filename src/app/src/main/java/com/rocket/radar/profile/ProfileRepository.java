@@ -2,14 +2,29 @@ package com.rocket.radar.profile;
 
 import android.util.Log;
 
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.GeoPoint;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.firestore.SetOptions;
+import com.rocket.radar.firestore.ChunkedBatchWriter;
+import com.rocket.radar.firestore.RecursiveDelete;
+import com.rocket.radar.lottery.EventMembership;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 //cite: general design was based on https://developer.android.com/topic/architecture, to separate the data layer in the architecture from the ui (view model) accessed: October 28, 2025
 
@@ -20,6 +35,11 @@ import java.util.Map;
 public class ProfileRepository {
 
     private static final String TAG = "ProfileRepository";
+    // Most values Firestore accepts in one 'in' filter.
+    private static final int MAX_IDS_PER_QUERY = 30;
+    // Event subcollections holding a document per member, keyed by uid.
+    private static final String[] MEMBERSHIP_COLLECTIONS =
+            {"waitlistedUsers", "invitedUsers", "attendingUsers", "cancelledUsers", "selectedUsers"};
     private final FirebaseFirestore db;
 
     /**
@@ -47,6 +67,23 @@ public class ProfileRepository {
         void onError(Exception e);
     }
 
+    /**
+     * Callback interface for reading many profiles at once.
+     */
+    public interface BatchReadCallback {
+        /**
+         * Called once every requested profile has been looked up.
+         * @param profiles the loaded profiles by uid, users without a profile are left out.
+         */
+        void onProfilesLoaded(Map<String, ProfileModel> profiles);
+
+        /**
+         * Called when any of the underlying reads fails.
+         * @param e the exception that occurred.
+         */
+        void onError(Exception e);
+    }
+
     /**
      * Callback interface for writing profile data to Firestore.
      * Used to handle asynchronous write operations.
@@ -118,7 +155,92 @@ public class ProfileRepository {
     }
 
     /**
-     * Deletes a users account by calling delete on the user document in Firestore.
+     * Copies the profile's notification setting onto its membership documents in every event it
+     * belongs to. Group notifications read the setting from there instead of from each profile.
+     * The profile's event lists can name memberships that are gone, so the memberships are read
+     * first and only the ones that exist are updated, in as few batches as fit.
+     * @param profile the ProfileModel whose setting changed.
+     */
+    public void syncNotificationsEnabled(ProfileModel profile) {
+        Boolean enabled = profile.isNotificationsEnabled();
+        String uid = profile.getUid();
+        Map<String, List<String>> groups = new HashMap<>();
+        groups.put("waitlistedUsers", profile.getOnWaitlistEventIds());
+        groups.put("invitedUsers", profile.getOnInvitedEventIds());
+        groups.put("attendingUsers", profile.getAttendingEventIds());
+        groups.put("cancelledUsers", profile.getCancelledEventIds());
+
+        List<Task<DocumentSnapshot>> reads = new ArrayList<>();
+        for (Map.Entry<String, List<String>> group : groups.entrySet()) {
+            if (group.getValue() == null) continue;
+            for (String eventId : group.getValue()) {
+                reads.add(db.collection("events").document(eventId)
+                        .collection(group.getKey()).document(uid).get());
+            }
+        }
+        if (reads.isEmpty()) return;
+
+        Tasks.whenAllComplete(reads).addOnSuccessListener(done -> {
+            Map<String, Object> setting = new HashMap<>();
+            setting.put(EventMembership.NOTIFICATIONS_ENABLED, enabled);
+            ChunkedBatchWriter writer = new ChunkedBatchWriter(db);
+            for (Task<DocumentSnapshot> read : reads) {
+                if (!read.isSuccessful()) {
+                    Log.w(TAG, "Could not read a membership of " + uid, read.getException());
+                } else if (read.getResult().exists()) {
+                    writer.unit().update(read.getResult().getReference(), setting);
+                }
+            }
+            if (writer.size() == 0) return;
+            writer.commit(new ChunkedBatchWriter.Listener() {
+                @Override
+                public void onProgress(int committedUnits, int totalUnits) {}
+
+                @Override
+                public void onComplete(int totalUnits) {
+                    Log.d(TAG, "Updated the notification setting on " + totalUnits + " memberships of " + uid);
+                }
+
+                @Override
+                public void onError(Exception e, int committedUnits) {
+                    Log.e(TAG, "Could not update the memberships of " + uid + " after " + committedUnits, e);
+                }
+            });
+        });
+    }
+
+    /**
+     * Reads many user profiles with a few queries instead of one read each. The ids are split
+     * into chunks of {@link #MAX_IDS_PER_QUERY}, and every chunk's {@code whereIn} query on the
+     * document id is sent at once.
+     *
+     * @param uids The user ids to read. Duplicates are read once.
+     * @param callback A BatchReadCallback receiving all profiles together.
+     */
+    public void readProfiles(List<String> uids, BatchReadCallback callback) {
+        List<String> unique = new ArrayList<>(new LinkedHashSet<>(uids));
+        List<Task<QuerySnapshot>> chunks = new ArrayList<>();
+        for (int start = 0; start < unique.size(); start += MAX_IDS_PER_QUERY) {
+            List<String> chunk = unique.subList(start, Math.min(start + MAX_IDS_PER_QUERY, unique.size()));
+            chunks.add(db.collection("users").whereIn(FieldPath.documentId(), new ArrayList<>(chunk)).get());
+        }
+        Tasks.whenAllSuccess(chunks)
+                .addOnSuccessListener(results -> {
+                    Map<String, ProfileModel> profiles = new HashMap<>(unique.size() * 2);
+                    for (Object result : results) {
+                        for (QueryDocumentSnapshot doc : (QuerySnapshot) result) {
+                            ProfileModel profile = doc.toObject(ProfileModel.class);
+                            profile.setUid(doc.getId());
+                            profiles.put(doc.getId(), profile);
+                        }
+                    }
+                    callback.onProfilesLoaded(profiles);
+                })
+                .addOnFailureListener(callback::onError);
+    }
+
+    /**
+     * Deletes a users account's Firestore data, see {@link #deleteUserData(String, WriteCallback)}.
      * @param user the FirebaseUser to delete.
      * @param profile the ProfileModel of the user to delete.
      * @param callback A WriteCallback to handle success and failure of the async operation.
@@ -128,32 +250,58 @@ public class ProfileRepository {
             callback.onError(new Exception("No authenticated user."));
             return;
         }
+        deleteUserData(profile.getUid(), callback);
+    }
 
-        String uid = profile.getUid();
-
-        db.collection("users")
-                .document(uid)
-                .collection("notifications")
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    for (var document : querySnapshot.getDocuments()) { // delete notification docs
-                        document.getReference().delete();
+    /**
+     * Deletes a user's Firestore data: their notification stubs, their membership documents
+     * under every event they joined, and finally the user document itself. The callback only
+     * reports success once all of it is gone. On failure the user document is kept, so the
+     * deletion can be retried.
+     *
+     * @param uid The user id.
+     * @param callback A WriteCallback to handle success and failure of the async operation.
+     */
+    public void deleteUserData(String uid, WriteCallback callback) {
+        DocumentReference userRef = db.collection("users").document(uid);
+        // Read the user document fresh, the caller's profile may predate their last sign-up.
+        userRef.get()
+                .addOnSuccessListener(snapshot -> {
+                    Set<String> eventIds = new HashSet<>();
+                    ProfileModel stored = snapshot.toObject(ProfileModel.class);
+                    if (stored != null) {
+                        eventIds.addAll(stored.getOnWaitlistEventIds());
+                        eventIds.addAll(stored.getOnInvitedEventIds());
+                        eventIds.addAll(stored.getAttendingEventIds());
+                        eventIds.addAll(stored.getCancelledEventIds());
                     }
-                    db.collection("users") // delete user doc
-                            .document(uid)
-                            .delete()
-                            .addOnSuccessListener(aVoid -> {
-                                Log.d(TAG, "User and notifications deleted successfully");
-                                callback.onSuccess();
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e(TAG, "Failed to delete Firestore user document", e);
-                                callback.onError(e);
-                            });
+                    // Membership documents are keyed by uid, so they are deleted without a read.
+                    List<DocumentReference> memberships = new ArrayList<>();
+                    for (String eventId : eventIds) {
+                        for (String group : MEMBERSHIP_COLLECTIONS) {
+                            memberships.add(db.collection("events").document(eventId).collection(group).document(uid));
+                        }
+                    }
+                    new RecursiveDelete(db)
+                            .collection(userRef.collection("notifications"))
+                            .documents(memberships)
+                            .last(userRef)
+                            .run(new RecursiveDelete.Listener() {
+                                @Override
+                                public void onComplete(int deleted) {
+                                    Log.d(TAG, "User " + uid + " deleted with " + deleted + " documents");
+                                    callback.onSuccess();
+                                }
 
+                                @Override
+                                public void onError(Exception e) {
+                                    Log.e(TAG, "Failed to delete user " + uid, e);
+                                    callback.onError(e);
+                                }
+                            });
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "Failed to retrieve notifications for deletion", e);
+                    Log.e(TAG, "Failed to read user " + uid + " for deletion", e);
                     callback.onError(e);
                 });
     }
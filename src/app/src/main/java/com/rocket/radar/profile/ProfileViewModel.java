@@ -3,13 +3,14 @@ package com.rocket.radar.profile;
 import android.util.Log;
 
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.ListenerRegistration;
+import com.rocket.radar.firestore.ListenerRegistry;
 
 //cite: general design was based on https://developer.android.com/topic/architecture, to separate the ui layer in the architecture from the data (repository), accessed: October 28, 2025
 
@@ -29,9 +30,11 @@ public class ProfileViewModel extends ViewModel {
     private final FirebaseAuth auth = FirebaseAuth.getInstance();
 
     private final ProfileRepository profileRepository = new ProfileRepository();
-    private ListenerRegistration profileListenerRegistration; // To manage listener lifecycle
+    // The shared profile listener we are currently following. Swapped out when the user changes.
+    // Holding it keeps its key in the registry while the mediator below is inactive.
+    private LiveData<ProfileModel> profileSource;
 
-    private final MutableLiveData<ProfileModel> profileLiveData = new MutableLiveData<>();
+    private final MediatorLiveData<ProfileModel> profileLiveData = new MediatorLiveData<>();
     public LiveData<ProfileModel> getProfileLiveData() {
         return this.profileLiveData;
     }
@@ -54,9 +57,10 @@ public class ProfileViewModel extends ViewModel {
     }
 
     /**
-     * Sets up the Firestore snapshot listener for the given user ID.
+     * Follows the shared Firestore snapshot listener for the given user ID.
      * This method ensures the ViewModel listens to real-time updates for the specified user's profile.
-     * If a listener is already active, it is first removed to prevent multiple listeners.
+     * The listener itself lives in the {@link ListenerRegistry}, so it is only attached while
+     * something is observing the profile and is shared with anyone else watching the same user.
      *
      * @param uid The unique ID of the user to listen for.
      */
@@ -66,29 +70,24 @@ public class ProfileViewModel extends ViewModel {
             return;
         }
 
-        // Remove any existing listener to avoid leaks or duplicate listeners
-        if (profileListenerRegistration != null) {
-            profileListenerRegistration.remove();
+        // Stop following the previous user to avoid mixing profiles
+        if (profileSource != null) {
+            profileLiveData.removeSource(profileSource);
         }
 
-        profileListenerRegistration = db.collection("users").document(uid).addSnapshotListener((snapshot, e) -> {
-            if (e != null) {
-                Log.e(TAG, "Listen failed for UID: " + uid, e);
-                profileLiveData.setValue(null); // Clear data on error
-                return;
-            }
-
-            if (snapshot != null && snapshot.exists()) {
+        profileSource = ListenerRegistry.getInstance().document("users/" + uid, db.collection("users").document(uid), (snapshot, emitter) -> {
+            if (snapshot.exists()) {
                 ProfileModel profile = snapshot.toObject(ProfileModel.class);
                 if (profile != null) {
                     profile.setUid(snapshot.getId()); // Ensure UID is set
-                    profileLiveData.setValue(profile);
+                    emitter.emit(profile);
                 }
             } else {
                 Log.d(TAG, "Profile data is null for UID: " + uid);
-                profileLiveData.setValue(null); // User document doesn't exist yet
+                emitter.emit(null); // User document doesn't exist yet
             }
         });
+        profileLiveData.addSource(profileSource, profileLiveData::setValue);
     }
 
     /**
@@ -157,7 +156,24 @@ public class ProfileViewModel extends ViewModel {
         });
     }
 
-    // This method is no longer the primary way to get profile data,
+    /**
+     * Changes the user's notification setting and saves the profile. Event groups keep their own
+     * copy of the setting, so it is copied onto them too when it changed, see
+     * {@link ProfileRepository#syncNotificationsEnabled(ProfileModel)}. Every change to the
+     * setting should go through here.
+     * @param profile the ProfileModel to update
+     * @param enabled whether notifications should be enabled
+     */
+    public void setNotificationsEnabled(ProfileModel profile, boolean enabled) {
+        boolean changed = !Boolean.valueOf(enabled).equals(profile.isNotificationsEnabled());
+        profile.setNotificationsEnabled(enabled);
+        updateProfile(profile);
+        if (changed) {
+            profileRepository.syncNotificationsEnabled(profile);
+        }
+    }
+
+        // This method is no longer the primary way to get profile data,
     // as the ViewModel now automatically listens for updates.
     // It can be kept for one-off fetches if needed elsewhere.
 
@@ -205,13 +221,14 @@ public class ProfileViewModel extends ViewModel {
     }
 
     /**
-     * Clean up the listener when the ViewModel is cleared.
+     * Stop following the shared listener when the ViewModel is cleared. The registry detaches it
+     * once nobody else is observing.
      */
     @Override
     protected void onCleared() {
         super.onCleared();
-        if (profileListenerRegistration != null) {
-            profileListenerRegistration.remove();
+        if (profileSource != null) {
+            profileLiveData.removeSource(profileSource);
             Log.d(TAG, "Profile listener removed.");
         }
     }
@@ -17,7 +17,9 @@ import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.rocket.radar.eventmanagement.Time;
 import com.rocket.radar.events.Event;
+import com.rocket.radar.events.EventIndex;
 import com.rocket.radar.events.EventRepository;
+import com.rocket.radar.events.EventSearchIndex;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -25,7 +27,9 @@ import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.Optional;
 
@@ -154,4 +158,101 @@ public class EventsTests {
                 .build();
         EventTestUtils.assertEventEquals(sample, copy);
     }
+
+    private static Event indexedEvent(String id, long start, String... categories) {
+        Event event = new Event(id, new Date(start), "", "", 0);
+        event.setEventId(id);
+        event.setCategories(Arrays.asList(categories));
+        return event;
+    }
+
+    private static String ids(List<Event> events) {
+        StringBuilder ids = new StringBuilder();
+        for (Event event : events) {
+            ids.append(event.getEventId());
+        }
+        return ids.toString();
+    }
+
+    /**
+     * Verifies that discover intersects categories, the date and the waitlist, soonest first.
+     */
+    @Test
+    public void testEventIndexDiscover() {
+        EventIndex index = new EventIndex();
+        index.setFeedEvents(Arrays.asList(
+                indexedEvent("c", 300, "Food", "Music"),
+                indexedEvent("a", 100, "Food"),
+                indexedEvent("b", 200, "Food", "Music"),
+                indexedEvent("d", 400, "Sport")));
+        index.setWaitlist(Arrays.asList("b"));
+
+        assertEquals("acd", ids(index.discover(new ArrayList<>(), null)));
+        assertEquals("ac", ids(index.discover(Arrays.asList("Food"), null)));
+        assertEquals("c", ids(index.discover(Arrays.asList("Food", "Music"), null)));
+        assertEquals("cd", ids(index.discover(new ArrayList<>(), new Date(200))));
+        assertEquals("", ids(index.discover(Arrays.asList("Art"), null)));
+    }
+
+    /**
+     * Verifies that snapshots update the index in place: changed events move, dropped events
+     * leave, and waitlisted events fetched on their own stay until their source drops them.
+     */
+    @Test
+    public void testEventIndexIncrementalUpdates() {
+        EventIndex index = new EventIndex();
+        index.setFeedEvents(Arrays.asList(indexedEvent("a", 100, "Food"), indexedEvent("b", 200, "Food")));
+        index.setWaitlistEvents(Arrays.asList(indexedEvent("w", 50, "Art")));
+        index.setWaitlist(Arrays.asList("w", "b"));
+
+        assertEquals("wb", ids(index.waitlisted()));
+
+        // "a" moves after "c" and changes category, "b" is dropped from the feed.
+        index.setFeedEvents(Arrays.asList(indexedEvent("a", 500, "Music"), indexedEvent("c", 300, "Food")));
+
+        assertEquals("ca", ids(index.discover(new ArrayList<>(), null)));
+        assertEquals("a", ids(index.discover(Arrays.asList("Music"), null)));
+        assertEquals("w", ids(index.waitlisted()));
+        assertEquals(3, index.size());
+
+        index.setWaitlistEvents(new ArrayList<>());
+        assertEquals("", ids(index.waitlisted()));
+        assertEquals(2, index.size());
+    }
+
+    /**
+     * Verifies that search matches word prefixes, ranks title matches first and follows updates.
+     */
+    @Test
+    public void testEventSearchIndex() {
+        EventSearchIndex index = new EventSearchIndex();
+        Event jazz = new Event("Jazz Night", new Date(300), "Live music", "Bring friends", 0);
+        jazz.setEventId("a");
+        Event pottery = new Event("Pottery Class", new Date(100), "Learn the wheel", "Music in the background", 0);
+        pottery.setEventId("b");
+        Event musical = new Event("Musical Theatre", new Date(200), "Songs", "", 0);
+        musical.setEventId("c");
+        index.putAll(Arrays.asList(jazz, pottery, musical));
+
+        assertEquals("cab", ids(index.search("mus", 10)));
+        assertEquals("a", ids(index.search("jazz MUSIC", 10)));
+        assertEquals("", ids(index.search("usic", 10)));
+        assertEquals("", ids(index.search("  ", 10)));
+        assertEquals("c", ids(index.search("m", 1)));
+
+        // Every gram of "music" is in this title, but spread over three words.
+        Event fusion = new Event("Muse Fusion Basic", new Date(400), "", "", 0);
+        fusion.setEventId("d");
+        index.put(fusion);
+        assertEquals("cab", ids(index.search("music", 10)));
+        assertEquals("d", ids(index.search("fus", 10)));
+        index.remove("d");
+
+        Event quietJazz = new Event("Jazz Night", new Date(300), "Live jazz", "Bring friends", 0);
+        quietJazz.setEventId("a");
+        index.put(quietJazz);
+        index.remove("c");
+        assertEquals("b", ids(index.search("music", 10)));
+        assertEquals(2, index.size());
+    }
 }
@@ -1,4 +1,115 @@
 package com.rocket.radar;
 
+import com.rocket.radar.notifications.Notification;
+import com.rocket.radar.notifications.NotificationInbox;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tests for the NotificationInbox model that snapshot changes are applied to.
+ * Verifies that the inbox stays sorted (unread first, then newest first) as
+ * notifications are added, changed and removed one at a time.
+ */
 public class NotificationsTests {
+
+    private NotificationInbox inbox;
+
+    private static Notification notification(String stubId, long time, boolean read) {
+        Notification notification = new Notification();
+        notification.setUserNotificationId(stubId);
+        notification.setEventTitle("Event " + stubId);
+        notification.setTimestamp(new Date(time));
+        notification.setReadStatus(read);
+        return notification;
+    }
+
+    private static String order(List<Notification> notifications) {
+        StringBuilder ids = new StringBuilder();
+        for (Notification notification : notifications) {
+            ids.append(notification.getUserNotificationId());
+        }
+        return ids.toString();
+    }
+
+    @Before
+    public void setUp() {
+        inbox = new NotificationInbox();
+    }
+
+    /**
+     * Verifies that unread notifications come first and each group is newest first.
+     */
+    @Test
+    public void testInboxIsSortedUnreadFirstThenNewest() {
+        inbox.put(notification("a", 100, true));
+        inbox.put(notification("b", 300, false));
+        inbox.put(notification("c", 200, false));
+        inbox.put(notification("d", 400, true));
+
+        Assert.assertEquals("bcda", order(inbox.snapshot()));
+    }
+
+    /**
+     * Verifies that a modified notification replaces the old one and moves to its new place.
+     */
+    @Test
+    public void testMarkingReadMovesOnlyThatNotification() {
+        inbox.put(notification("a", 100, false));
+        inbox.put(notification("b", 200, false));
+        inbox.put(notification("c", 50, true));
+
+        inbox.put(notification("b", 200, true));
+
+        Assert.assertEquals(3, inbox.size());
+        Assert.assertEquals("abc", order(inbox.snapshot()));
+        Assert.assertTrue(inbox.get("b").isReadStatus());
+    }
+
+    /**
+     * Verifies that removing a notification leaves the rest in order, and removing an unknown one is ignored.
+     */
+    @Test
+    public void testRemove() {
+        inbox.put(notification("a", 100, false));
+        inbox.put(notification("b", 200, false));
+
+        inbox.remove("b");
+        inbox.remove("missing");
+
+        Assert.assertEquals("a", order(inbox.snapshot()));
+        Assert.assertNull(inbox.get("b"));
+    }
+
+    /**
+     * Verifies that a notification still waiting for its server timestamp shows as the newest.
+     */
+    @Test
+    public void testPendingTimestampIsNewest() {
+        inbox.put(notification("a", 100, false));
+        Notification pending = notification("b", 0, false);
+        pending.setTimestamp(null);
+        inbox.put(pending);
+
+        Assert.assertEquals("ba", order(inbox.snapshot()));
+    }
+
+    /**
+     * Verifies that snapshots are copies the UI can hold on to.
+     */
+    @Test
+    public void testSnapshotIsACopy() {
+        inbox.put(notification("a", 100, false));
+        List<Notification> shown = inbox.snapshot();
+
+        inbox.put(notification("b", 200, false));
+        inbox.clear();
+
+        Assert.assertEquals(1, shown.size());
+        Assert.assertEquals(0, inbox.size());
+    }
 }
@@ -0,0 +1,30 @@
+// Plain Java lottery domain code shared by the app and the server side lottery runner. Keep this
+// free of Android and Firebase dependencies so both can use it.
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// Timing harnesses, kept out of the unit tests so a slow CI machine can't fail the build.
+val benchmark by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output
+    runtimeClasspath += sourceSets.main.get().output
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
+
+// Draws from a 100k entrant waitlist and prints the timings:
+//   ./gradlew :lottery-core:benchmark
+tasks.register<JavaExec>("benchmark") {
+    description = "Times lottery draws on large waitlists."
+    group = "verification"
+    classpath = benchmark.runtimeClasspath
+    mainClass.set("com.rocket.radar.lottery.SamplerBenchmark")
+    jvmArgs("-Xms512m", "-Xmx512m")
+}
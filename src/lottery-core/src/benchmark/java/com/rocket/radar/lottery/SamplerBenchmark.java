@@ -0,0 +1,102 @@
+package com.rocket.radar.lottery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * Times lottery draws on a 100k entrant waitlist and prints the results, see the
+ * {@code benchmark} task of this module.
+ *
+ * <p>Each case is warmed up before it is measured so the numbers aren't dominated by class
+ * loading and JIT. The draw the app used before {@link FisherYatesSampler}, removing a random
+ * index from a copy of the waitlist, is timed alongside it for comparison. Nothing is asserted,
+ * the timings depend on the machine.</p>
+ */
+public final class SamplerBenchmark {
+    private static final int WAITLIST = 100_000;
+    private static final int[] WINNERS = {100, 1_000, 5_000, 50_000, WAITLIST};
+    private static final int WARMUP = 20;
+    private static final int RUNS = 50;
+
+    /**
+     * A draw being timed.
+     */
+    private interface Draw {
+        List<String> draw(List<String> waitlist, int k, long seed);
+    }
+
+    // Kept alive so the JIT can't drop the draws.
+    private static long sink;
+
+    private SamplerBenchmark() {}
+
+    public static void main(String[] args) {
+        List<String> waitlist = new ArrayList<>(WAITLIST);
+        for (int i = 0; i < WAITLIST; i++) {
+            waitlist.add("user" + i);
+        }
+        LotterySampler sampler = new FisherYatesSampler();
+
+        System.out.println("Waitlist of " + WAITLIST + " entrants, " + RUNS + " runs per case, times in ms");
+        System.out.println(String.format("%-26s %8s %8s %8s %8s", "case", "winners", "p50", "p95", "max"));
+        for (int k : WINNERS) {
+            report("FisherYatesSampler", k, time(waitlist, k,
+                    (entrants, count, seed) -> sampler.sample(entrants, count, new SplittableRandom(seed))));
+        }
+        for (int k : WINNERS) {
+            report("LotteryPolicy.drawWinners", k, time(waitlist, k,
+                    (entrants, count, seed) -> LotteryPolicy.drawWinners(entrants, count, seed, sampler)));
+        }
+        // Quadratic, so only the smaller draws.
+        for (int k : new int[]{100, 1_000, 5_000}) {
+            report("ArrayList.remove", k, time(waitlist, k, SamplerBenchmark::removeRandom));
+        }
+        System.out.println("(checksum " + sink + ")");
+    }
+
+    /**
+     * @return The duration of every measured run in nanoseconds.
+     */
+    private static long[] time(List<String> waitlist, int k, Draw draw) {
+        for (int i = 0; i < WARMUP; i++) {
+            sink += draw.draw(waitlist, k, i).size();
+        }
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long started = System.nanoTime();
+            List<String> winners = draw.draw(waitlist, k, WARMUP + i);
+            nanos[i] = System.nanoTime() - started;
+            sink += winners.get(winners.size() - 1).hashCode();
+        }
+        return nanos;
+    }
+
+    private static void report(String name, int k, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.println(String.format("%-26s %8d %8.2f %8.2f %8.2f", name, k,
+                millis(sorted[sorted.length / 2]),
+                millis(sorted[(int) Math.ceil(0.95 * sorted.length) - 1]),
+                millis(sorted[sorted.length - 1])));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * The draw from before the sampler: O(n * k) because every removal shifts the list.
+     */
+    private static List<String> removeRandom(List<String> waitlist, int k, long seed) {
+        List<String> remaining = new ArrayList<>(waitlist);
+        Random random = new Random(seed);
+        List<String> winners = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            winners.add(remaining.remove(random.nextInt(remaining.size())));
+        }
+        return winners;
+    }
+}
@@ -0,0 +1,17 @@
+package com.rocket.radar.lottery;
+
+/**
+ * Fields of the membership documents kept under an event for each of its user groups
+ * ({@code waitlistedUsers}, {@code invitedUsers}, {@code attendingUsers},
+ * {@code cancelledUsers}).
+ */
+public final class EventMembership {
+    private EventMembership() {}
+
+    /**
+     * Copy of the member's profile setting, so a group's recipients resolve from the group query
+     * alone. Memberships from before the copy existed don't have it, and for those the member's
+     * profile decides.
+     */
+    public static final String NOTIFICATIONS_ENABLED = "notificationsEnabled";
+}
@@ -0,0 +1,38 @@
+package com.rocket.radar.lottery;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.SplittableRandom;
+
+/**
+ * A partial Fisher-Yates shuffle over the entrants' indices.
+ *
+ * <p>Only the first {@code k} positions are shuffled, and the swaps are kept in a sparse map
+ * instead of a copy of the index array, so a draw costs O(k) time and memory however long the
+ * waitlist is.</p>
+ */
+public class FisherYatesSampler implements LotterySampler {
+    @Override
+    public <T> List<T> sample(List<T> population, int k, SplittableRandom random) {
+        if (!(population instanceof RandomAccess)) {
+            population = new ArrayList<>(population);
+        }
+        int n = population.size();
+        int draws = Math.max(0, Math.min(k, n));
+        List<T> winners = new ArrayList<>(draws);
+        // Position -> index currently at that position, for every position that has been swapped.
+        Map<Integer, Integer> swapped = new HashMap<>(draws * 2);
+        for (int i = 0; i < draws; i++) {
+            int j = i + random.nextInt(n - i);
+            Integer atI = swapped.get(i);
+            Integer atJ = swapped.get(j);
+            int chosen = atJ != null ? atJ : j;
+            swapped.put(j, atI != null ? atI : i);
+            winners.add(population.get(chosen));
+        }
+        return winners;
+    }
+}
@@ -0,0 +1,73 @@
+package com.rocket.radar.lottery;
+
+import java.util.Date;
+
+/**
+ * Decides who may draw an event's main lottery, shared by the app and the lottery runner.
+ *
+ * <p>The main draw's run document has the fixed id {@link LotteryRun#INITIAL_RUN_ID}, so each
+ * event has at most one. Before sampling, a drawer reads it in a transaction together with the
+ * event and, if this says {@link Outcome#CLAIMED}, writes it as
+ * {@link LotteryRun#STATUS_CLAIMED} with itself as the {@link LotteryRun#OWNER}. It only
+ * records its winners if it still owns the claim at that point, so the app and the runner
+ * can't both draw and invite separate winner sets.</p>
+ */
+public final class LotteryClaim {
+    private LotteryClaim() {}
+
+    /**
+     * How long a claim without winners holds. After that its owner is assumed to have died
+     * before recording them, and someone else may take over.
+     */
+    public static final long TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+    /**
+     * What a drawer should do with the event's main draw.
+     */
+    public enum Outcome {
+        /** The draw is this drawer's, go ahead and sample. */
+        CLAIMED,
+        /** Winners were already recorded, finish moving them instead of drawing again. */
+        RESUME,
+        /** The main draw already completed. */
+        DRAWN,
+        /** Someone else is drawing right now. */
+        BUSY
+    }
+
+    /**
+     * @param drawn Whether the event has its {@link LotteryEvent#DRAWN_AT} marker.
+     * @param status The main run's {@link LotteryRun#STATUS}, null if it doesn't exist yet.
+     * @param owner The main run's {@link LotteryRun#OWNER}.
+     * @param claimedAt When the main run was claimed, its {@link LotteryRun#CREATED_AT}.
+     * @param claimant Who is asking.
+     * @param now The current time.
+     * @return What the claimant should do.
+     */
+    public static Outcome decide(boolean drawn, String status, String owner, Date claimedAt, String claimant, Date now) {
+        if (drawn || LotteryRun.STATUS_COMPLETE.equals(status)) {
+            return Outcome.DRAWN;
+        }
+        if (status == null) {
+            return Outcome.CLAIMED;
+        }
+        if (LotteryRun.STATUS_PENDING.equals(status)) {
+            return Outcome.RESUME;
+        }
+        if (claimant.equals(owner) || claimedAt == null
+                || now.getTime() - claimedAt.getTime() >= TIMEOUT_MILLIS) {
+            return Outcome.CLAIMED;
+        }
+        return Outcome.BUSY;
+    }
+
+    /**
+     * @param status The main run's {@link LotteryRun#STATUS} when the claimant records its winners.
+     * @param owner The main run's {@link LotteryRun#OWNER} at that point.
+     * @param claimant Who wants to record the winners.
+     * @return Whether the claimant still owns the draw, so its winners may be recorded.
+     */
+    public static boolean stillOwns(String status, String owner, String claimant) {
+        return LotteryRun.STATUS_CLAIMED.equals(status) && claimant.equals(owner);
+    }
+}
@@ -0,0 +1,16 @@
+package com.rocket.radar.lottery;
+
+/**
+ * Lottery fields stored on the event documents themselves.
+ */
+public final class LotteryEvent {
+    private LotteryEvent() {}
+
+    /**
+     * When the event's main draw completed, written by the same batch that completes its
+     * {@link LotteryRun}, or null while it hasn't been drawn. Sweeps query on it, so a drawn
+     * event is never read again. Events from before the field existed don't have it at all until
+     * the runner's backfill gives them one.
+     */
+    public static final String DRAWN_AT = "lotteryDrawnAt";
+}
@@ -0,0 +1,95 @@
+package com.rocket.radar.lottery;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The rules of a lottery draw, shared by the app and the lottery runner so both draw the same
+ * way.
+ */
+public final class LotteryPolicy {
+    private LotteryPolicy() {}
+
+    /**
+     * Works out the {@link LotteryRun#DRAW_KEY} of an entrant on an event's waitlist. The key is
+     * a hash of the event and the entrant rather than a fresh random number, so it is the same
+     * every time they join: leaving and joining again can't move anyone up the replacement
+     * order. Hashes of distinct entrants behave like independent uniform keys, so the waitlist
+     * ordered by key is still a uniformly random permutation of it.
+     *
+     * @param eventId The event.
+     * @param userId The entrant.
+     * @return The entrant's key on that event.
+     */
+    public static long drawKey(String eventId, String userId) {
+        MessageDigest sha;
+        try {
+            sha = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+        sha.update(eventId.getBytes(StandardCharsets.UTF_8));
+        // Separates the ids so "ab" + "c" and "a" + "bc" don't collide.
+        sha.update((byte) 0);
+        sha.update(userId.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(sha.digest()).getLong();
+    }
+
+    /**
+     * Decides how many entrants to invite.
+     *
+     * @param waitlistSize Number of entrants on the waitlist.
+     * @param eventCapacity The event's capacity.
+     * @param sampleNum A specific number to draw, for example to refill declined spots. Null to
+     *                  fill the event's capacity.
+     * @return The number of winners, never more than the waitlist.
+     */
+    public static int winnerCount(int waitlistSize, int eventCapacity, Integer sampleNum) {
+        if (sampleNum != null && sampleNum < waitlistSize) {
+            return Math.max(0, sampleNum);
+        }
+        return Math.min(waitlistSize, eventCapacity);
+    }
+
+    /**
+     * Draws winners. The waitlist is sorted first so the result only depends on who is waiting
+     * and the seed, which lets a recorded draw be replayed.
+     *
+     * @param waitlist Ids of the entrants.
+     * @param count Number of winners, see {@link #winnerCount(int, int, Integer)}.
+     * @param seed Seed for the draw, store it with the result.
+     * @param sampler How to pick the winners.
+     * @return The winners in draw order.
+     */
+    public static List<String> drawWinners(Collection<String> waitlist, int count, long seed, LotterySampler sampler) {
+        List<String> sorted = new ArrayList<>(waitlist);
+        Collections.sort(sorted);
+        return new ArrayList<>(sampler.sample(sorted, count, new SplittableRandom(seed)));
+    }
+
+    /**
+     * Works out when an event's lottery is due.
+     *
+     * @param lotteryDate The day of the draw. Only the calendar date in {@code zone} is used.
+     * @param hour Hour of the draw, 0-23.
+     * @param minute Minute of the draw.
+     * @param zone The time zone the organizer picked the date and time in.
+     * @return The moment the draw should run.
+     */
+    public static Instant dueInstant(Date lotteryDate, int hour, int minute, ZoneId zone) {
+        LocalDate day = lotteryDate.toInstant().atZone(zone).toLocalDate();
+        return day.atTime(hour, minute).atZone(zone).toInstant();
+    }
+}
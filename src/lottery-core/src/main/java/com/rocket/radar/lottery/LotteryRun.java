@@ -0,0 +1,68 @@
+package com.rocket.radar.lottery;
+
+/**
+ * Field names and states of the lottery run documents stored under
+ * {@code events/{eventId}/lotteryRuns}.
+ *
+ * <p>A run is written with its winners before any entrant is moved. Every batch that moves
+ * winners also advances {@link #COMMITTED}, and the last one flips {@link #STATUS} to
+ * {@link #STATUS_COMPLETE}, so whoever finds a pending run can resume it with the same winners.</p>
+ *
+ * <p>The main draw's run is {@link #INITIAL_RUN_ID} and is claimed before anyone samples, see
+ * {@link LotteryClaim}. Replacement draws get generated ids.</p>
+ */
+public final class LotteryRun {
+    private LotteryRun() {}
+
+    public static final String COLLECTION = "lotteryRuns";
+
+    /**
+     * Id of the run document of an event's main draw.
+     */
+    public static final String INITIAL_RUN_ID = "initial";
+
+    public static final String WINNERS = "winners";
+    public static final String COMMITTED = "committed";
+    public static final String STATUS = "status";
+    public static final String SEED = "seed";
+    public static final String WAITLIST_SIZE = "waitlistSize";
+    public static final String CREATED_AT = "createdAt";
+    /**
+     * Who ran the draw, {@link #RUNNER_APP} or {@link #RUNNER_SERVER}.
+     */
+    public static final String RUNNER = "runner";
+    /**
+     * Who claimed the main draw, an id unique to one app or runner process.
+     */
+    public static final String OWNER = "owner";
+    /**
+     * {@link #KIND_INITIAL} for a full draw, {@link #KIND_REPLACEMENT} for refilling declined seats.
+     */
+    public static final String KIND = "kind";
+
+    /**
+     * Field on every {@code waitlistedUsers} document holding the entrant's random key, see
+     * {@link LotteryPolicy#drawKey(String, String)}. Ordering the waitlist by it gives a persisted
+     * shuffle, so replacement winners are simply the first entries.
+     */
+    public static final String DRAW_KEY = "drawKey";
+
+    /**
+     * Winners that turned notifications off, so the setting survives their move to the invited
+     * list even when the run is resumed.
+     */
+    public static final String MUTED = "muted";
+
+    /**
+     * The main draw is claimed but its winners aren't recorded yet.
+     */
+    public static final String STATUS_CLAIMED = "claimed";
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_COMPLETE = "complete";
+
+    public static final String KIND_INITIAL = "initial";
+    public static final String KIND_REPLACEMENT = "replacement";
+
+    public static final String RUNNER_APP = "app";
+    public static final String RUNNER_SERVER = "server";
+}
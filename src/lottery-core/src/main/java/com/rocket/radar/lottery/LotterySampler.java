@@ -0,0 +1,22 @@
+package com.rocket.radar.lottery;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Picks lottery winners from a waitlist.
+ *
+ * <p>Implementations must be unbiased, every subset of size {@code k} equally likely, and must
+ * only draw from the given {@link SplittableRandom} so a draw can be replayed from its seed.</p>
+ */
+public interface LotterySampler {
+    /**
+     * Draws winners without replacement.
+     *
+     * @param population The entrants. Not modified.
+     * @param k How many to draw. Clamped to the population size.
+     * @param random The source of randomness, seeded by the caller.
+     * @return The winners in the order they were drawn.
+     */
+    <T> List<T> sample(List<T> population, int k, SplittableRandom random);
+}
@@ -0,0 +1,181 @@
+package com.rocket.radar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.rocket.radar.lottery.FisherYatesSampler;
+import com.rocket.radar.lottery.LotteryClaim;
+import com.rocket.radar.lottery.LotteryPolicy;
+import com.rocket.radar.lottery.LotteryRun;
+import com.rocket.radar.lottery.LotterySampler;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+public class LotteryTests {
+
+    private static List<String> waitlist(int size) {
+        List<String> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add("user" + i);
+        }
+        return users;
+    }
+
+    @Test
+    public void sample_drawsDistinctEntrants() {
+        List<String> users = waitlist(1000);
+        List<String> winners = new FisherYatesSampler().sample(users, 250, new SplittableRandom(42));
+        assertEquals(250, winners.size());
+        assertEquals(250, new HashSet<>(winners).size());
+        assertTrue(users.containsAll(winners));
+    }
+
+    @Test
+    public void sample_clampsToWaitlistSize() {
+        List<String> users = waitlist(10);
+        List<String> winners = new FisherYatesSampler().sample(users, 50, new SplittableRandom(1));
+        assertEquals(new HashSet<>(users), new HashSet<>(winners));
+        assertEquals(0, new FisherYatesSampler().sample(users, 0, new SplittableRandom(1)).size());
+    }
+
+    @Test
+    public void sample_isReproducibleFromSeed() {
+        List<String> users = waitlist(5000);
+        LotterySampler sampler = new FisherYatesSampler();
+        assertEquals(sampler.sample(users, 100, new SplittableRandom(7)),
+                sampler.sample(users, 100, new SplittableRandom(7)));
+    }
+
+    @Test
+    public void sample_isUnbiased() {
+        // Every entrant should win about k/n of the time.
+        int n = 20;
+        int k = 5;
+        int trials = 40000;
+        List<String> users = waitlist(n);
+        int[] wins = new int[n];
+        SplittableRandom random = new SplittableRandom(2024);
+        LotterySampler sampler = new FisherYatesSampler();
+        for (int t = 0; t < trials; t++) {
+            for (String winner : sampler.sample(users, k, random)) {
+                wins[Integer.parseInt(winner.substring(4))]++;
+            }
+        }
+        double expected = (double) trials * k / n;
+        for (int count : wins) {
+            assertTrue("win count " + count + " too far from " + expected,
+                    Math.abs(count - expected) < expected * 0.05);
+        }
+    }
+
+    @Test
+    public void sample_largeWaitlistDrawsDistinctEntrants() {
+        List<String> users = waitlist(100_000);
+        List<String> winners = new FisherYatesSampler().sample(users, 5000, new SplittableRandom(99));
+
+        assertEquals(5000, winners.size());
+        Set<String> distinct = new HashSet<>(winners);
+        assertEquals(5000, distinct.size());
+        assertTrue(new HashSet<>(users).containsAll(distinct));
+    }
+
+    @Test
+    public void drawKey_survivesRejoining() {
+        // Leaving deletes the waitlist entry, joining again has to land on the same key.
+        long joined = LotteryPolicy.drawKey("event1", "user7");
+        assertEquals(joined, LotteryPolicy.drawKey("event1", "user7"));
+        assertTrue(joined != LotteryPolicy.drawKey("event2", "user7"));
+        assertTrue(joined != LotteryPolicy.drawKey("event1", "user8"));
+        assertTrue(LotteryPolicy.drawKey("ab", "c") != LotteryPolicy.drawKey("a", "bc"));
+    }
+
+    @Test
+    public void drawKey_shufflesTheWaitlist() {
+        // Each entrant should land in the first half of the key order about half the time.
+        int n = 10;
+        int events = 20000;
+        List<String> users = waitlist(n);
+        int[] firstHalf = new int[n];
+        for (int e = 0; e < events; e++) {
+            String eventId = "event" + e;
+            List<String> order = new ArrayList<>(users);
+            order.sort((a, b) -> Long.compare(LotteryPolicy.drawKey(eventId, a), LotteryPolicy.drawKey(eventId, b)));
+            for (String user : order.subList(0, n / 2)) {
+                firstHalf[Integer.parseInt(user.substring(4))]++;
+            }
+        }
+        double expected = events / 2.0;
+        for (int count : firstHalf) {
+            assertTrue("first half count " + count + " too far from " + expected,
+                    Math.abs(count - expected) < expected * 0.05);
+        }
+    }
+
+    @Test
+    public void winnerCount_followsCapacityAndSampleNum() {
+        assertEquals(5, LotteryPolicy.winnerCount(10, 5, null));
+        assertEquals(3, LotteryPolicy.winnerCount(3, 5, null));
+        assertEquals(1, LotteryPolicy.winnerCount(10, 5, 1));
+        // Asking for more than are waiting falls back to the capacity.
+        assertEquals(5, LotteryPolicy.winnerCount(10, 5, 20));
+    }
+
+    @Test
+    public void drawWinners_ignoresWaitlistOrder() {
+        List<String> users = waitlist(100);
+        List<String> reversed = new ArrayList<>(users);
+        Collections.reverse(reversed);
+        LotterySampler sampler = new FisherYatesSampler();
+        assertEquals(LotteryPolicy.drawWinners(users, 10, 5L, sampler),
+                LotteryPolicy.drawWinners(reversed, 10, 5L, sampler));
+    }
+
+    @Test
+    public void dueInstant_usesLotteryTimeOnLotteryDay() {
+        Date day = Date.from(Instant.parse("2030-01-15T00:00:00Z"));
+        assertEquals(Instant.parse("2030-01-15T14:30:00Z"),
+                LotteryPolicy.dueInstant(day, 14, 30, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void claim_onlyOneDrawerAtATime() {
+        Date now = new Date();
+        assertEquals(LotteryClaim.Outcome.CLAIMED,
+                LotteryClaim.decide(false, null, null, null, "server:a", now));
+        assertEquals(LotteryClaim.Outcome.BUSY,
+                LotteryClaim.decide(false, LotteryRun.STATUS_CLAIMED, "app:b", now, "server:a", now));
+        // Claiming again is fine for the owner.
+        assertEquals(LotteryClaim.Outcome.CLAIMED,
+                LotteryClaim.decide(false, LotteryRun.STATUS_CLAIMED, "server:a", now, "server:a", now));
+        assertEquals(LotteryClaim.Outcome.RESUME,
+                LotteryClaim.decide(false, LotteryRun.STATUS_PENDING, "app:b", now, "server:a", now));
+        assertEquals(LotteryClaim.Outcome.DRAWN,
+                LotteryClaim.decide(true, null, null, null, "server:a", now));
+        assertEquals(LotteryClaim.Outcome.DRAWN,
+                LotteryClaim.decide(false, LotteryRun.STATUS_COMPLETE, "app:b", now, "server:a", now));
+    }
+
+    @Test
+    public void claim_expiresWithoutWinners() {
+        Date claimed = new Date(0);
+        assertEquals(LotteryClaim.Outcome.BUSY, LotteryClaim.decide(false, LotteryRun.STATUS_CLAIMED, "app:b",
+                claimed, "server:a", new Date(LotteryClaim.TIMEOUT_MILLIS - 1)));
+        assertEquals(LotteryClaim.Outcome.CLAIMED, LotteryClaim.decide(false, LotteryRun.STATUS_CLAIMED, "app:b",
+                claimed, "server:a", new Date(LotteryClaim.TIMEOUT_MILLIS)));
+        // The drawer it was taken from may no longer record its winners.
+        assertFalse(LotteryClaim.stillOwns(LotteryRun.STATUS_CLAIMED, "server:a", "app:b"));
+        assertTrue(LotteryClaim.stillOwns(LotteryRun.STATUS_CLAIMED, "app:b", "app:b"));
+        assertFalse(LotteryClaim.stillOwns(LotteryRun.STATUS_PENDING, "app:b", "app:b"));
+    }
+}
@@ -0,0 +1,28 @@
+// Headless lottery runner. Runs due lottery draws against Firestore with the Admin SDK so large
+// draws don't depend on an organizer's phone. Point FIRESTORE_EMULATOR_HOST at a local emulator
+// to run it (and its tests) without touching production, for example:
+//   firebase emulators:exec --only firestore "./gradlew :lottery-runner:test"
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+application {
+    mainClass.set("com.rocket.radar.lottery.runner.LotteryRunnerMain")
+}
+
+dependencies {
+    implementation(project(":lottery-core"))
+    implementation(libs.firebase.admin)
+
+    testImplementation(libs.junit)
+}
+
+tasks.withType<Test> {
+    // Emulator tests are skipped unless this is set.
+    System.getenv("FIRESTORE_EMULATOR_HOST")?.let { environment("FIRESTORE_EMULATOR_HOST", it) }
+}
@@ -0,0 +1,150 @@
+package com.rocket.radar.lottery.runner;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.rocket.radar.lottery.EventMembership;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Server side counterpart of {@code NotificationRepository.sendNotificationToGroup}. Writes the
+ * same documents so the app can't tell who sent a notification.
+ */
+class GroupNotifier {
+    private static final Logger LOG = Logger.getLogger(GroupNotifier.class.getName());
+    private static final int MAX_BATCH_OPS = 500;
+    // Each recipient takes a stub and an unread count bump, both in one transaction.
+    private static final int RECIPIENTS_PER_BATCH = MAX_BATCH_OPS / 2;
+    private static final String UNREAD_COUNT = "unreadNotificationCount";
+    private static final int FAN_OUT_PARALLELISM = 4;
+    private static final int FAN_OUT_ATTEMPTS = 4;
+    private static final long FAN_OUT_BACKOFF_MILLIS = 250;
+
+    private final Firestore db;
+    private final NotificationFanOut fanOut;
+
+    GroupNotifier(Firestore db) {
+        this(db, new NotificationFanOut(RECIPIENTS_PER_BATCH, FAN_OUT_PARALLELISM, FAN_OUT_ATTEMPTS, FAN_OUT_BACKOFF_MILLIS));
+    }
+
+    GroupNotifier(Firestore db, NotificationFanOut fanOut) {
+        this.db = db;
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * Notifies every member of one of an event's user groups who hasn't turned notifications off.
+     * The membership documents carry a copy of the setting, so one query resolves the group. Only
+     * members whose membership predates that copy have their profile read.
+     *
+     * @param title The event title shown in the notification.
+     * @param body The notification text.
+     * @param eventId The event.
+     * @param groupCollection The event subcollection holding the group, e.g. {@code invitedUsers}.
+     * @return The number of users notified.
+     */
+    int sendToGroup(String title, String body, String eventId, String groupCollection)
+            throws ExecutionException, InterruptedException {
+        List<String> usersToNotify = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        for (QueryDocumentSnapshot member : db.collection("events").document(eventId)
+                .collection(groupCollection).select(EventMembership.NOTIFICATIONS_ENABLED).get().get()) {
+            Boolean enabled = member.getBoolean(EventMembership.NOTIFICATIONS_ENABLED);
+            if (enabled == null) {
+                unknown.add(member.getId());
+            } else if (enabled) {
+                usersToNotify.add(member.getId());
+            }
+        }
+        usersToNotify.addAll(profileEnabled(unknown));
+        return sendToUsers(title, body, eventId, usersToNotify);
+    }
+
+    /**
+     * Notifies specific users. The caller has already left out anyone who turned notifications
+     * off.
+     *
+     * @return The number of users notified.
+     */
+    int sendToUsers(String title, String body, String eventId, List<String> userIds)
+            throws ExecutionException, InterruptedException {
+        return fanOut(title, body, eventId, userIds);
+    }
+
+    /**
+     * @return The users whose profile has notifications enabled, read in one round trip. Users
+     * without a profile are left out. If the read fails they are all left out, so the rest of the
+     * group is still notified.
+     */
+    private List<String> profileEnabled(List<String> userIds) throws InterruptedException {
+        List<String> enabled = new ArrayList<>();
+        if (userIds.isEmpty()) return enabled;
+        DocumentReference[] refs = new DocumentReference[userIds.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = db.collection("users").document(userIds.get(i));
+        }
+        List<DocumentSnapshot> profiles;
+        try {
+            profiles = db.getAll(refs).get();
+        } catch (ExecutionException e) {
+            LOG.log(Level.WARNING, "Could not read " + userIds.size() + " profiles, skipping those users", e);
+            return enabled;
+        }
+        for (DocumentSnapshot profile : profiles) {
+            if (profile.exists() && !Boolean.FALSE.equals(profile.getBoolean("notificationsEnabled"))) {
+                enabled.add(profile.getId());
+            }
+        }
+        return enabled;
+    }
+
+    private int fanOut(String title, String body, String eventId, List<String> usersToNotify)
+            throws ExecutionException, InterruptedException {
+        if (usersToNotify.isEmpty()) return 0;
+
+        Map<String, Object> content = new HashMap<>();
+        content.put("eventTitle", title);
+        content.put("notificationType", body);
+        content.put("eventId", eventId);
+        content.put("timestamp", FieldValue.serverTimestamp());
+        DocumentReference contentRef = db.collection("notifications").add(content).get();
+
+        // Stubs are keyed by the content id, and each chunk is a transaction that only writes the
+        // stubs that don't exist yet, so a chunk retried after its commit landed neither
+        // duplicates a stub nor counts it twice.
+        String stubId = contentRef.getId();
+        NotificationFanOut.Stats stats = fanOut.run(usersToNotify, chunk -> db.runTransaction(transaction -> {
+            DocumentReference[] refs = new DocumentReference[chunk.size() * 2];
+            for (int i = 0; i < chunk.size(); i++) {
+                DocumentReference userRef = db.collection("users").document(chunk.get(i));
+                refs[2 * i] = userRef;
+                refs[2 * i + 1] = userRef.collection("notifications").document(stubId);
+            }
+            // One round trip for the whole chunk, every read comes before the writes.
+            List<DocumentSnapshot> docs = transaction.getAll(refs).get();
+            for (int i = 0; i < chunk.size(); i++) {
+                // A deleted user is skipped rather than failing the chunk or getting a bare
+                // document back.
+                if (!docs.get(2 * i).exists() || docs.get(2 * i + 1).exists()) continue;
+                // Stubs carry the content so the inbox never has to resolve notificationRef.
+                Map<String, Object> stub = new HashMap<>(content);
+                stub.put("readStatus", false);
+                stub.put("notificationRef", contentRef);
+                transaction.set(refs[2 * i + 1], stub);
+                transaction.update(refs[2 * i], UNREAD_COUNT, FieldValue.increment(1));
+            }
+            return null;
+        }).get());
+        LOG.info("Fan-out of " + contentRef.getId() + " for " + eventId + ": " + stats);
+        return usersToNotify.size();
+    }
+}
@@ -0,0 +1,205 @@
+package com.rocket.radar.lottery.runner;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldPath;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.rocket.radar.lottery.LotteryEvent;
+import com.rocket.radar.lottery.LotteryPolicy;
+import com.rocket.radar.lottery.LotteryRun;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds every event whose lottery is due and hasn't been drawn, and draws them in parallel.
+ *
+ * <p>Drawn events carry {@link LotteryEvent#DRAWN_AT}, and sweeps only query events where it is
+ * null. Events from before the marker existed have no such field and are invisible to sweeps
+ * until {@link #backfillDrawnMarkers()} has given them one, so run that once before the first
+ * sweep.</p>
+ */
+public class LotteryRunner {
+    private static final Logger LOG = Logger.getLogger(LotteryRunner.class.getName());
+
+    private static final int BACKFILL_PAGE_SIZE = 500;
+    // Membership groups only a draw puts anyone in.
+    private static final String[] DRAWN_GROUPS = {"invitedUsers", "attendingUsers", "cancelledUsers"};
+
+    private final Firestore db;
+    private final ServerLotteryDraw draw;
+    private final ZoneId zone;
+    private final int parallelism;
+
+    /**
+     * @param db The Firestore to run against.
+     * @param draw Draws a single event.
+     * @param zone Time zone organizers pick lottery dates and times in.
+     * @param parallelism Number of events drawn at once.
+     */
+    public LotteryRunner(Firestore db, ServerLotteryDraw draw, ZoneId zone, int parallelism) {
+        this.db = db;
+        this.draw = draw;
+        this.zone = zone;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Works out when an event's lottery is due from its {@code lotteryDate} and
+     * {@code lotteryTime} fields.
+     *
+     * @return The due instant, or null if the event has no lottery date.
+     */
+    Instant dueInstant(DocumentSnapshot event) {
+        Timestamp lotteryDate = event.getTimestamp("lotteryDate");
+        if (lotteryDate == null) return null;
+        int hour = 0;
+        int minute = 0;
+        Object time = event.get("lotteryTime");
+        if (time instanceof Map) {
+            Object h = ((Map<?, ?>) time).get("hour");
+            Object m = ((Map<?, ?>) time).get("minute");
+            if (h instanceof Number) hour = ((Number) h).intValue();
+            if (m instanceof Number) minute = ((Number) m).intValue();
+        }
+        return LotteryPolicy.dueInstant(lotteryDate.toDate(), hour, minute, zone);
+    }
+
+    /**
+     * @return true if the event's main draw completed. An event without the marker is checked
+     * the old way and given one, see {@link #backfillDrawnMarker(DocumentSnapshot)}.
+     */
+    boolean alreadyDrawn(DocumentSnapshot event) throws ExecutionException, InterruptedException {
+        if (event.contains(LotteryEvent.DRAWN_AT)) {
+            return event.get(LotteryEvent.DRAWN_AT) != null;
+        }
+        return backfillDrawnMarker(event);
+    }
+
+    /**
+     * Works out whether an event from before {@link LotteryEvent#DRAWN_AT} existed was already
+     * drawn, by the app or the runner, and writes the marker. It counts as drawn if it has a
+     * completed run or anyone invited, attending or cancelled.
+     *
+     * @return Whether the event was drawn.
+     */
+    boolean backfillDrawnMarker(DocumentSnapshot event) throws ExecutionException, InterruptedException {
+        DocumentReference ref = event.getReference();
+        boolean drawn = !ref.collection(LotteryRun.COLLECTION)
+                .whereEqualTo(LotteryRun.STATUS, LotteryRun.STATUS_COMPLETE)
+                .limit(1).get().get().isEmpty();
+        for (int i = 0; i < DRAWN_GROUPS.length && !drawn; i++) {
+            drawn = !ref.collection(DRAWN_GROUPS[i]).limit(1).get().get().isEmpty();
+        }
+        ref.update(LotteryEvent.DRAWN_AT, drawn ? FieldValue.serverTimestamp() : null).get();
+        return drawn;
+    }
+
+    /**
+     * Gives every event without a {@link LotteryEvent#DRAWN_AT} marker one. Reads every event
+     * once, so run it once after upgrading rather than on every sweep.
+     *
+     * @return The number of events that got a marker.
+     */
+    public int backfillDrawnMarkers() throws ExecutionException, InterruptedException {
+        int backfilled = 0;
+        Query page = db.collection("events").orderBy(FieldPath.documentId()).limit(BACKFILL_PAGE_SIZE);
+        DocumentSnapshot last = null;
+        while (true) {
+            QuerySnapshot snapshot = (last == null ? page : page.startAfter(last)).get().get();
+            for (QueryDocumentSnapshot event : snapshot) {
+                if (event.contains(LotteryEvent.DRAWN_AT)) continue;
+                backfillDrawnMarker(event);
+                backfilled++;
+            }
+            if (snapshot.size() < BACKFILL_PAGE_SIZE) break;
+            last = snapshot.getDocuments().get(snapshot.size() - 1);
+        }
+        LOG.info("Backfilled the drawn marker on " + backfilled + " events");
+        return backfilled;
+    }
+
+    /**
+     * Finds the events whose lottery is due at {@code now} and still needs drawing.
+     */
+    List<DocumentSnapshot> findDue(Instant now) throws ExecutionException, InterruptedException {
+        List<DocumentSnapshot> due = new ArrayList<>();
+        // lotteryDate is the start of the draw day so this over-selects by at most a day, the
+        // exact due time is checked below. Needs the lotteryDrawnAt + lotteryDate index.
+        for (QueryDocumentSnapshot event : db.collection("events")
+                .whereEqualTo(LotteryEvent.DRAWN_AT, null)
+                .whereLessThanOrEqualTo("lotteryDate", Timestamp.of(Date.from(now)))
+                .get().get()) {
+            Instant dueAt = dueInstant(event);
+            if (dueAt != null && !dueAt.isAfter(now)) {
+                due.add(event);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * Draws every due event. A failure on one event is logged and doesn't stop the others, the
+     * next run resumes it.
+     *
+     * @param now The time to consider current.
+     * @return The results of the draws that succeeded.
+     */
+    public List<ServerLotteryDraw.Result> runDue(Instant now) throws ExecutionException, InterruptedException {
+        List<DocumentSnapshot> due = findDue(now);
+        LOG.info(due.size() + " lotteries due");
+        return runAll(due);
+    }
+
+    /**
+     * Draws one event unless it already has a completed draw.
+     *
+     * @param eventId The event.
+     * @return What the draw did, or null if there was nothing to do.
+     */
+    ServerLotteryDraw.Result drawIfNeeded(String eventId) throws ExecutionException, InterruptedException {
+        DocumentSnapshot event = db.collection("events").document(eventId).get().get();
+        if (!event.exists() || alreadyDrawn(event)) {
+            return null;
+        }
+        return draw.run(eventId, null);
+    }
+
+    List<ServerLotteryDraw.Result> runAll(List<DocumentSnapshot> events) throws InterruptedException {
+        List<ServerLotteryDraw.Result> results = new ArrayList<>();
+        if (events.isEmpty()) return results;
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, events.size()));
+        try {
+            List<Future<ServerLotteryDraw.Result>> futures = new ArrayList<>();
+            for (DocumentSnapshot event : events) {
+                futures.add(executor.submit(() -> draw.run(event.getId(), null)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    LOG.log(Level.WARNING, "Lottery failed for " + events.get(i).getId(), e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+}
@@ -0,0 +1,92 @@
+package com.rocket.radar.lottery.runner;
+
+import com.google.cloud.firestore.Firestore;
+import com.rocket.radar.lottery.FisherYatesSampler;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Command line entry point. Draws every lottery that is due and exits, or with {@code --watch}
+ * keeps running and draws each lottery when it comes due. With {@code --compact} it instead
+ * prunes notifications older than the given number of days, see {@link NotificationCompactor}.
+ * {@code --backfill-drawn} marks which existing events were already drawn and must be run once
+ * before the first sweep, see {@link LotteryRunner#backfillDrawnMarkers()}.
+ *
+ * <pre>
+ *   lottery-runner --project &lt;id&gt; [--zone America/Edmonton] [--threads 8] [--watch]
+ *   lottery-runner --project &lt;id&gt; --compact 90
+ *   lottery-runner --project &lt;id&gt; --backfill-drawn
+ * </pre>
+ */
+public class LotteryRunnerMain {
+    private static final int COMPACT_PAGE_SIZE = 500;
+
+    public static void main(String[] args) throws Exception {
+        String projectId = System.getenv("GOOGLE_CLOUD_PROJECT");
+        ZoneId zone = ZoneId.systemDefault();
+        int threads = 8;
+        boolean watch = false;
+        int compactDays = 0;
+        boolean backfillDrawn = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--project":
+                    projectId = args[++i];
+                    break;
+                case "--zone":
+                    zone = ZoneId.of(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--watch":
+                    watch = true;
+                    break;
+                case "--compact":
+                    compactDays = Integer.parseInt(args[++i]);
+                    break;
+                case "--backfill-drawn":
+                    backfillDrawn = true;
+                    break;
+                default:
+                    System.err.println("Unknown argument " + args[i]);
+                    System.exit(2);
+            }
+        }
+        if (projectId == null) {
+            System.err.println("Pass --project or set GOOGLE_CLOUD_PROJECT");
+            System.exit(2);
+        }
+
+        Firestore db = RunnerFirestore.open(projectId);
+        if (compactDays > 0) {
+            System.out.println(new NotificationCompactor(db, Duration.ofDays(compactDays), COMPACT_PAGE_SIZE).run(Instant.now()));
+            db.close();
+            return;
+        }
+        LotteryRunner runner = new LotteryRunner(db, new ServerLotteryDraw(db, new FisherYatesSampler()), zone, threads);
+        if (backfillDrawn) {
+            System.out.println("Marked " + runner.backfillDrawnMarkers() + " events");
+            db.close();
+            return;
+        }
+        if (watch) {
+            LotteryScheduler scheduler = new LotteryScheduler(db, runner, threads);
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                scheduler.close();
+                stopped.countDown();
+            }));
+            scheduler.start();
+            stopped.await();
+            return;
+        }
+        for (ServerLotteryDraw.Result result : runner.runDue(Instant.now())) {
+            System.out.println(result);
+        }
+        db.close();
+    }
+}
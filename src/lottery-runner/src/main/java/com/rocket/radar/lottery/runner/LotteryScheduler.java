@@ -0,0 +1,227 @@
+package com.rocket.radar.lottery.runner;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.rocket.radar.lottery.LotteryEvent;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fires each event's lottery at its due time.
+ *
+ * <p>Upcoming lottery times are kept in a priority queue ordered by due instant, fed by a single
+ * snapshot listener on events with an upcoming lottery date. One timer is armed for the head of
+ * the queue, so nothing is polled: the scheduler sleeps until the next draw or until an event's
+ * lottery time changes. Rescheduled or deleted events leave stale queue entries behind that are
+ * skipped when they reach the head.</p>
+ *
+ * <p>On start every draw that came due while the runner was down is queued with its past due
+ * time, so the backlog fires at once and is drawn in parallel on the draw pool. A draw that is
+ * already running or already completed is never started again. Only run one scheduler per
+ * project.</p>
+ */
+public class LotteryScheduler implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(LotteryScheduler.class.getName());
+
+    /**
+     * Draws one event. Implementations must tolerate being asked for an event that was already
+     * drawn.
+     */
+    interface DrawAction {
+        void draw(String eventId) throws Exception;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final String eventId;
+        final Instant dueAt;
+
+        Entry(String eventId, Instant dueAt) {
+            this.eventId = eventId;
+            this.dueAt = dueAt;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            return dueAt.compareTo(other.dueAt);
+        }
+    }
+
+    private final Clock clock;
+    private final DrawAction action;
+    private final ExecutorService drawPool;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    // The live due time per event, queue entries that disagree with it are stale.
+    private final Map<String, Instant> scheduled = new HashMap<>();
+    private final Set<String> running = Collections.synchronizedSet(new HashSet<>());
+    private ScheduledFuture<?> wakeUp;
+    private Instant wakeUpAt;
+
+    private LotteryRunner runner;
+    private Firestore db;
+    private ListenerRegistration registration;
+
+    /**
+     * @param clock Time source.
+     * @param action Draws a single event.
+     * @param parallelism Number of draws run at once.
+     */
+    LotteryScheduler(Clock clock, DrawAction action, int parallelism) {
+        this.clock = clock;
+        this.action = action;
+        this.drawPool = Executors.newFixedThreadPool(parallelism);
+    }
+
+    /**
+     * @param db The Firestore to watch.
+     * @param runner Finds due events and draws them.
+     * @param parallelism Number of draws run at once.
+     */
+    public LotteryScheduler(Firestore db, LotteryRunner runner, int parallelism) {
+        this(Clock.systemUTC(), runner::drawIfNeeded, parallelism);
+        this.db = db;
+        this.runner = runner;
+    }
+
+    /**
+     * Queues the backlog and starts watching for upcoming lotteries.
+     */
+    public void start() throws Exception {
+        Instant now = clock.instant();
+        for (DocumentSnapshot event : runner.findDue(now)) {
+            schedule(event.getId(), runner.dueInstant(event));
+        }
+
+        // lotteryDate holds the start of the draw day, so look back a day to catch draws later today.
+        Date since = Date.from(now.minus(Duration.ofDays(1)));
+        registration = db.collection("events")
+                .whereGreaterThanOrEqualTo("lotteryDate", Timestamp.of(since))
+                .addSnapshotListener((snapshot, error) -> {
+                    if (error != null) {
+                        LOG.log(Level.WARNING, "Event listener failed", error);
+                        return;
+                    }
+                    if (snapshot == null) return;
+                    for (DocumentChange change : snapshot.getDocumentChanges()) {
+                        DocumentSnapshot event = change.getDocument();
+                        // Drawn events drop out too, the draw's own marker write lands here.
+                        boolean done = change.getType() == DocumentChange.Type.REMOVED
+                                || event.get(LotteryEvent.DRAWN_AT) != null;
+                        Instant dueAt = done ? null : runner.dueInstant(event);
+                        if (dueAt == null) {
+                            unschedule(event.getId());
+                        } else {
+                            schedule(event.getId(), dueAt);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Queues or moves an event's draw.
+     */
+    synchronized void schedule(String eventId, Instant dueAt) {
+        Instant previous = scheduled.put(eventId, dueAt);
+        if (dueAt.equals(previous)) return;
+        queue.add(new Entry(eventId, dueAt));
+        armTimer();
+    }
+
+    /**
+     * Drops an event's draw if it hasn't fired yet.
+     */
+    synchronized void unschedule(String eventId) {
+        scheduled.remove(eventId);
+    }
+
+    /**
+     * @return The number of draws waiting for their due time.
+     */
+    synchronized int pendingCount() {
+        return scheduled.size();
+    }
+
+    private boolean isStale(Entry entry) {
+        return !entry.dueAt.equals(scheduled.get(entry.eventId));
+    }
+
+    private synchronized void armTimer() {
+        while (!queue.isEmpty() && isStale(queue.peek())) {
+            queue.poll();
+        }
+        Entry head = queue.peek();
+        if (head == null) {
+            if (wakeUp != null) wakeUp.cancel(false);
+            wakeUp = null;
+            wakeUpAt = null;
+            return;
+        }
+        // The armed timer already fires early enough.
+        if (wakeUp != null && wakeUpAt != null && !head.dueAt.isBefore(wakeUpAt)) return;
+
+        if (wakeUp != null) wakeUp.cancel(false);
+        long delay = Math.max(0, Duration.between(clock.instant(), head.dueAt).toMillis());
+        wakeUpAt = head.dueAt;
+        wakeUp = timer.schedule(this::fireDue, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void fireDue() {
+        List<String> due = new ArrayList<>();
+        synchronized (this) {
+            wakeUp = null;
+            wakeUpAt = null;
+            Instant now = clock.instant();
+            while (!queue.isEmpty() && !queue.peek().dueAt.isAfter(now)) {
+                Entry entry = queue.poll();
+                if (isStale(entry)) continue;
+                scheduled.remove(entry.eventId);
+                due.add(entry.eventId);
+            }
+            armTimer();
+        }
+        for (String eventId : due) {
+            if (!running.add(eventId)) continue;
+            drawPool.execute(() -> {
+                try {
+                    action.draw(eventId);
+                } catch (Exception e) {
+                    LOG.log(Level.WARNING, "Scheduled lottery failed for " + eventId, e);
+                } finally {
+                    running.remove(eventId);
+                }
+            });
+        }
+        if (!due.isEmpty()) {
+            LOG.info("Fired " + due.size() + " lotteries");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (registration != null) registration.remove();
+        timer.shutdownNow();
+        drawPool.shutdown();
+    }
+}
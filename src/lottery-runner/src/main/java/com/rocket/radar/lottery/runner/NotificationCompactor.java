@@ -0,0 +1,169 @@
+package com.rocket.radar.lottery.runner;
+
+import com.google.api.core.ApiFuture;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Prunes old notifications so inboxes and account deletion stay bounded.
+ *
+ * <p>Two passes, each over pages of at most one batch:</p>
+ * <ol>
+ *   <li>Read stubs in any {@code users/{uid}/notifications} older than the retention window are
+ *   deleted, found with one collection group query. Unread stubs are kept however old, and
+ *   stubs never touch the unread count once read, so the count stays right.</li>
+ *   <li>Content documents in the top-level {@code notifications} collection older than the
+ *   window are deleted once no stub references them any more. Every stub carries
+ *   {@code notificationRef}, so one {@code limit(1)} query per content document answers that,
+ *   and a page's queries are all in flight at once.</li>
+ * </ol>
+ *
+ * <p>Content younger than the window is never collected, so a notification whose fan-out is
+ * still running can't lose its content. Running the job again just picks up where the last one
+ * stopped.</p>
+ */
+class NotificationCompactor {
+    private static final Logger LOG = Logger.getLogger(NotificationCompactor.class.getName());
+    private static final int MAX_BATCH_OPS = 500;
+    private static final String COLLECTION = "notifications";
+
+    /**
+     * What a compaction did and how long it took.
+     */
+    static final class Stats {
+        final int stubsDeleted;
+        final int contentScanned;
+        final int contentDeleted;
+        final int batches;
+        final long elapsedNanos;
+
+        Stats(int stubsDeleted, int contentScanned, int contentDeleted, int batches, long elapsedNanos) {
+            this.stubsDeleted = stubsDeleted;
+            this.contentScanned = contentScanned;
+            this.contentDeleted = contentDeleted;
+            this.batches = batches;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        double deletesPerSecond() {
+            return elapsedNanos == 0 ? 0 : (stubsDeleted + contentDeleted) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d stubs and %d of %d scanned content docs deleted in %d batches, %d ms, %.0f deletes/s",
+                    stubsDeleted, contentDeleted, contentScanned, batches, elapsedNanos / 1_000_000, deletesPerSecond());
+        }
+    }
+
+    private final Firestore db;
+    private final Duration retention;
+    private final int pageSize;
+
+    /**
+     * @param db The database.
+     * @param retention How long notifications are kept.
+     * @param pageSize Documents per page, at most one batch.
+     */
+    NotificationCompactor(Firestore db, Duration retention, int pageSize) {
+        if (pageSize < 1 || pageSize > MAX_BATCH_OPS) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_BATCH_OPS);
+        }
+        this.db = db;
+        this.retention = retention;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Runs both passes.
+     *
+     * @param now The current time, the retention window ends here.
+     */
+    Stats run(Instant now) throws ExecutionException, InterruptedException {
+        Timestamp cutoff = Timestamp.of(Date.from(now.minus(retention)));
+        long started = System.nanoTime();
+        int[] batches = new int[1];
+        int stubsDeleted = expireReadStubs(cutoff, batches);
+        int[] scanned = new int[1];
+        int contentDeleted = collectContent(cutoff, scanned, batches);
+        Stats stats = new Stats(stubsDeleted, scanned[0], contentDeleted, batches[0], System.nanoTime() - started);
+        LOG.info("Notification compaction before " + cutoff + ": " + stats);
+        return stats;
+    }
+
+    private int expireReadStubs(Timestamp cutoff, int[] batches) throws ExecutionException, InterruptedException {
+        // The top-level content has no readStatus, so only stubs match.
+        Query expired = db.collectionGroup(COLLECTION)
+                .whereEqualTo("readStatus", true)
+                .whereLessThan("timestamp", cutoff)
+                .orderBy("timestamp")
+                .limit(pageSize);
+        int deleted = 0;
+        QueryDocumentSnapshot last = null;
+        while (true) {
+            List<QueryDocumentSnapshot> page = (last == null ? expired : expired.startAfter(last)).get().get().getDocuments();
+            if (page.isEmpty()) break;
+            WriteBatch batch = db.batch();
+            for (QueryDocumentSnapshot stub : page) {
+                batch.delete(stub.getReference());
+            }
+            batch.commit().get();
+            batches[0]++;
+            deleted += page.size();
+            last = page.get(page.size() - 1);
+            if (page.size() < pageSize) break;
+        }
+        return deleted;
+    }
+
+    private int collectContent(Timestamp cutoff, int[] scanned, int[] batches) throws ExecutionException, InterruptedException {
+        Query old = db.collection(COLLECTION)
+                .whereLessThan("timestamp", cutoff)
+                .orderBy("timestamp")
+                .limit(pageSize);
+        int deleted = 0;
+        QueryDocumentSnapshot last = null;
+        while (true) {
+            List<QueryDocumentSnapshot> page = (last == null ? old : old.startAfter(last)).get().get().getDocuments();
+            if (page.isEmpty()) break;
+            scanned[0] += page.size();
+
+            List<ApiFuture<QuerySnapshot>> references = new ArrayList<>(page.size());
+            for (QueryDocumentSnapshot content : page) {
+                references.add(db.collectionGroup(COLLECTION)
+                        .whereEqualTo("notificationRef", content.getReference())
+                        .select("readStatus")
+                        .limit(1)
+                        .get());
+            }
+            WriteBatch batch = db.batch();
+            int unreferenced = 0;
+            for (int i = 0; i < page.size(); i++) {
+                if (references.get(i).get().isEmpty()) {
+                    batch.delete(page.get(i).getReference());
+                    unreferenced++;
+                }
+            }
+            if (unreferenced > 0) {
+                batch.commit().get();
+                batches[0]++;
+                deleted += unreferenced;
+            }
+            last = page.get(page.size() - 1);
+            if (page.size() < pageSize) break;
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,159 @@
+package com.rocket.radar.lottery.runner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes one notification stub per recipient in bounded chunks, a few chunks at a time.
+ *
+ * <p>Firestore rejects batches over 500 writes, so recipients are split into chunks that each fit
+ * in one batch. Chunks are committed on a small pool so a group of thousands doesn't wait on one
+ * round trip per chunk, without flooding the project with concurrent commits. A failed chunk is
+ * retried with backoff. That is only safe because writers must be idempotent: a stub's id is
+ * derived from the notification, and a writer that also bumps a counter has to skip the stubs
+ * that already exist, in the same transaction, so a chunk that did land before its ack was lost
+ * changes nothing the second time.</p>
+ */
+class NotificationFanOut {
+    private static final Logger LOG = Logger.getLogger(NotificationFanOut.class.getName());
+
+    /**
+     * Writes the stubs of one chunk, typically as one transaction. Must be safe to call again with
+     * the same recipients.
+     */
+    interface ChunkWriter {
+        void write(List<String> userIds) throws Exception;
+    }
+
+    /**
+     * What a fan-out did and how long it took.
+     */
+    static final class Stats {
+        final int stubs;
+        final int chunks;
+        final int retries;
+        final long elapsedNanos;
+        // Latency of each chunk's successful attempt, in chunk order.
+        final long[] chunkNanos;
+
+        Stats(int stubs, int chunks, int retries, long elapsedNanos, long[] chunkNanos) {
+            this.stubs = stubs;
+            this.chunks = chunks;
+            this.retries = retries;
+            this.elapsedNanos = elapsedNanos;
+            this.chunkNanos = chunkNanos;
+        }
+
+        double stubsPerSecond() {
+            return elapsedNanos == 0 ? 0 : stubs * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * @param percentile Between 0 and 100.
+         * @return The chunk latency at that percentile in milliseconds.
+         */
+        long chunkMillis(int percentile) {
+            if (chunkNanos.length == 0) return 0;
+            long[] sorted = chunkNanos.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1_000_000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d stubs in %d chunks, %.0f stubs/s, chunk p50 %d ms, p95 %d ms, max %d ms, %d retries",
+                    stubs, chunks, stubsPerSecond(), chunkMillis(50), chunkMillis(95), chunkMillis(100), retries);
+        }
+    }
+
+    private final int chunkSize;
+    private final int parallelism;
+    private final int maxAttempts;
+    private final long backoffMillis;
+
+    /**
+     * @param chunkSize Recipients per chunk.
+     * @param parallelism Chunks committed at once.
+     * @param maxAttempts Attempts per chunk before the fan-out fails.
+     * @param backoffMillis Wait before the first retry, doubled on every further retry.
+     */
+    NotificationFanOut(int chunkSize, int parallelism, int maxAttempts, long backoffMillis) {
+        if (chunkSize < 1 || parallelism < 1 || maxAttempts < 1) {
+            throw new IllegalArgumentException("chunkSize, parallelism and maxAttempts must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.parallelism = parallelism;
+        this.maxAttempts = maxAttempts;
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Writes every recipient's stub. Every chunk is attempted even if another one fails for good.
+     *
+     * @param userIds The recipients.
+     * @param writer Writes one chunk.
+     * @return Throughput and latency of the fan-out.
+     * @throws ExecutionException If a chunk still failed after its last attempt. Running the
+     *                            fan-out again skips what already landed.
+     */
+    Stats run(List<String> userIds, ChunkWriter writer) throws ExecutionException, InterruptedException {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int start = 0; start < userIds.size(); start += chunkSize) {
+            chunks.add(userIds.subList(start, Math.min(start + chunkSize, userIds.size())));
+        }
+        long[] chunkNanos = new long[chunks.size()];
+        AtomicInteger retries = new AtomicInteger();
+
+        long started = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, chunks.size())));
+        try {
+            List<Future<?>> pending = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                int index = i;
+                pending.add(pool.submit(() -> {
+                    chunkNanos[index] = writeWithRetry(chunks.get(index), writer, retries);
+                    return null;
+                }));
+            }
+            ExecutionException failure = null;
+            for (Future<?> chunk : pending) {
+                try {
+                    chunk.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e;
+                }
+            }
+            if (failure != null) throw failure;
+        } finally {
+            pool.shutdownNow();
+        }
+
+        Stats stats = new Stats(userIds.size(), chunks.size(), retries.get(), System.nanoTime() - started, chunkNanos);
+        LOG.fine("Fan-out: " + stats);
+        return stats;
+    }
+
+    private long writeWithRetry(List<String> chunk, ChunkWriter writer, AtomicInteger retries) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            long started = System.nanoTime();
+            try {
+                writer.write(chunk);
+                return System.nanoTime() - started;
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || e instanceof InterruptedException) throw e;
+                retries.incrementAndGet();
+                LOG.log(Level.FINE, "Retrying a chunk of " + chunk.size() + " stubs, attempt " + attempt + " failed", e);
+                Thread.sleep(backoffMillis << (attempt - 1));
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.rocket.radar.lottery.runner;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.NoCredentials;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.cloud.FirestoreClient;
+
+import java.io.IOException;
+
+/**
+ * Opens the Firestore instance the runner works against.
+ */
+public final class RunnerFirestore {
+    private RunnerFirestore() {}
+
+    /**
+     * Connects to the emulator named by {@code FIRESTORE_EMULATOR_HOST} if it is set, otherwise to
+     * the real project using application default credentials.
+     *
+     * @param projectId The Firebase project id.
+     */
+    public static Firestore open(String projectId) throws IOException {
+        String emulatorHost = System.getenv("FIRESTORE_EMULATOR_HOST");
+        if (emulatorHost != null && !emulatorHost.isEmpty()) {
+            return FirestoreOptions.newBuilder()
+                    .setProjectId(projectId)
+                    .setEmulatorHost(emulatorHost)
+                    .setCredentials(NoCredentials.getInstance())
+                    .build()
+                    .getService();
+        }
+        FirebaseOptions options = FirebaseOptions.builder()
+                .setCredentials(GoogleCredentials.getApplicationDefault())
+                .setProjectId(projectId)
+                .build();
+        FirebaseApp app = FirebaseApp.getApps().isEmpty()
+                ? FirebaseApp.initializeApp(options)
+                : FirebaseApp.getInstance();
+        return FirestoreClient.getFirestore(app);
+    }
+}
@@ -0,0 +1,294 @@
+package com.rocket.radar.lottery.runner;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.rocket.radar.lottery.EventMembership;
+import com.rocket.radar.lottery.LotteryClaim;
+import com.rocket.radar.lottery.LotteryEvent;
+import com.rocket.radar.lottery.LotteryPolicy;
+import com.rocket.radar.lottery.LotteryRun;
+import com.rocket.radar.lottery.LotterySampler;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Logger;
+
+/**
+ * Runs one event's lottery with the Admin SDK. The server side counterpart of the app's
+ * {@code LotteryLogic}: it draws with the same {@link LotteryPolicy}, records the same
+ * {@link LotteryRun} document and moves winners with the same writes, so a draw started on one
+ * side can be resumed on the other.
+ */
+public class ServerLotteryDraw {
+    private static final Logger LOG = Logger.getLogger(ServerLotteryDraw.class.getName());
+
+    // Each winner takes three writes and every batch two more, the checkpoint and the event's
+    // drawn marker.
+    private static final int WRITES_PER_WINNER = 3;
+    private static final int WINNERS_PER_BATCH = (500 - 2) / WRITES_PER_WINNER;
+
+    /**
+     * What a draw did.
+     */
+    public static class Result {
+        public final String eventId;
+        public final int winners;
+        public final boolean resumed;
+
+        Result(String eventId, int winners, boolean resumed) {
+            this.eventId = eventId;
+            this.winners = winners;
+            this.resumed = resumed;
+        }
+
+        @Override
+        public String toString() {
+            return eventId + ": " + winners + " winners" + (resumed ? " (resumed)" : "");
+        }
+    }
+
+    private final Firestore db;
+    private final LotterySampler sampler;
+    private final GroupNotifier notifier;
+
+    public ServerLotteryDraw(Firestore db, LotterySampler sampler) {
+        this.db = db;
+        this.sampler = sampler;
+        this.notifier = new GroupNotifier(db);
+    }
+
+    /**
+     * Draws an event's lottery, or finishes its last draw if that never completed. Does nothing
+     * if the event's main draw already completed or someone else claimed it, see
+     * {@link LotteryClaim}.
+     *
+     * @param eventId The event.
+     * @param sampleNum A specific number of winners, null to fill the event's capacity.
+     * @return What the draw did.
+     */
+    public Result run(String eventId, Integer sampleNum) throws ExecutionException, InterruptedException {
+        DocumentReference eventRef = db.collection("events").document(eventId);
+        DocumentSnapshot event = eventRef.get().get();
+        if (!event.exists()) {
+            throw new IllegalArgumentException("Event " + eventId + " does not exist");
+        }
+        CollectionReference runs = eventRef.collection(LotteryRun.COLLECTION);
+
+        QuerySnapshot pending = runs.whereEqualTo(LotteryRun.STATUS, LotteryRun.STATUS_PENDING).limit(1).get().get();
+        if (!pending.isEmpty()) {
+            DocumentSnapshot run = pending.getDocuments().get(0);
+            @SuppressWarnings("unchecked")
+            List<String> winners = (List<String>) run.get(LotteryRun.WINNERS);
+            @SuppressWarnings("unchecked")
+            List<String> muted = (List<String>) run.get(LotteryRun.MUTED);
+            Long committed = run.getLong(LotteryRun.COMMITTED);
+            LOG.info("Resuming lottery run " + run.getId() + " for " + eventId);
+            Set<String> mutedSet = muted == null ? new HashSet<>() : new HashSet<>(muted);
+            boolean replacement = LotteryRun.KIND_REPLACEMENT.equals(run.getString(LotteryRun.KIND));
+            commitWinners(eventRef, run.getReference(), winners, mutedSet, committed == null ? 0 : committed.intValue(), !replacement);
+            if (replacement) {
+                // Only the replacements hear about a refill, as in the app.
+                List<String> recipients = new ArrayList<>(winners);
+                recipients.removeAll(mutedSet);
+                notifier.sendToUsers(event.getString("eventTitle"), "You won the lottery!", eventId, recipients);
+            } else {
+                notifyResults(event);
+            }
+            return new Result(eventId, winners.size(), true);
+        }
+        // Claimed before sampling, so an organizer drawing in the app at the same time can't
+        // invite a second set of winners.
+        String owner = LotteryRun.RUNNER_SERVER + ":" + UUID.randomUUID();
+        DocumentReference runRef = runs.document(LotteryRun.INITIAL_RUN_ID);
+        LotteryClaim.Outcome claim = claim(eventRef, runRef, owner);
+        if (claim == LotteryClaim.Outcome.DRAWN) {
+            LOG.info("Lottery for " + eventId + " was already drawn");
+            return new Result(eventId, 0, false);
+        }
+        if (claim == LotteryClaim.Outcome.BUSY) {
+            LOG.info("Lottery for " + eventId + " is being drawn by someone else");
+            return new Result(eventId, 0, false);
+        }
+        if (claim == LotteryClaim.Outcome.RESUME) {
+            // Its winners were recorded since the pending check above.
+            return run(eventId, sampleNum);
+        }
+
+        List<String> waitlist = new ArrayList<>();
+        Set<String> mutedSet = new HashSet<>();
+        for (QueryDocumentSnapshot doc : eventRef.collection("waitlistedUsers")
+                .select(EventMembership.NOTIFICATIONS_ENABLED).get().get()) {
+            waitlist.add(doc.getId());
+            if (Boolean.FALSE.equals(doc.getBoolean(EventMembership.NOTIFICATIONS_ENABLED))) {
+                mutedSet.add(doc.getId());
+            }
+        }
+        Long capacity = event.getLong("eventCapacity");
+        int count = LotteryPolicy.winnerCount(waitlist.size(), capacity == null ? 0 : capacity.intValue(), sampleNum);
+        long seed = new SplittableRandom().nextLong();
+        List<String> winners = LotteryPolicy.drawWinners(waitlist, count, seed, sampler);
+
+        Map<String, Object> run = new HashMap<>();
+        List<String> muted = new ArrayList<>(winners);
+        muted.retainAll(mutedSet);
+        run.put(LotteryRun.WINNERS, winners);
+        run.put(LotteryRun.MUTED, muted);
+        run.put(LotteryRun.SEED, seed);
+        run.put(LotteryRun.WAITLIST_SIZE, waitlist.size());
+        run.put(LotteryRun.COMMITTED, 0);
+        run.put(LotteryRun.KIND, LotteryRun.KIND_INITIAL);
+        run.put(LotteryRun.RUNNER, LotteryRun.RUNNER_SERVER);
+        run.put(LotteryRun.OWNER, owner);
+        run.put(LotteryRun.CREATED_AT, FieldValue.serverTimestamp());
+        // An empty draw is still recorded as drawn, so later sweeps don't send the results again.
+        run.put(LotteryRun.STATUS, winners.isEmpty() ? LotteryRun.STATUS_COMPLETE : LotteryRun.STATUS_PENDING);
+        if (!record(eventRef, runRef, run, owner, winners.isEmpty())) {
+            LOG.warning("Claim on the lottery for " + eventId + " expired and was taken over, dropping this draw");
+            return new Result(eventId, 0, false);
+        }
+        if (!winners.isEmpty()) {
+            commitWinners(eventRef, runRef, winners, mutedSet, 0, true);
+        }
+        notifyResults(event);
+        LOG.info("Drew " + winners.size() + " of " + waitlist.size() + " entrants for " + eventId);
+        return new Result(eventId, winners.size(), false);
+    }
+
+    /**
+     * Claims the event's main draw in a transaction, see {@link LotteryClaim}.
+     */
+    private LotteryClaim.Outcome claim(DocumentReference eventRef, DocumentReference runRef, String owner)
+            throws ExecutionException, InterruptedException {
+        return db.runTransaction(transaction -> {
+            DocumentSnapshot event = transaction.get(eventRef).get();
+            DocumentSnapshot current = transaction.get(runRef).get();
+            Timestamp claimedAt = current.getTimestamp(LotteryRun.CREATED_AT);
+            LotteryClaim.Outcome outcome = LotteryClaim.decide(event.get(LotteryEvent.DRAWN_AT) != null,
+                    current.getString(LotteryRun.STATUS), current.getString(LotteryRun.OWNER),
+                    claimedAt == null ? null : claimedAt.toDate(), owner, new Date());
+            if (outcome == LotteryClaim.Outcome.CLAIMED) {
+                Map<String, Object> claim = new HashMap<>();
+                claim.put(LotteryRun.STATUS, LotteryRun.STATUS_CLAIMED);
+                claim.put(LotteryRun.OWNER, owner);
+                claim.put(LotteryRun.KIND, LotteryRun.KIND_INITIAL);
+                claim.put(LotteryRun.RUNNER, LotteryRun.RUNNER_SERVER);
+                claim.put(LotteryRun.CREATED_AT, FieldValue.serverTimestamp());
+                transaction.set(runRef, claim);
+            }
+            return outcome;
+        }).get();
+    }
+
+    /**
+     * Replaces the claim with the drawn run, together with the event's drawn marker if nobody
+     * won, as long as {@code owner} still holds the claim.
+     *
+     * @return Whether the run was recorded.
+     */
+    private boolean record(DocumentReference eventRef, DocumentReference runRef, Map<String, Object> run, String owner, boolean drawn)
+            throws ExecutionException, InterruptedException {
+        return db.runTransaction(transaction -> {
+            DocumentSnapshot current = transaction.get(runRef).get();
+            if (!LotteryClaim.stillOwns(current.getString(LotteryRun.STATUS), current.getString(LotteryRun.OWNER), owner)) {
+                return false;
+            }
+            transaction.set(runRef, run);
+            if (drawn) {
+                transaction.update(eventRef, LotteryEvent.DRAWN_AT, FieldValue.serverTimestamp());
+            }
+            return true;
+        }).get();
+    }
+
+    /**
+     * Winners whose account was deleted since the draw only lose their waitlist entry, so their
+     * user document isn't brought back. Each batch reads its winners' user documents first. If
+     * one is deleted between that read and the commit, the profile update fails the batch, and
+     * it is read and built again once.
+     *
+     * @param initial Whether this is the event's main draw, which marks the event drawn in the
+     *                batch that completes it.
+     */
+    private void commitWinners(DocumentReference eventRef, DocumentReference runRef, List<String> winners, Set<String> muted, int alreadyCommitted, boolean initial)
+            throws ExecutionException, InterruptedException {
+        String eventId = eventRef.getId();
+        for (int start = alreadyCommitted; start < winners.size(); start += WINNERS_PER_BATCH) {
+            int end = Math.min(start + WINNERS_PER_BATCH, winners.size());
+            List<String> chunk = winners.subList(start, end);
+            Set<String> existing = existingUsers(chunk);
+            try {
+                commitBatch(eventRef, runRef, winners, chunk, end, muted, existing, initial);
+            } catch (ExecutionException e) {
+                Set<String> stillThere = existingUsers(chunk);
+                if (stillThere.containsAll(existing)) throw e;
+                LOG.info("Winners of " + eventId + " were deleted during the draw, retrying the batch without them");
+                commitBatch(eventRef, runRef, winners, chunk, end, muted, stillThere, initial);
+            }
+            LOG.fine("Committed " + end + "/" + winners.size() + " winners for " + eventId);
+        }
+    }
+
+    /**
+     * @return The users among these that still have a user document, read in one round trip.
+     */
+    private Set<String> existingUsers(List<String> userIds) throws ExecutionException, InterruptedException {
+        DocumentReference[] refs = new DocumentReference[userIds.size()];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = db.collection("users").document(userIds.get(i));
+        }
+        Set<String> existing = new HashSet<>();
+        for (DocumentSnapshot user : db.getAll(refs).get()) {
+            if (user.exists()) existing.add(user.getId());
+        }
+        return existing;
+    }
+
+    /**
+     * Moves one batch of winners, up to {@code end}, and advances the run's checkpoint with it.
+     */
+    private void commitBatch(DocumentReference eventRef, DocumentReference runRef, List<String> winners, List<String> chunk, int end,
+                             Set<String> muted, Set<String> existing, boolean initial) throws ExecutionException, InterruptedException {
+        String eventId = eventRef.getId();
+        WriteBatch batch = db.batch();
+        for (String userId : chunk) {
+            batch.delete(eventRef.collection("waitlistedUsers").document(userId));
+            if (!existing.contains(userId)) continue;
+            Map<String, Object> invitedData = new HashMap<>();
+            invitedData.put("timestamp", FieldValue.serverTimestamp());
+            if (muted.contains(userId)) {
+                invitedData.put(EventMembership.NOTIFICATIONS_ENABLED, false);
+            }
+            batch.set(eventRef.collection("invitedUsers").document(userId), invitedData);
+            batch.update(db.collection("users").document(userId), "onInvitedEventIds", FieldValue.arrayUnion(eventId));
+        }
+        Map<String, Object> progress = new HashMap<>();
+        progress.put(LotteryRun.COMMITTED, end);
+        progress.put(LotteryRun.STATUS, end >= winners.size() ? LotteryRun.STATUS_COMPLETE : LotteryRun.STATUS_PENDING);
+        batch.update(runRef, progress);
+        if (initial && end >= winners.size()) {
+            batch.update(eventRef, LotteryEvent.DRAWN_AT, FieldValue.serverTimestamp());
+        }
+        batch.commit().get();
+    }
+
+    private void notifyResults(DocumentSnapshot event) throws ExecutionException, InterruptedException {
+        String title = event.getString("eventTitle");
+        notifier.sendToGroup(title, "You won the lottery!", event.getId(), "invitedUsers");
+        notifier.sendToGroup(title, "You lost the lottery!", event.getId(), "waitlistedUsers");
+    }
+}
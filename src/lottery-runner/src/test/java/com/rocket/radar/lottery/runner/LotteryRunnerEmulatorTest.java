@@ -0,0 +1,169 @@
+package com.rocket.radar.lottery.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.rocket.radar.lottery.FisherYatesSampler;
+import com.rocket.radar.lottery.LotteryClaim;
+import com.rocket.radar.lottery.LotteryEvent;
+import com.rocket.radar.lottery.LotteryRun;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Runs the lottery runner against the Firestore emulator. Skipped unless
+ * {@code FIRESTORE_EMULATOR_HOST} is set.
+ */
+public class LotteryRunnerEmulatorTest {
+    private Firestore db;
+    private LotteryRunner runner;
+    private String eventId;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("FIRESTORE_EMULATOR_HOST not set", System.getenv("FIRESTORE_EMULATOR_HOST") != null);
+        db = RunnerFirestore.open("demo-radar");
+        runner = new LotteryRunner(db, new ServerLotteryDraw(db, new FisherYatesSampler()), ZoneOffset.UTC, 4);
+        eventId = "runner-test-" + UUID.randomUUID();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (db != null) db.close();
+    }
+
+    private void seedEvent(Instant lotteryDay, int hour, int capacity, int waitlisted) throws Exception {
+        DocumentReference eventRef = db.collection("events").document(eventId);
+        Map<String, Object> lotteryTime = new HashMap<>();
+        lotteryTime.put("hour", hour);
+        lotteryTime.put("minute", 0);
+        Map<String, Object> event = new HashMap<>();
+        event.put("eventId", eventId);
+        event.put("eventTitle", "Runner test");
+        event.put("eventCapacity", capacity);
+        event.put("lotteryDate", Timestamp.of(Date.from(lotteryDay.truncatedTo(ChronoUnit.DAYS))));
+        event.put("lotteryTime", lotteryTime);
+        eventRef.set(event).get();
+        for (int i = 0; i < waitlisted; i++) {
+            String uid = eventId + "-user" + i;
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("timestamp", Timestamp.now());
+            eventRef.collection("waitlistedUsers").document(uid).set(entry).get();
+            Map<String, Object> user = new HashMap<>();
+            user.put("notificationsEnabled", true);
+            db.collection("users").document(uid).set(user).get();
+        }
+    }
+
+    @Test
+    public void runDue_drawsDueEventOnce() throws Exception {
+        Instant now = Instant.now();
+        seedEvent(now.minus(1, ChronoUnit.DAYS), 0, 3, 10);
+        DocumentReference eventRef = db.collection("events").document(eventId);
+
+        List<ServerLotteryDraw.Result> results = runner.runAll(List.of(eventRef.get().get()));
+        assertEquals(1, results.size());
+        assertEquals(3, results.get(0).winners);
+
+        List<QueryDocumentSnapshot> invited = eventRef.collection("invitedUsers").get().get().getDocuments();
+        assertEquals(3, invited.size());
+        assertEquals(7, eventRef.collection("waitlistedUsers").get().get().size());
+        for (QueryDocumentSnapshot doc : invited) {
+            // Nobody is left both waitlisted and invited.
+            assertTrue(!eventRef.collection("waitlistedUsers").document(doc.getId()).get().get().exists());
+            DocumentSnapshot user = db.collection("users").document(doc.getId()).get().get();
+            assertTrue(((List<?>) user.get("onInvitedEventIds")).contains(eventId));
+        }
+
+        List<QueryDocumentSnapshot> runs = eventRef.collection(LotteryRun.COLLECTION).get().get().getDocuments();
+        assertEquals(1, runs.size());
+        assertEquals(LotteryRun.STATUS_COMPLETE, runs.get(0).getString(LotteryRun.STATUS));
+        assertEquals(LotteryRun.RUNNER_SERVER, runs.get(0).getString(LotteryRun.RUNNER));
+
+        // Already drawn, so a later sweep leaves it alone.
+        assertNotNull(eventRef.get().get().get(LotteryEvent.DRAWN_AT));
+        assertTrue(runner.alreadyDrawn(eventRef.get().get()));
+    }
+
+    @Test
+    public void runDue_recordsDrawWithNoEntrants() throws Exception {
+        Instant now = Instant.now();
+        seedEvent(now.minus(1, ChronoUnit.DAYS), 0, 3, 0);
+        DocumentReference eventRef = db.collection("events").document(eventId);
+
+        List<ServerLotteryDraw.Result> results = runner.runAll(List.of(eventRef.get().get()));
+        assertEquals(0, results.get(0).winners);
+
+        // The empty draw is still recorded, so the results aren't sent again on the next sweep.
+        List<QueryDocumentSnapshot> runs = eventRef.collection(LotteryRun.COLLECTION).get().get().getDocuments();
+        assertEquals(1, runs.size());
+        assertEquals(LotteryRun.STATUS_COMPLETE, runs.get(0).getString(LotteryRun.STATUS));
+        assertTrue(runner.alreadyDrawn(eventRef.get().get()));
+    }
+
+    @Test
+    public void runDue_skipsWinnersWhoseAccountIsGone() throws Exception {
+        Instant now = Instant.now();
+        seedEvent(now.minus(1, ChronoUnit.DAYS), 0, 3, 3);
+        DocumentReference eventRef = db.collection("events").document(eventId);
+        String deleted = eventId + "-user1";
+        db.collection("users").document(deleted).delete().get();
+
+        runner.runAll(List.of(eventRef.get().get()));
+
+        assertEquals(2, eventRef.collection("invitedUsers").get().get().size());
+        assertEquals(0, eventRef.collection("waitlistedUsers").get().get().size());
+        // Inviting them must not bring their user document back.
+        assertTrue(!db.collection("users").document(deleted).get().get().exists());
+        assertTrue(runner.alreadyDrawn(eventRef.get().get()));
+    }
+
+    @Test
+    public void runDue_leavesDrawClaimedByTheApp() throws Exception {
+        Instant now = Instant.now();
+        seedEvent(now.minus(1, ChronoUnit.DAYS), 0, 3, 10);
+        DocumentReference eventRef = db.collection("events").document(eventId);
+        DocumentReference runRef = eventRef.collection(LotteryRun.COLLECTION).document(LotteryRun.INITIAL_RUN_ID);
+        Map<String, Object> claim = new HashMap<>();
+        claim.put(LotteryRun.STATUS, LotteryRun.STATUS_CLAIMED);
+        claim.put(LotteryRun.OWNER, LotteryRun.RUNNER_APP + ":organizer");
+        claim.put(LotteryRun.CREATED_AT, Timestamp.now());
+        runRef.set(claim).get();
+
+        assertEquals(0, runner.runAll(List.of(eventRef.get().get())).get(0).winners);
+        assertEquals(0, eventRef.collection("invitedUsers").get().get().size());
+        assertEquals(LotteryRun.STATUS_CLAIMED, runRef.get().get().getString(LotteryRun.STATUS));
+
+        // A claim whose owner never recorded winners is taken over once it expires.
+        claim.put(LotteryRun.CREATED_AT, Timestamp.of(Date.from(now.minusMillis(LotteryClaim.TIMEOUT_MILLIS))));
+        runRef.set(claim).get();
+        assertEquals(3, runner.runAll(List.of(eventRef.get().get())).get(0).winners);
+        assertEquals(LotteryRun.STATUS_COMPLETE, runRef.get().get().getString(LotteryRun.STATUS));
+    }
+
+    @Test
+    public void dueInstant_combinesDateAndTime() throws Exception {
+        Instant day = Instant.parse("2030-01-15T00:00:00Z");
+        seedEvent(day, 14, 1, 0);
+        DocumentSnapshot event = db.collection("events").document(eventId).get().get();
+        assertEquals(Instant.parse("2030-01-15T14:00:00Z"), runner.dueInstant(event));
+    }
+}
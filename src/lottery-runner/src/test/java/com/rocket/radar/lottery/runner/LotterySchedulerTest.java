@@ -0,0 +1,76 @@
+package com.rocket.radar.lottery.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LotterySchedulerTest {
+
+    @Test
+    public void firesInDueOrder() throws Exception {
+        List<String> fired = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(3);
+        try (LotteryScheduler scheduler = new LotteryScheduler(Clock.systemUTC(), eventId -> {
+            fired.add(eventId);
+            latch.countDown();
+        }, 1)) {
+            Instant now = Instant.now();
+            scheduler.schedule("late", now.plusMillis(300));
+            scheduler.schedule("soon", now.plusMillis(150));
+            scheduler.schedule("backlog", now.minusSeconds(60));
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("backlog", "soon", "late"), fired);
+            assertEquals(0, scheduler.pendingCount());
+        }
+    }
+
+    @Test
+    public void rescheduledAndRemovedEventsDoNotFireEarly() throws Exception {
+        List<String> fired = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch latch = new CountDownLatch(1);
+        try (LotteryScheduler scheduler = new LotteryScheduler(Clock.systemUTC(), eventId -> {
+            fired.add(eventId);
+            latch.countDown();
+        }, 1)) {
+            Instant now = Instant.now();
+            scheduler.schedule("moved", now.plusMillis(100));
+            scheduler.schedule("removed", now.plusMillis(100));
+            scheduler.schedule("moved", now.plusMillis(400));
+            scheduler.unschedule("removed");
+
+            Thread.sleep(250);
+            assertTrue(fired.isEmpty());
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            assertEquals(List.of("moved"), fired);
+        }
+    }
+
+    @Test
+    public void backlogIsDrawnInParallel() throws Exception {
+        int backlog = 8;
+        CountDownLatch started = new CountDownLatch(backlog);
+        CountDownLatch release = new CountDownLatch(1);
+        try (LotteryScheduler scheduler = new LotteryScheduler(Clock.systemUTC(), eventId -> {
+            started.countDown();
+            release.await();
+        }, backlog)) {
+            Instant past = Instant.now().minusSeconds(3600);
+            for (int i = 0; i < backlog; i++) {
+                scheduler.schedule("event" + i, past.plusSeconds(i));
+            }
+            // Every draw is blocked, so they can only all start if they run side by side.
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.rocket.radar.lottery.runner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Runs the notification compactor against the Firestore emulator. Skipped unless
+ * {@code FIRESTORE_EMULATOR_HOST} is set.
+ */
+public class NotificationCompactorEmulatorTest {
+    private Firestore db;
+    private String prefix;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue("FIRESTORE_EMULATOR_HOST not set", System.getenv("FIRESTORE_EMULATOR_HOST") != null);
+        db = RunnerFirestore.open("demo-radar");
+        prefix = "compactor-test-" + UUID.randomUUID();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (db != null) db.close();
+    }
+
+    private DocumentReference content(String id, Instant sent) throws Exception {
+        DocumentReference ref = db.collection("notifications").document(prefix + "-" + id);
+        Map<String, Object> content = new HashMap<>();
+        content.put("eventTitle", "Compactor test");
+        content.put("timestamp", Timestamp.of(Date.from(sent)));
+        ref.set(content).get();
+        return ref;
+    }
+
+    private DocumentReference stub(String user, DocumentReference content, Instant sent, boolean read) throws Exception {
+        DocumentReference ref = db.collection("users").document(prefix + "-" + user)
+                .collection("notifications").document(content.getId());
+        Map<String, Object> stub = new HashMap<>();
+        stub.put("eventTitle", "Compactor test");
+        stub.put("timestamp", Timestamp.of(Date.from(sent)));
+        stub.put("readStatus", read);
+        stub.put("notificationRef", content);
+        ref.set(stub).get();
+        return ref;
+    }
+
+    @Test
+    public void run_expiresOldReadStubsAndUnreferencedContent() throws Exception {
+        Instant now = Instant.now();
+        Instant old = now.minus(40, ChronoUnit.DAYS);
+
+        DocumentReference oldContent = content("old", old);
+        DocumentReference oldRead = stub("a", oldContent, old, true);
+        DocumentReference oldReadToo = stub("b", oldContent, old, true);
+
+        DocumentReference keptContent = content("kept", old);
+        DocumentReference oldUnread = stub("a", keptContent, old, false);
+
+        DocumentReference newContent = content("new", now);
+        DocumentReference newRead = stub("a", newContent, now, true);
+
+        new NotificationCompactor(db, Duration.ofDays(30), 1).run(now);
+
+        assertFalse(oldRead.get().get().exists());
+        assertFalse(oldReadToo.get().get().exists());
+        assertFalse(oldContent.get().get().exists());
+        // Unread stubs are kept however old, and keep their content alive.
+        assertTrue(oldUnread.get().get().exists());
+        assertTrue(keptContent.get().get().exists());
+        assertTrue(newRead.get().get().exists());
+        assertTrue(newContent.get().get().exists());
+    }
+}
@@ -0,0 +1,90 @@
+package com.rocket.radar.lottery.runner;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class NotificationFanOutTest {
+
+    private static List<String> users(int count) {
+        List<String> users = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            users.add("user" + i);
+        }
+        return users;
+    }
+
+    @Test
+    public void splitsRecipientsIntoBoundedChunks() throws Exception {
+        Set<String> written = ConcurrentHashMap.newKeySet();
+        AtomicInteger largest = new AtomicInteger();
+        NotificationFanOut.Stats stats = new NotificationFanOut(500, 4, 1, 0).run(users(1234), chunk -> {
+            largest.accumulateAndGet(chunk.size(), Math::max);
+            written.addAll(chunk);
+        });
+
+        assertEquals(1234, written.size());
+        assertEquals(500, largest.get());
+        assertEquals(3, stats.chunks);
+        assertEquals(1234, stats.stubs);
+        assertEquals(3, stats.chunkNanos.length);
+    }
+
+    @Test
+    public void commitsAtMostParallelismChunksAtOnce() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        new NotificationFanOut(10, 3, 1, 0).run(users(200), chunk -> {
+            peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+        });
+
+        assertTrue(peak.get() <= 3);
+        assertTrue(peak.get() > 1);
+    }
+
+    @Test
+    public void retriesFailedChunks() throws Exception {
+        Set<String> failedOnce = ConcurrentHashMap.newKeySet();
+        Set<String> written = ConcurrentHashMap.newKeySet();
+        NotificationFanOut.Stats stats = new NotificationFanOut(5, 2, 3, 1).run(users(20), chunk -> {
+            if (failedOnce.add(chunk.get(0))) {
+                throw new IllegalStateException("deadline exceeded");
+            }
+            written.addAll(chunk);
+        });
+
+        assertEquals(20, written.size());
+        assertEquals(4, stats.retries);
+    }
+
+    @Test
+    public void failsAfterLastAttemptButFinishesOtherChunks() throws Exception {
+        Set<String> written = new HashSet<>();
+        try {
+            new NotificationFanOut(5, 1, 2, 1).run(users(15), chunk -> {
+                if (chunk.contains("user5")) {
+                    throw new IllegalStateException("permission denied");
+                }
+                synchronized (written) {
+                    written.addAll(chunk);
+                }
+            });
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(10, written.size());
+    }
+}
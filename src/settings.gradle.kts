@@ -24,3 +24,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "Radar"
 include(":app")
+include(":lottery-core")
+include(":lottery-runner")